@@ -1,6 +1,7 @@
 package org.ruoyi.controller;
 
 import cn.dev33.satoken.stp.StpUtil;
+import cn.hutool.core.collection.CollUtil;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
@@ -24,18 +25,26 @@ import org.ruoyi.knowledge.domain.bo.KnowledgeAttachBo;
 import org.ruoyi.knowledge.domain.bo.KnowledgeFragmentBo;
 import org.ruoyi.knowledge.domain.bo.KnowledgeInfoBo;
 import org.ruoyi.knowledge.domain.req.KnowledgeInfoUploadRequest;
+import org.ruoyi.knowledge.domain.vo.EmbeddingProgressVo;
 import org.ruoyi.knowledge.domain.vo.KnowledgeAttachVo;
 import org.ruoyi.knowledge.domain.vo.KnowledgeFragmentVo;
 import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
 import org.ruoyi.knowledge.service.EmbeddingService;
+import org.ruoyi.knowledge.service.IAnswerCacheService;
 import org.ruoyi.knowledge.service.IKnowledgeAttachService;
 import org.ruoyi.knowledge.service.IKnowledgeFragmentService;
 import org.ruoyi.knowledge.service.IKnowledgeInfoService;
+import org.ruoyi.knowledge.service.IKnowledgeIngestService;
+import org.ruoyi.system.domain.SysModel;
+import org.ruoyi.system.domain.model.ChatRequestContext;
 import org.ruoyi.system.listener.SSEEventSourceListener;
 import org.ruoyi.system.service.ISseService;
+import org.ruoyi.system.service.ISysModelService;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
-import org.ruoyi.knowledge.chain.vectorstore.VectorStore;
+import org.ruoyi.knowledge.chain.retrieve.HybridRetriever;
+import org.ruoyi.knowledge.chain.retrieve.MultiKnowledgeRetriever;
+import org.ruoyi.knowledge.chain.vectorstore.VectorSearchHit;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
@@ -55,7 +64,9 @@ public class KnowledgeController extends BaseController {
 
     private final IKnowledgeInfoService knowledgeInfoService;
 
-    private final VectorStore vectorStore;
+    private final HybridRetriever hybridRetriever;
+
+    private final MultiKnowledgeRetriever multiKnowledgeRetriever;
 
     private final IKnowledgeAttachService attachService;
 
@@ -63,12 +74,18 @@ public class KnowledgeController extends BaseController {
 
     private final EmbeddingService embeddingService;
 
+    private final IKnowledgeIngestService ingestService;
+
+    private final IAnswerCacheService answerCacheService;
+
     private OpenAiStreamClient openAiStreamClient;
 
     private final ChatConfig chatConfig;
 
     private final ISseService sseService;
 
+    private final ISysModelService sysModelService;
+
     /**
      * 知识库对话
      */
@@ -76,13 +93,38 @@ public class KnowledgeController extends BaseController {
     public SseEmitter send(@RequestBody @Valid ChatRequest chatRequest) {
 
         openAiStreamClient = chatConfig.getOpenAiStreamClient();
-        SseEmitter sseEmitter = new SseEmitter(0L);
-        SSEEventSourceListener openAIEventSourceListener = new SSEEventSourceListener(sseEmitter);
         List<Message> messages = chatRequest.getMessages();
         String content = messages.get(messages.size() - 1).getContent().toString();
+        SseEmitter sseEmitter;
+        SSEEventSourceListener openAIEventSourceListener;
         List<String> nearestList;
-        List<Double> queryVector = embeddingService.getQueryVector(content, chatRequest.getKid());
-        nearestList = vectorStore.nearest(queryVector,chatRequest.getKid());
+        if (CollUtil.isNotEmpty(chatRequest.getKids())) {
+            // 多个知识库并行检索 不使用语义缓存
+            sseEmitter = new SseEmitter(0L);
+            openAIEventSourceListener = new SSEEventSourceListener(sseEmitter, buildRequestContext(chatRequest.getModel()));
+            nearestList = multiKnowledgeRetriever.retrieve(chatRequest.getKids(), content).stream()
+                .map(VectorSearchHit::content)
+                .distinct()
+                .toList();
+        } else {
+            float[] queryVector = embeddingService.getQueryFloatVector(content, chatRequest.getKid());
+            // 没有历史对话时回答只取决于问题 可以使用语义缓存
+            boolean cacheable = messages.size() == 1 && !chatRequest.getModel().startsWith("ollama");
+            if (cacheable) {
+                String cachedAnswer = answerCacheService.get(chatRequest.getKid(), chatRequest.getModel(), queryVector);
+                if (cachedAnswer != null) {
+                    return answerCacheService.replay(cachedAnswer, chatRequest.getModel());
+                }
+            }
+            long cacheVersion = answerCacheService.version(chatRequest.getKid());
+            sseEmitter = new SseEmitter(0L);
+            openAIEventSourceListener = new SSEEventSourceListener(sseEmitter, buildRequestContext(chatRequest.getModel()));
+            if (cacheable) {
+                openAIEventSourceListener.onCompletion(answer -> answerCacheService.put(
+                    chatRequest.getKid(), chatRequest.getModel(), queryVector, answer, cacheVersion));
+            }
+            nearestList = hybridRetriever.retrieve(chatRequest.getKid(), content, queryVector);
+        }
         for (String prompt : nearestList) {
             Message sysMessage = Message.builder().content(prompt).role(Message.Role.USER).build();
             messages.add(sysMessage);
@@ -106,6 +148,19 @@ public class KnowledgeController extends BaseController {
         return sseEmitter;
     }
 
+    /**
+     * 构建对话请求上下文 未登录时不结算
+     */
+    private ChatRequestContext buildRequestContext(String modelName) {
+        if (!StpUtil.isLogin()) {
+            return new ChatRequestContext(null, modelName, ChatRequestContext.BILLING_TOKEN, 0, null);
+        }
+        SysModel sysModel = sysModelService.selectModelByName(modelName);
+        String billingMode = sysModel != null && ChatRequestContext.BILLING_TIMES.equals(sysModel.getModelType())
+            ? ChatRequestContext.BILLING_TIMES : ChatRequestContext.BILLING_TOKEN;
+        return new ChatRequestContext(LoginHelper.getUserId(), modelName, billingMode, 0, null);
+    }
+
     /**
      * 根据用户信息查询本地知识库
      */
@@ -170,8 +225,28 @@ public class KnowledgeController extends BaseController {
      */
     @PostMapping(value = "/attach/upload")
     public R<String> upload(KnowledgeInfoUploadRequest request){
-        knowledgeInfoService.upload(request);
-        return R.ok("上传知识库附件成功!");
+        String docId = ingestService.submit(request.getKid(), request.getFile(), request.getReplaceDocId());
+        return R.ok("上传知识库附件成功!", docId);
+    }
+
+    /**
+     * 查询知识库附件入库进度
+     *
+     * @param docId 文档ID
+     */
+    @GetMapping("attach/progress/{docId}")
+    public R<EmbeddingProgressVo> getAttachProgress(@NotEmpty(message = "文档ID不能为空") @PathVariable String docId) {
+        return R.ok(ingestService.getProgress(docId));
+    }
+
+    /**
+     * 订阅知识库附件入库进度
+     *
+     * @param docId 文档ID
+     */
+    @GetMapping("attach/progress/stream/{docId}")
+    public SseEmitter streamAttachProgress(@NotEmpty(message = "文档ID不能为空") @PathVariable String docId) {
+        return ingestService.subscribeProgress(docId);
     }
 
     /**
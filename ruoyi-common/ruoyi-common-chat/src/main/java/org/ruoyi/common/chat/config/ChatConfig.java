@@ -1,7 +1,12 @@
 package org.ruoyi.common.chat.config;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.TimedCache;
+import cn.hutool.core.date.DateUnit;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
 import org.ruoyi.common.chat.openai.OpenAiStreamClient;
@@ -12,7 +17,10 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Chat配置类
@@ -23,11 +31,34 @@ import java.util.concurrent.TimeUnit;
 @RequiredArgsConstructor
 public class ChatConfig {
 
+    /**
+     * 客户端空闲回收时长
+     */
+    private static final long CLIENT_IDLE_TIMEOUT = 30 * DateUnit.MINUTE.getMillis();
+
     @Getter
     private OpenAiStreamClient openAiStreamClient;
 
     private final ConfigService configService;
 
+    /**
+     * 共享的连接池与调度器 所有客户端复用同一组上游连接
+     */
+    private final ConnectionPool connectionPool = new ConnectionPool(64, 5, TimeUnit.MINUTES);
+
+    private final Dispatcher dispatcher = createDispatcher();
+
+    private final OkHttpClient sharedHttpClient = createSharedHttpClient();
+
+    /**
+     * 客户端注册表 key为 apiHost + apiKey
+     */
+    private final TimedCache<String, OpenAiStreamClient> clientRegistry = createClientRegistry();
+
+    private final LongAdder clientHits = new LongAdder();
+
+    private final LongAdder clientMisses = new LongAdder();
+
     // 重启才会生效
     @Bean
     public OpenAiStreamClient openAiStreamClient() {
@@ -37,20 +68,94 @@ public class ChatConfig {
         return openAiStreamClient;
     }
 
+    /**
+     * 获取客户端 同一个(apiHost, apiKey)复用同一个实例
+     *
+     * @param apiHost api地址
+     * @param apiKey  api密钥
+     * @return 客户端
+     */
+    public OpenAiStreamClient getOpenAiStreamClient(String apiHost, String apiKey) {
+        String key = apiHost + "|" + apiKey;
+        OpenAiStreamClient client = clientRegistry.get(key, true);
+        if (client != null) {
+            clientHits.increment();
+            return client;
+        }
+        synchronized (clientRegistry) {
+            client = clientRegistry.get(key, true);
+            if (client == null) {
+                clientMisses.increment();
+                client = createOpenAiStreamClient(apiHost, apiKey);
+                clientRegistry.put(key, client);
+            } else {
+                clientHits.increment();
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 清空客户端注册表 模型配置变更后调用
+     */
+    public void clearOpenAiStreamClients() {
+        clientRegistry.clear();
+    }
+
+    /**
+     * 客户端注册表及连接池统计
+     */
+    public Map<String, Object> getClientStats() {
+        long hits = clientHits.sum();
+        long total = hits + clientMisses.sum();
+        Map<String, Object> stats = new HashMap<>(8);
+        stats.put("clients", clientRegistry.size());
+        stats.put("hits", hits);
+        stats.put("misses", total - hits);
+        stats.put("reuseRate", total == 0 ? 0d : (double) hits / total);
+        stats.put("connections", connectionPool.connectionCount());
+        stats.put("idleConnections", connectionPool.idleConnectionCount());
+        stats.put("runningCalls", dispatcher.runningCallsCount());
+        stats.put("queuedCalls", dispatcher.queuedCallsCount());
+        return stats;
+    }
+
+    /**
+     * 创建客户端 连接池与调度器为共享实例
+     */
     public OpenAiStreamClient createOpenAiStreamClient(String apiHost, String apiKey) {
+        return OpenAiStreamClient.builder()
+            .apiHost(apiHost)
+            .apiKey(Collections.singletonList(apiKey))
+            .keyStrategy(new KeyRandomStrategy())
+            .okHttpClient(sharedHttpClient)
+            .build();
+    }
+
+    private Dispatcher createDispatcher() {
+        Dispatcher dispatcher = new Dispatcher();
+        // 流式对话为长连接 默认的每个host 5个并发远远不够
+        dispatcher.setMaxRequests(1024);
+        dispatcher.setMaxRequestsPerHost(512);
+        return dispatcher;
+    }
+
+    private OkHttpClient createSharedHttpClient() {
         HttpLoggingInterceptor httpLoggingInterceptor = new HttpLoggingInterceptor(new OpenAILogger());
         httpLoggingInterceptor.setLevel(HttpLoggingInterceptor.Level.HEADERS);
-        OkHttpClient okHttpClient = new OkHttpClient.Builder()
+        return new OkHttpClient.Builder()
             .addInterceptor(httpLoggingInterceptor)
+            .connectionPool(connectionPool)
+            .dispatcher(dispatcher)
             .connectTimeout(30, TimeUnit.SECONDS)
             .writeTimeout(600, TimeUnit.SECONDS)
             .readTimeout(600, TimeUnit.SECONDS)
             .build();
-        return OpenAiStreamClient.builder()
-            .apiHost(apiHost)
-            .apiKey(Collections.singletonList(apiKey))
-            .keyStrategy(new KeyRandomStrategy())
-            .okHttpClient(okHttpClient)
-            .build();
+    }
+
+    private static TimedCache<String, OpenAiStreamClient> createClientRegistry() {
+        TimedCache<String, OpenAiStreamClient> registry = CacheUtil.newTimedCache(CLIENT_IDLE_TIMEOUT);
+        registry.schedulePrune(CLIENT_IDLE_TIMEOUT);
+        return registry;
     }
 }
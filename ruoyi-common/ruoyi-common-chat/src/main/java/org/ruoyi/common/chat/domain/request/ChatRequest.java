@@ -39,6 +39,11 @@ public class ChatRequest {
      */
     private String kid;
 
+    /**
+     * 同时检索的多个知识库id 不为空时忽略kid
+     */
+    private List<String> kids;
+
     private String userId;
 //
 
@@ -1,7 +1,5 @@
 package org.ruoyi.common.chat.handler;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
 import com.alibaba.fastjson2.JSONObject;
 import lombok.extern.slf4j.Slf4j;
 import org.ruoyi.common.chat.config.LocalCache;
@@ -10,6 +8,7 @@ import org.ruoyi.common.chat.entity.chat.Message;
 import org.ruoyi.common.chat.holder.WebSocketSessionHolder;
 import org.ruoyi.common.chat.listener.WebSocketEventListener;
 import org.ruoyi.common.chat.openai.OpenAiStreamClient;
+import org.ruoyi.common.chat.utils.ContextWindowManager;
 import org.ruoyi.common.chat.utils.WebSocketUtils;
 import org.ruoyi.common.core.utils.SpringUtils;
 import org.springframework.beans.factory.annotation.Value;
@@ -27,6 +26,8 @@ import java.util.List;
 @Slf4j
 public class PlusWebSocketHandler extends AbstractWebSocketHandler {
 
+    private static final String MODEL = "gpt-4o-mini";
+
     /**
      * 连接成功后
      */
@@ -44,31 +45,24 @@ public class PlusWebSocketHandler extends AbstractWebSocketHandler {
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) {
         WebSocketEventListener eventSourceListener = new WebSocketEventListener(session);
-        String messageContext = (String) LocalCache.CACHE.get(session.getId());
-        List<Message> messages = new ArrayList<>();
-        if (StrUtil.isNotBlank(messageContext)) {
-            messages = JSONUtil.toList(messageContext, Message.class);
-            // 上下文长度
-            int contextSize=10;
-            if (messages.size() >= contextSize) {
-                messages = messages.subList(1, contextSize);
-            }
-            Message currentMessage = Message.builder().content(message.getPayload()).role(Message.Role.USER).build();
-            messages.add(currentMessage);
-        } else {
-            Message currentMessage = Message.builder().content(message.getPayload()).role(Message.Role.USER).build();
-            messages.add(currentMessage);
-        }
+        // 上下文直接缓存消息列表 不再每轮序列化与解析json
+        @SuppressWarnings("unchecked")
+        List<Message> history = (List<Message>) LocalCache.CACHE.get(session.getId());
+        List<Message> messages = history == null ? new ArrayList<>() : new ArrayList<>(history);
+        Message currentMessage = Message.builder().content(message.getPayload()).role(Message.Role.USER).build();
+        messages.add(currentMessage);
+        // 按token预算裁剪上下文
+        messages = ContextWindowManager.fit(session.getId(), MODEL, messages, ContextWindowManager.DEFAULT_BUDGET);
         ChatCompletion chatCompletion = ChatCompletion
             .builder()
-            .model("gpt-4o-mini")
+            .model(MODEL)
             .messages(messages)
             .temperature(0.2)
             .stream(true)
             .build();
         OpenAiStreamClient openAiStreamClient=(OpenAiStreamClient) SpringUtils.context().getBean("openAiStreamClient");
         openAiStreamClient.streamChatCompletion(chatCompletion, eventSourceListener);
-        LocalCache.CACHE.put(session.getId(), JSONUtil.toJsonStr(messages), LocalCache.TIMEOUT);
+        LocalCache.CACHE.put(session.getId(), messages, LocalCache.TIMEOUT);
     }
 
 
@@ -110,6 +104,7 @@ public class PlusWebSocketHandler extends AbstractWebSocketHandler {
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
         WebSocketSessionHolder.removeSession(session.getId());
+        ContextWindowManager.clear(session.getId());
     }
 
     /**
@@ -132,6 +132,16 @@ public interface OpenAiApi {
     @POST("v1/embeddings")
     Single<EmbeddingResponse> embeddings(@Body Embedding embedding);
 
+    /**
+     * 文本转换向量 返回原始响应 由调用方流式解析
+     *
+     * @param embedding 向量参数
+     * @return Single ResponseBody
+     */
+    @Streaming
+    @POST("v1/embeddings")
+    Single<ResponseBody> embeddingsBody(@Body Embedding embedding);
+
 
     /**
      * Returns a list of files that belong to the user's organization.
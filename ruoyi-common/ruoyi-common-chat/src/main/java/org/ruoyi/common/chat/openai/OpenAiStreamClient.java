@@ -39,6 +39,7 @@ import org.ruoyi.common.chat.openai.plugin.PluginAbstract;
 import org.ruoyi.common.chat.openai.plugin.PluginParam;
 import org.ruoyi.common.chat.sse.DefaultPluginListener;
 import org.ruoyi.common.chat.sse.PluginListener;
+import org.ruoyi.common.chat.utils.EmbeddingVectorParser;
 import org.ruoyi.common.core.exception.base.BaseException;
 import org.jetbrains.annotations.NotNull;
 import retrofit2.Call;
@@ -395,6 +396,21 @@ public class OpenAiStreamClient {
         return embeddings.blockingGet();
     }
 
+    /**
+     * 向量计算 响应直接解析为float数组 不构建 BigDecimal 列表
+     *
+     * @param embedding 向量参数
+     * @return 按输入顺序排列的向量
+     */
+    public List<float[]> embeddingVectors(Embedding embedding) {
+        try (ResponseBody body = this.openAiApi.embeddingsBody(embedding).blockingGet()) {
+            return EmbeddingVectorParser.parse(body.byteStream());
+        } catch (IOException e) {
+            log.error("向量响应解析失败: {}", e.getMessage());
+            throw new BaseException(e.getMessage());
+        }
+    }
+
     /**
      * 账户信息查询：里面包含总金额等信息
      *
@@ -0,0 +1,224 @@
+package org.ruoyi.common.chat.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.TimedCache;
+import cn.hutool.core.date.DateUnit;
+import cn.hutool.core.util.StrUtil;
+import com.knuddels.jtokkit.api.Encoding;
+import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.common.chat.entity.chat.Message;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * 对话上下文窗口管理
+ * <p>
+ * 按token预算裁剪历史消息: 系统消息与最后一个用户提问及其之后的消息始终保留,
+ * 其余历史从新到旧依次加入直到超出预算, 被丢弃的历史可交给摘要函数压缩成一条系统消息
+ * 每个会话缓存各条消息的token数, 新一轮对话只计算新增的消息
+ */
+@Slf4j
+public class ContextWindowManager {
+
+    /**
+     * 未配置模型上下文时使用的默认预算
+     */
+    public static final int DEFAULT_BUDGET = 4096;
+
+    /**
+     * 每条消息的固定开销
+     */
+    private static final int TOKENS_PER_MESSAGE = 3;
+
+    /**
+     * 回复引导的固定开销
+     */
+    private static final int TOKENS_PER_REPLY = 3;
+
+    private static final long STATE_TIMEOUT = 30 * DateUnit.MINUTE.getMillis();
+
+    /**
+     * 会话的消息token数缓存 key为会话标识
+     */
+    private static final TimedCache<String, ConversationState> STATES = CacheUtil.newTimedCache(STATE_TIMEOUT);
+
+    static {
+        STATES.schedulePrune(STATE_TIMEOUT);
+    }
+
+    private ContextWindowManager() {
+    }
+
+    /**
+     * 按token预算裁剪消息 超出预算的历史直接丢弃
+     *
+     * @param conversationId 会话标识 为空时不缓存token数
+     * @param modelName      模型名称
+     * @param messages       消息列表
+     * @param budget         token预算 小于等于0时不裁剪
+     * @return 裁剪后的消息列表 未超出预算时返回原列表
+     */
+    public static List<Message> fit(String conversationId, String modelName, List<Message> messages, int budget) {
+        return fit(conversationId, modelName, messages, budget, null);
+    }
+
+    /**
+     * 按token预算裁剪消息
+     *
+     * @param conversationId 会话标识 为空时不缓存token数
+     * @param modelName      模型名称
+     * @param messages       消息列表
+     * @param budget         token预算 小于等于0时不裁剪
+     * @param summarizer     摘要函数 将被丢弃的历史压缩为一段文本 为空时直接丢弃
+     * @return 裁剪后的消息列表 未超出预算时返回原列表
+     */
+    public static List<Message> fit(String conversationId, String modelName, List<Message> messages, int budget,
+                                    Function<List<Message>, String> summarizer) {
+        if (budget <= 0 || messages == null || messages.isEmpty()) {
+            return messages;
+        }
+        Encoding encoding = TikTokensUtil.getEncoding(modelName);
+        int[] counts = count(conversationId, encoding, messages);
+        int total = TOKENS_PER_REPLY + Arrays.stream(counts).sum();
+        if (total <= budget) {
+            return messages;
+        }
+
+        int size = messages.size();
+        int lastUser = size - 1;
+        for (int i = size - 1; i >= 0; i--) {
+            if (Message.Role.USER.getName().equals(messages.get(i).getRole())) {
+                lastUser = i;
+                break;
+            }
+        }
+        boolean[] keep = new boolean[size];
+        int used = TOKENS_PER_REPLY;
+        for (int i = 0; i < size; i++) {
+            if (i >= lastUser || Message.Role.SYSTEM.getName().equals(messages.get(i).getRole())) {
+                keep[i] = true;
+                used += counts[i];
+            }
+        }
+        // 从新到旧加入历史 遇到放不下的消息即停止 保证保留的历史是连续的
+        int firstKept = lastUser;
+        for (int i = lastUser - 1; i >= 0; i--) {
+            if (keep[i]) {
+                continue;
+            }
+            if (used + counts[i] > budget) {
+                break;
+            }
+            keep[i] = true;
+            used += counts[i];
+            firstKept = i;
+        }
+        // 工具调用结果不能脱离发起调用的消息单独存在
+        for (int i = firstKept; i < lastUser && isToolResult(messages.get(i)); i++) {
+            if (keep[i] && (i == 0 || !keep[i - 1])) {
+                keep[i] = false;
+                used -= counts[i];
+                firstKept = i + 1;
+            }
+        }
+
+        List<Message> dropped = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (!keep[i]) {
+                dropped.add(messages.get(i));
+            }
+        }
+        Message summary = summarize(summarizer, dropped);
+        if (summary != null) {
+            int summaryTokens = TikTokensUtil.tokens(encoding, summary, TOKENS_PER_MESSAGE, 1);
+            if (used + summaryTokens > budget) {
+                summary = null;
+            } else {
+                used += summaryTokens;
+            }
+        }
+
+        List<Message> result = new ArrayList<>(size - dropped.size() + 1);
+        for (int i = 0; i < size; i++) {
+            if (summary != null && i == firstKept) {
+                result.add(summary);
+            }
+            if (keep[i]) {
+                result.add(messages.get(i));
+            }
+        }
+        log.debug("上下文裁剪 会话:{} 模型:{} tokens {} -> {} 丢弃{}条消息", conversationId, modelName, total, used, dropped.size());
+        return result;
+    }
+
+    /**
+     * 清除会话的token数缓存
+     *
+     * @param conversationId 会话标识
+     */
+    public static void clear(String conversationId) {
+        STATES.remove(conversationId);
+    }
+
+    /**
+     * 计算每条消息的token数 与上一轮相同的前缀直接复用
+     */
+    private static int[] count(String conversationId, Encoding encoding, List<Message> messages) {
+        int size = messages.size();
+        long[] fingerprints = new long[size];
+        int[] counts = new int[size];
+        ConversationState state = conversationId == null ? null : STATES.get(conversationId, false);
+        boolean reusable = state != null && state.encoding.equals(encoding.getName());
+        for (int i = 0; i < size; i++) {
+            Message message = messages.get(i);
+            fingerprints[i] = fingerprint(message);
+            if (reusable && i < state.fingerprints.length && state.fingerprints[i] == fingerprints[i]) {
+                counts[i] = state.counts[i];
+            } else {
+                reusable = false;
+                counts[i] = TikTokensUtil.tokens(encoding, message, TOKENS_PER_MESSAGE, 1);
+            }
+        }
+        if (conversationId != null) {
+            STATES.put(conversationId, new ConversationState(encoding.getName(), fingerprints, counts));
+        }
+        return counts;
+    }
+
+    private static long fingerprint(Message message) {
+        String content = Objects.toString(message.getContent(), "");
+        long hash = Objects.hash(message.getRole(), message.getName(), message.getFunctionCall());
+        return (hash * 31 + content.hashCode()) * 31 + content.length();
+    }
+
+    private static boolean isToolResult(Message message) {
+        return Message.Role.TOOL.getName().equals(message.getRole())
+            || Message.Role.FUNCTION.getName().equals(message.getRole());
+    }
+
+    private static Message summarize(Function<List<Message>, String> summarizer, List<Message> dropped) {
+        if (summarizer == null || dropped.isEmpty()) {
+            return null;
+        }
+        try {
+            String summary = summarizer.apply(dropped);
+            if (StrUtil.isBlank(summary)) {
+                return null;
+            }
+            return Message.builder().role(Message.Role.SYSTEM).content("此前对话的摘要: " + summary).build();
+        } catch (Exception e) {
+            log.warn("历史消息摘要失败, 直接丢弃: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 会话中各条消息的指纹与token数
+     */
+    private record ConversationState(String encoding, long[] fingerprints, int[] counts) {
+    }
+}
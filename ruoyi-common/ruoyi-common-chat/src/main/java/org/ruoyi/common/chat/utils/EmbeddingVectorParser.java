@@ -0,0 +1,189 @@
+package org.ruoyi.common.chat.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 向量接口响应解析
+ * <p>
+ * 流式读取 data[].embedding 直接写入float数组, 不构建 BigDecimal 列表
+ */
+public class EmbeddingVectorParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final int INITIAL_CAPACITY = 1536;
+
+    private static final int MAX_DIGITS = 15;
+
+    private static final int MAX_POW10 = 22;
+
+    private static final double[] POW10 = new double[MAX_POW10 + 1];
+
+    /**
+     * double 比 float 多出的29位尾数 恰为 100...0 时 double 位于两个 float 的中点
+     */
+    private static final long FLOAT_ROUNDING_MASK = (1L << 29) - 1;
+
+    private static final long FLOAT_HALFWAY = 1L << 28;
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i <= MAX_POW10; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private EmbeddingVectorParser() {
+    }
+
+    /**
+     * 解析向量接口的响应
+     *
+     * @param input 响应内容
+     * @return 按 index 排列的向量
+     */
+    public static List<float[]> parse(InputStream input) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("向量响应格式错误");
+            }
+            List<IndexedVector> vectors = new ArrayList<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        vectors.add(readItem(parser, vectors.size()));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            vectors.sort(Comparator.comparingInt(IndexedVector::index));
+            List<float[]> result = new ArrayList<>(vectors.size());
+            for (IndexedVector vector : vectors) {
+                result.add(vector.vector());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 读取 data 中的一项 index 缺失时按出现顺序
+     */
+    private static IndexedVector readItem(JsonParser parser, int position) throws IOException {
+        int index = position;
+        float[] vector = new float[0];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("embedding".equals(field) && value == JsonToken.START_ARRAY) {
+                vector = readVector(parser);
+            } else if ("index".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                index = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new IndexedVector(index, vector);
+    }
+
+    private static float[] readVector(JsonParser parser) throws IOException {
+        float[] vector = new float[INITIAL_CAPACITY];
+        int size = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_NUMBER_INT) {
+                throw new IOException("向量响应格式错误: " + token);
+            }
+            if (size == vector.length) {
+                vector = Arrays.copyOf(vector, size * 2);
+            }
+            vector[size++] = parseFloat(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        }
+        return size == vector.length ? vector : Arrays.copyOf(vector, size);
+    }
+
+    /**
+     * 直接从解析器的字符缓冲读取数值, 避免每个数值创建字符串
+     * 有效数字不超过15位且指数不超过22时 double 运算结果是正确舍入的, 否则回退到 {@link Float#parseFloat};
+     * double 恰好落在两个 float 中点时再舍入到 float 可能出错, 同样回退
+     */
+    static float parseFloat(char[] chars, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        boolean negative = i < end && chars[i] == '-';
+        if (negative) {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean dot = false;
+        for (; i < end; i++) {
+            char c = chars[i];
+            if (c >= '0' && c <= '9') {
+                if (digits > 0 || c != '0') {
+                    if (++digits > MAX_DIGITS) {
+                        return slowParse(chars, offset, length);
+                    }
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (dot) {
+                    exponent--;
+                }
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else if (c == 'e' || c == 'E') {
+                break;
+            } else {
+                return slowParse(chars, offset, length);
+            }
+        }
+        if (i < end) {
+            int exp = 0;
+            boolean expNegative = false;
+            if (++i < end && (chars[i] == '-' || chars[i] == '+')) {
+                expNegative = chars[i++] == '-';
+            }
+            if (i == end) {
+                return slowParse(chars, offset, length);
+            }
+            for (; i < end; i++) {
+                char c = chars[i];
+                if (c < '0' || c > '9' || exp > 1000) {
+                    return slowParse(chars, offset, length);
+                }
+                exp = exp * 10 + (c - '0');
+            }
+            exponent += expNegative ? -exp : exp;
+        }
+        if (mantissa == 0) {
+            return negative ? -0f : 0f;
+        }
+        if (exponent < -MAX_POW10 || exponent > MAX_POW10) {
+            return slowParse(chars, offset, length);
+        }
+        double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+        if ((Double.doubleToRawLongBits(value) & FLOAT_ROUNDING_MASK) == FLOAT_HALFWAY) {
+            return slowParse(chars, offset, length);
+        }
+        return (float) (negative ? -value : value);
+    }
+
+    private static float slowParse(char[] chars, int offset, int length) {
+        return Float.parseFloat(new String(chars, offset, length));
+    }
+
+    private record IndexedVector(int index, float[] vector) {
+    }
+}
@@ -0,0 +1,138 @@
+package org.ruoyi.common.chat.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ruoyi.common.chat.entity.embeddings.EmbeddingResponse;
+import org.ruoyi.common.chat.entity.embeddings.Item;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 向量响应解析离线基准
+ * <p>
+ * 生成与向量接口格式一致的响应, 对比原先反序列化为 {@link EmbeddingResponse} 再转换为 List&lt;Double&gt;
+ * 与 {@link EmbeddingVectorParser} 流式解析的平均耗时和单次分配字节数, 例如:
+ * <pre>
+ * System.out.println(EmbeddingVectorParserBenchmark.run(64, 1536, 200));
+ * </pre>
+ */
+public final class EmbeddingVectorParserBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final long SEED = 42;
+
+    private EmbeddingVectorParserBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int vectors = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 1536;
+        System.out.println(run(vectors, dimension, 200));
+    }
+
+    /**
+     * 执行基准 两种解析方式各先预热同样的轮数
+     *
+     * @param vectors    响应中的向量数
+     * @param dimension  向量维度
+     * @param iterations 每种方式的解析次数
+     * @return 基准结果
+     */
+    public static Report run(int vectors, int dimension, int iterations) throws IOException {
+        byte[] response = response(vectors, dimension);
+        long checksum = 0;
+        for (int i = 0; i < iterations; i++) {
+            checksum += parseObjects(response).size() + EmbeddingVectorParser.parse(new ByteArrayInputStream(response)).size();
+        }
+
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += parseObjects(response).size();
+        }
+        double objectMillis = (System.nanoTime() - start) / 1_000_000.0 / iterations;
+        long objectBytes = (allocatedBytes() - allocated) / iterations;
+
+        allocated = allocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += EmbeddingVectorParser.parse(new ByteArrayInputStream(response)).size();
+        }
+        double streamMillis = (System.nanoTime() - start) / 1_000_000.0 / iterations;
+        long streamBytes = (allocatedBytes() - allocated) / iterations;
+
+        if (checksum != 4L * iterations * vectors) {
+            throw new IllegalStateException("解析结果数量不一致");
+        }
+        return new Report(vectors, dimension, response.length, objectMillis, objectBytes, streamMillis, streamBytes);
+    }
+
+    /**
+     * 原先的解析方式
+     */
+    private static List<List<Double>> parseObjects(byte[] response) throws IOException {
+        EmbeddingResponse embeddingResponse = OBJECT_MAPPER.readValue(response, EmbeddingResponse.class);
+        List<List<Double>> result = new ArrayList<>(embeddingResponse.getData().size());
+        for (Item item : embeddingResponse.getData()) {
+            List<Double> vector = new ArrayList<>(item.getEmbedding().size());
+            for (BigDecimal value : item.getEmbedding()) {
+                vector.add(value.doubleValue());
+            }
+            result.add(vector);
+        }
+        return result;
+    }
+
+    private static byte[] response(int vectors, int dimension) {
+        Random random = new Random(SEED);
+        StringBuilder json = new StringBuilder(vectors * dimension * 14 + 256);
+        json.append("{\"object\":\"list\",\"data\":[");
+        for (int i = 0; i < vectors; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"object\":\"embedding\",\"index\":").append(i).append(",\"embedding\":[");
+            for (int j = 0; j < dimension; j++) {
+                if (j > 0) {
+                    json.append(',');
+                }
+                // 与接口返回的精度一致: 约10位有效数字, 偶尔为科学计数法
+                double value = random.nextGaussian() * 0.03;
+                json.append(j % 97 == 0 ? String.format(Locale.ROOT, "%.9e", value) : String.format(Locale.ROOT, "%.10f", value));
+            }
+            json.append("]}");
+        }
+        json.append("],\"model\":\"text-embedding-3-small\",\"usage\":{\"prompt_tokens\":8,\"total_tokens\":8}}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean) {
+            return threadMXBean.getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    /**
+     * 基准结果 不支持统计分配字节数的JVM上分配字节数为0
+     *
+     * @param vectors       向量数
+     * @param dimension     向量维度
+     * @param responseBytes 响应大小
+     * @param objectMillis  原解析方式平均耗时(毫秒)
+     * @param objectBytes   原解析方式每次分配的字节数
+     * @param streamMillis  流式解析平均耗时(毫秒)
+     * @param streamBytes   流式解析每次分配的字节数
+     */
+    public record Report(int vectors, int dimension, int responseBytes, double objectMillis, long objectBytes,
+                         double streamMillis, long streamBytes) {
+    }
+}
@@ -1,5 +1,8 @@
 package org.ruoyi.common.chat.utils;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.lang.hash.MurmurHash;
 import cn.hutool.core.util.StrUtil;
 import com.knuddels.jtokkit.Encodings;
 import com.knuddels.jtokkit.api.Encoding;
@@ -30,6 +33,14 @@ public class TikTokensUtil {
      * registry实例
      */
     private static final EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
+    /**
+     * 长文本token数缓存 key为 编码名称 + 文本hash 系统提示词、知识库片段等重复文本不再重复编码
+     */
+    private static final LRUCache<String, Integer> countCache = CacheUtil.newLRUCache(4096);
+    /**
+     * 参与缓存的最小文本长度 短文本直接计算
+     */
+    private static final int CACHE_MIN_LENGTH = 256;
 
     static {
         for (ModelType modelType : ModelType.values()) {
@@ -66,7 +77,20 @@ public class TikTokensUtil {
      * @return tokens数量
      */
     public static int tokens(@NotNull Encoding enc, String text) {
-        return encode(enc, text).size();
+        if (StrUtil.isBlank(text)) {
+            return 0;
+        }
+        if (text.length() < CACHE_MIN_LENGTH) {
+            return enc.countTokens(text);
+        }
+        long[] hash = MurmurHash.hash128(text);
+        String key = enc.getName() + ":" + text.length() + ":" + hash[0] + ":" + hash[1];
+        Integer count = countCache.get(key);
+        if (count == null) {
+            count = enc.countTokens(text);
+            countCache.put(key, count);
+        }
+        return count;
     }
 
 
@@ -113,7 +137,7 @@ public class TikTokensUtil {
      * @return tokens数量
      */
     public static int tokens(@NotNull EncodingType encodingType, String text) {
-        return encode(encodingType, text).size();
+        return tokens(getEncoding(encodingType), text);
     }
 
 
@@ -166,7 +190,7 @@ public class TikTokensUtil {
      * @return tokens数量
      */
     public static int tokens(@NotNull String modelName, String text) {
-        return encode(modelName, text).size();
+        return tokens(getEncoding(modelName), text);
     }
 
 
@@ -208,20 +232,34 @@ public class TikTokensUtil {
         }
         int sum = 0;
         for (Message msg : messages) {
-            sum += tokensPerMessage;
-            sum += tokens(encoding, msg.getContent().toString());
-            sum += tokens(encoding, msg.getRole());
-            sum += tokens(encoding, msg.getName());
-            FunctionCall functionCall = msg.getFunctionCall();
-            sum += Objects.isNull(functionCall) ? 0 : tokens(encoding, functionCall.toString());
-            if (StrUtil.isNotBlank(msg.getName())) {
-                sum += tokensPerName;
-            }
+            sum += tokens(encoding, msg, tokensPerMessage, tokensPerName);
         }
         sum += 3;
         return sum;
     }
 
+    /**
+     * 计算单条消息的tokens
+     *
+     * @param encoding         Encoding
+     * @param msg              消息
+     * @param tokensPerMessage 每条消息的固定开销
+     * @param tokensPerName    name字段的固定开销
+     * @return tokens数量
+     */
+    public static int tokens(@NotNull Encoding encoding, @NotNull Message msg, int tokensPerMessage, int tokensPerName) {
+        int sum = tokensPerMessage;
+        sum += tokens(encoding, Objects.toString(msg.getContent(), null));
+        sum += tokens(encoding, msg.getRole());
+        sum += tokens(encoding, msg.getName());
+        FunctionCall functionCall = msg.getFunctionCall();
+        sum += Objects.isNull(functionCall) ? 0 : tokens(encoding, functionCall.toString());
+        if (StrUtil.isNotBlank(msg.getName())) {
+            sum += tokensPerName;
+        }
+        return sum;
+    }
+
     /**
      * 通过模型名称和encoded编码数组，反推字符串文本
      *
@@ -0,0 +1,73 @@
+package org.ruoyi.common.chat.utils;
+
+import com.knuddels.jtokkit.api.Encoding;
+
+/**
+ * 流式回答的增量token计数器
+ * <p>
+ * 增量内容到达时按安全边界(非空白字符后的单个空格之前)分段计数, 英文等以空格分词的文本与整体编码结果一致;
+ * 中文等长时间没有边界的文本累计到一定长度后直接计数, 与整体编码可能相差个别token
+ * 非线程安全 每个会话一个实例
+ */
+public class TokenCounter {
+
+    /**
+     * 未找到安全边界时的最大缓冲长度
+     */
+    private static final int MAX_PENDING_LENGTH = 2048;
+
+    private final Encoding encoding;
+
+    /**
+     * 尚未计数的尾部内容
+     */
+    private final StringBuilder pending = new StringBuilder();
+
+    private int count;
+
+    public TokenCounter(String modelName) {
+        this.encoding = TikTokensUtil.getEncoding(modelName);
+    }
+
+    /**
+     * 追加一段增量内容
+     *
+     * @param delta 增量内容
+     */
+    public void append(String delta) {
+        if (delta == null || delta.isEmpty()) {
+            return;
+        }
+        int from = Math.max(1, pending.length() - 1);
+        pending.append(delta);
+        int boundary = lastBoundary(from);
+        if (boundary > 0) {
+            count += encoding.countTokens(pending.substring(0, boundary));
+            pending.delete(0, boundary);
+        } else if (pending.length() >= MAX_PENDING_LENGTH) {
+            count += encoding.countTokens(pending.toString());
+            pending.setLength(0);
+        }
+    }
+
+    /**
+     * 当前内容的token数
+     */
+    public int count() {
+        return pending.isEmpty() ? count : count + encoding.countTokens(pending.toString());
+    }
+
+    /**
+     * 在新追加的内容中查找最后一个安全边界: 前一个字符非空白 后一个字符非空白的单个空格
+     */
+    private int lastBoundary(int from) {
+        for (int i = pending.length() - 2; i >= from; i--) {
+            if (pending.charAt(i) == ' '
+                && !Character.isWhitespace(pending.charAt(i - 1))
+                && !Character.isWhitespace(pending.charAt(i + 1))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,112 @@
+package org.ruoyi.common.chat.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 向量响应解析测试 数值解析结果须与 {@link Float#parseFloat} 逐位一致
+ */
+@Tag("local")
+@Tag("dev")
+@Tag("prod")
+@DisplayName("向量响应解析")
+class EmbeddingVectorParserTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "0", "-0", "0.0", "-0.0", "0e0", "-0E+5", "1", "-1", "0.5", "-0.015",
+        "0.0123456789", "-0.0123456789", "123456789012345", "1234567890123456", "0.12345678901234567890",
+        "-9.87654321012345678e-3", "1e0", "1E10", "1e22", "1e23", "1e-22", "1e-23", "-2.5e-7", "3.4028235e38",
+        "1.4e-45", "1e-50", "1e39", "7.038531e-26", "1.00000005960464477539", "16777217", "0.000000000000000000001",
+        "00012.5", "12.", ".5", "-.25e+2"
+    })
+    @DisplayName("与Float.parseFloat一致")
+    void parseFloatMatchesJdk(String text) {
+        assertSame(text);
+    }
+
+    @Test
+    @DisplayName("随机数值与Float.parseFloat一致")
+    void parseFloatMatchesJdkOnRandomValues() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            double value = random.nextGaussian() * Math.pow(10, random.nextInt(12) - 8);
+            String text = switch (i % 4) {
+                case 0 -> String.format(Locale.ROOT, "%.10f", value);
+                case 1 -> String.format(Locale.ROOT, "%.9e", value);
+                case 2 -> Double.toString(value);
+                default -> Float.toString((float) value);
+            };
+            assertSame(text);
+        }
+    }
+
+    @Test
+    @DisplayName("float中点附近的值回退到Float.parseFloat")
+    void parseFloatHalfway() {
+        // 2^24 + 1 恰为两个 float 的中点, 按偶数舍入
+        assertSame("16777217");
+        // 十进制值略小于中点, 但最近的 double 恰为中点; 直接转换为 float 会舍入到较大的一侧
+        assertSame("0.389895960688591");
+        assertSame("-0.389895960688591");
+    }
+
+    @Test
+    @DisplayName("按index排列并跳过其他字段")
+    void parseResponse() throws IOException {
+        String json = "{\"object\":\"list\",\"data\":["
+            + "{\"object\":\"embedding\",\"index\":1,\"embedding\":[0.25,-1e-3]},"
+            + "{\"object\":\"embedding\",\"extra\":{\"a\":[1,2]},\"index\":0,\"embedding\":[1,-0.0,3.5E2]}"
+            + "],\"model\":\"m\",\"usage\":{\"prompt_tokens\":2,\"total_tokens\":2}}";
+        List<float[]> vectors = EmbeddingVectorParser.parse(stream(json));
+        assertEquals(2, vectors.size());
+        assertArrayEquals(new float[]{1f, -0f, 350f}, vectors.get(0));
+        assertArrayEquals(new float[]{0.25f, -0.001f}, vectors.get(1));
+    }
+
+    @Test
+    @DisplayName("超过初始容量的向量")
+    void parseLongVector() throws IOException {
+        StringBuilder json = new StringBuilder("{\"data\":[{\"embedding\":[");
+        float[] expected = new float[4000];
+        for (int i = 0; i < expected.length; i++) {
+            String text = "0." + (i + 1);
+            expected[i] = Float.parseFloat(text);
+            json.append(i == 0 ? "" : ",").append(text);
+        }
+        json.append("]}]}");
+        assertArrayEquals(expected, EmbeddingVectorParser.parse(stream(json.toString())).get(0));
+    }
+
+    @Test
+    @DisplayName("格式错误")
+    void parseInvalid() {
+        assertThrows(IOException.class, () -> EmbeddingVectorParser.parse(stream("[]")));
+        assertThrows(IOException.class, () -> EmbeddingVectorParser.parse(stream("{\"data\":[{\"embedding\":[\"a\"]}]}")));
+    }
+
+    private static void assertSame(String text) {
+        char[] chars = ("[" + text + "]").toCharArray();
+        float expected = Float.parseFloat(text);
+        float actual = EmbeddingVectorParser.parseFloat(chars, 1, text.length());
+        assertEquals(Float.floatToRawIntBits(expected), Float.floatToRawIntBits(actual), text);
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,16 +1,81 @@
 package org.ruoyi.knowledge.chain.loader;
 
+import cn.hutool.core.text.csv.CsvReadConfig;
+import cn.hutool.core.text.csv.CsvReader;
+import cn.hutool.core.text.csv.CsvRow;
+import cn.hutool.core.text.csv.CsvUtil;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.knowledge.chain.split.TextSplitter;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
+/**
+ * CSV载入
+ * <p>
+ * 逐行读取, 每行按 列名: 值 拼成一行文本, 行之间换行分隔, 切分时优先在行边界截断
+ */
+@Component
+@AllArgsConstructor
+@Slf4j
 public class CsvFileLoader implements ResourceLoader{
+
+    /**
+     * 流式解析时每段的字符数 在行边界处截断
+     */
+    private static final int SECTION_CHARS = 20000;
+
+    private final TextSplitter textSplitter;
+
     @Override
     public String getContent(InputStream inputStream) {
-        return null;
+        StringBuilder content = new StringBuilder();
+        load(inputStream, section -> content.append(section.content()));
+        return content.toString();
+    }
+
+    @Override
+    public void load(InputStream inputStream, Consumer<DocumentSection> consumer) {
+        StringBuilder section = new StringBuilder();
+        CsvReadConfig config = CsvReadConfig.defaultConfig().setContainsHeader(true).setSkipEmptyRows(true);
+        CsvReader reader = CsvUtil.getReader(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)), config);
+        reader.read(row -> {
+            appendRow(section, row);
+            if (section.length() >= SECTION_CHARS) {
+                consumer.accept(new DocumentSection(null, section.toString()));
+                section.setLength(0);
+            }
+        });
+        if (!section.isEmpty()) {
+            consumer.accept(new DocumentSection(null, section.toString()));
+        }
+    }
+
+    private static void appendRow(StringBuilder section, CsvRow row) {
+        Map<String, String> fields = row.getFieldMap();
+        boolean first = true;
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (field.getValue() == null || field.getValue().isBlank()) {
+                continue;
+            }
+            if (!first) {
+                section.append("; ");
+            }
+            section.append(field.getKey()).append(": ").append(field.getValue().strip());
+            first = false;
+        }
+        section.append('\n');
     }
 
     @Override
     public List<String> getChunkList(String content, String kid) {
-        return null;
+        return textSplitter.split(content, kid);
     }
 }
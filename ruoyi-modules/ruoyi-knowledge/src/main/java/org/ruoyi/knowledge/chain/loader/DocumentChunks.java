@@ -0,0 +1,13 @@
+package org.ruoyi.knowledge.chain.loader;
+
+import java.util.List;
+
+/**
+ * 文档集中一个文件的一段文本切分后的片段
+ *
+ * @param source 文件在目录或压缩包中的相对路径
+ * @param page   页码 无分页信息时为null
+ * @param chunks 切分后的片段
+ */
+public record DocumentChunks(String source, Integer page, List<String> chunks) {
+}
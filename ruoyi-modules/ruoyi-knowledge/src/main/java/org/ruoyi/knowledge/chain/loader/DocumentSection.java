@@ -0,0 +1,10 @@
+package org.ruoyi.knowledge.chain.loader;
+
+/**
+ * 流式解析时输出的一段文本
+ *
+ * @param page    页码 从1开始, 无分页信息的文档为null
+ * @param content 文本内容
+ */
+public record DocumentSection(Integer page, String content) {
+}
@@ -1,16 +1,171 @@
 package org.ruoyi.knowledge.chain.loader;
 
+import cn.hutool.core.io.FileUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.ruoyi.common.core.exception.ServiceException;
+import org.ruoyi.common.core.utils.Threads;
+import org.ruoyi.knowledge.constant.FileType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 目录载入
+ * <p>
+ * 逐个遍历文件, 按后缀交给对应的 {@link ResourceLoader} 在线程池中解析和切分; 同时处理的文件数有上限,
+ * 切分结果依次交给调用方, 调用方处理较慢时解析线程等待, 内存中只保留少量文件的内容
+ * 单个文件解析失败时跳过该文件, 调用方处理失败时中止全部文件
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FolderLoader {
+
+    /**
+     * 解析线程数 所有导入任务共用
+     */
+    private static final int WORKERS = 4;
+
+    /**
+     * 每个导入任务同时处理的文件数
+     */
+    private static final int MAX_IN_FLIGHT = WORKERS * 2;
+
+    private final ResourceLoaderFactory resourceLoaderFactory;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(WORKERS,
+        new BasicThreadFactory.Builder().namingPattern("knowledge-loader-%d").daemon(true).build());
+
+    @PreDestroy
+    public void destroy() {
+        Threads.shutdownAndAwaitTermination(executor);
+    }
+
+    /**
+     * 载入目录下的全部文档
+     *
+     * @param root     目录
+     * @param kid      知识库ID
+     * @param consumer 接收每个文件每一段的切分结果, 同一时间只有一个线程调用
+     */
+    public void load(Path root, String kid, Consumer<DocumentChunks> consumer) {
+        try (Stream<Path> paths = Files.walk(root)) {
+            Iterator<DocumentFile> files = paths.filter(Files::isRegularFile)
+                .map(path -> new DocumentFile(root.relativize(path).toString(), () -> Files.newInputStream(path)))
+                .iterator();
+            load(files, kid, consumer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 载入文档集 文件按需打开
+     */
+    void load(Iterator<DocumentFile> files, String kid, Consumer<DocumentChunks> consumer) {
+        Semaphore permits = new Semaphore(MAX_IN_FLIGHT);
+        Object lock = new Object();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        AtomicInteger skipped = new AtomicInteger();
+        try {
+            while (files.hasNext() && failure.get() == null) {
+                DocumentFile file = files.next();
+                String type = FileUtil.extName(file.name());
+                if (isHidden(file.name()) || !FileType.isDocument(type)) {
+                    continue;
+                }
+                permits.acquire();
+                try {
+                    executor.execute(() -> {
+                        try {
+                            parse(file, type, kid, consumer, lock, failure, skipped);
+                        } finally {
+                            permits.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    throw new ServiceException("文档解析线程池已关闭");
+                }
+            }
+            // 等待已提交的文件处理完成
+            permits.acquire(MAX_IN_FLIGHT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("文档载入被中断");
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        if (skipped.get() > 0) {
+            log.warn("知识库{}导入时跳过{}个无法解析的文件", kid, skipped.get());
+        }
+    }
+
+    private void parse(DocumentFile file, String type, String kid, Consumer<DocumentChunks> consumer,
+                       Object lock, AtomicReference<RuntimeException> failure, AtomicInteger skipped) {
+        if (failure.get() != null) {
+            return;
+        }
+        ResourceLoader loader = resourceLoaderFactory.getLoaderByFileType(type);
+        try (InputStream inputStream = file.opener().open()) {
+            loader.load(inputStream, section -> {
+                List<String> chunks = loader.getChunkList(section.content(), kid);
+                synchronized (lock) {
+                    if (failure.get() != null) {
+                        throw failure.get();
+                    }
+                    try {
+                        consumer.accept(new DocumentChunks(file.name(), section.page(), chunks));
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                        throw e;
+                    }
+                }
+            });
+        } catch (Exception e) {
+            if (failure.get() == null) {
+                skipped.incrementAndGet();
+                log.warn("文件{}解析失败, 已跳过: {}", file.name(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 隐藏文件和macOS压缩时附带的元数据目录
+     */
+    private static boolean isHidden(String name) {
+        String normalized = name.replace('\\', '/');
+        return normalized.startsWith(".") || normalized.contains("/.") || normalized.startsWith("__MACOSX/");
+    }
 
-public class FolderLoader implements ResourceLoader{
-    @Override
-    public String getContent(InputStream inputStream) {
-        return null;
+    /**
+     * 文档集中的一个文件
+     *
+     * @param name   相对路径
+     * @param opener 打开文件
+     */
+    record DocumentFile(String name, Opener opener) {
     }
 
-    @Override
-    public List<String> getChunkList(String content, String kid) {
-        return null;
+    @FunctionalInterface
+    interface Opener {
+        InputStream open() throws IOException;
     }
 }
@@ -1,16 +1,113 @@
 package org.ruoyi.knowledge.chain.loader;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.common.json.utils.JsonUtils;
+import org.ruoyi.knowledge.chain.split.TextSplitter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
+/**
+ * JSON载入
+ * <p>
+ * 使用流式解析, 每次只读入一条记录: 根节点为数组时每个元素为一条, 为对象时每个字段为一条, 也支持每行一个JSON的格式
+ * 记录展开为 路径: 值 的文本行, 记录之间空行分隔
+ */
+@Component
+@AllArgsConstructor
+@Slf4j
 public class JsonFileLoader implements ResourceLoader{
+
+    /**
+     * 流式解析时每段的字符数 在记录边界处截断
+     */
+    private static final int SECTION_CHARS = 20000;
+
+    private final TextSplitter textSplitter;
+
     @Override
     public String getContent(InputStream inputStream) {
-        return null;
+        StringBuilder content = new StringBuilder();
+        load(inputStream, section -> content.append(section.content()));
+        return content.toString();
+    }
+
+    @Override
+    public void load(InputStream inputStream, Consumer<DocumentSection> consumer) {
+        ObjectMapper objectMapper = JsonUtils.getObjectMapper();
+        StringBuilder section = new StringBuilder();
+        try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+            parser.setCodec(objectMapper);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.START_ARRAY) {
+                    while ((token = parser.nextToken()) != null && token != JsonToken.END_ARRAY) {
+                        appendRecord(section, null, parser.readValueAsTree(), consumer);
+                    }
+                } else if (token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        appendRecord(section, name, parser.readValueAsTree(), consumer);
+                    }
+                } else {
+                    appendRecord(section, null, parser.readValueAsTree(), consumer);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!section.isEmpty()) {
+            consumer.accept(new DocumentSection(null, section.toString()));
+        }
+    }
+
+    private static void appendRecord(StringBuilder section, String name, JsonNode node, Consumer<DocumentSection> consumer) {
+        flatten(section, name, node);
+        section.append('\n');
+        if (section.length() >= SECTION_CHARS) {
+            consumer.accept(new DocumentSection(null, section.toString()));
+            section.setLength(0);
+        }
+    }
+
+    /**
+     * 展开为 路径: 值 的文本行
+     */
+    private static void flatten(StringBuilder section, String path, JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return;
+        }
+        if (node.isObject()) {
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                flatten(section, path == null ? field.getKey() : path + "." + field.getKey(), field.getValue());
+            }
+        } else if (node.isArray()) {
+            for (int i = 0; i < node.size(); i++) {
+                flatten(section, (path == null ? "" : path) + "[" + i + "]", node.get(i));
+            }
+        } else {
+            if (path != null) {
+                section.append(path).append(": ");
+            }
+            section.append(node.asText()).append('\n');
+        }
     }
 
     @Override
     public List<String> getChunkList(String content, String kid) {
-        return null;
+        return textSplitter.split(content, kid);
     }
 }
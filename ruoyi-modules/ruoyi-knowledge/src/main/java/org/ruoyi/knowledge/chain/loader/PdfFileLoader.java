@@ -1,6 +1,7 @@
 package org.ruoyi.knowledge.chain.loader;
 
 import lombok.AllArgsConstructor;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.ruoyi.knowledge.chain.split.TextSplitter;
@@ -9,24 +10,56 @@ import org.springframework.stereotype.Component;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Component
 @AllArgsConstructor
 public class PdfFileLoader implements ResourceLoader{
+
+    /**
+     * 解析时最多占用的堆内存 超出部分写入临时文件
+     */
+    private static final long MAX_MAIN_MEMORY_BYTES = 16 * 1024 * 1024;
+
     private final TextSplitter characterTextSplitter;
     @Override
     public String getContent(InputStream inputStream) {
-        PDDocument document = null;
-        try {
-            document = PDDocument.load(inputStream);
+        try (PDDocument document = open(inputStream)) {
             PDFTextStripper textStripper = new PDFTextStripper();
-            String content = textStripper.getText(document);
-            return content;
+            return textStripper.getText(document);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 逐页提取文本 每页输出一段并带上页码
+     */
+    @Override
+    public void load(InputStream inputStream, Consumer<DocumentSection> consumer) {
+        try (PDDocument document = open(inputStream)) {
+            PDFTextStripper textStripper = new PDFTextStripper();
+            int pages = document.getNumberOfPages();
+            for (int page = 1; page <= pages; page++) {
+                textStripper.setStartPage(page);
+                textStripper.setEndPage(page);
+                String text = textStripper.getText(document);
+                if (!text.isBlank()) {
+                    consumer.accept(new DocumentSection(page, text));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 原文件和解析缓存超出内存上限后写入临时文件 避免大文件占满堆内存
+     */
+    private static PDDocument open(InputStream inputStream) throws IOException {
+        return PDDocument.load(inputStream, MemoryUsageSetting.setupMixed(MAX_MAIN_MEMORY_BYTES));
+    }
+
     @Override
     public List<String> getChunkList(String content, String kid) {
         return characterTextSplitter.split(content, kid);
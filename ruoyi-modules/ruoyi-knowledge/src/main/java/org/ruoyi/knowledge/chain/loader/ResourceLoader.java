@@ -2,6 +2,7 @@ package org.ruoyi.knowledge.chain.loader;
 
 import java.io.InputStream;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * 资源载入
@@ -11,4 +12,16 @@ public interface ResourceLoader {
     String getContent(InputStream inputStream);
 
     List<String> getChunkList(String content, String kid);
+
+    /**
+     * 流式解析 按页或按段依次输出文本, 不在内存中保留整篇文档
+     * <p>
+     * 默认实现一次读取全部内容, 支持分段读取的格式应覆盖该方法
+     *
+     * @param inputStream 文件流
+     * @param consumer    接收每一段文本
+     */
+    default void load(InputStream inputStream, Consumer<DocumentSection> consumer) {
+        consumer.accept(new DocumentSection(null, getContent(inputStream)));
+    }
 }
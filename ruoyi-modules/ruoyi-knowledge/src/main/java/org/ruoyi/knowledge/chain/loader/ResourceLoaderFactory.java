@@ -16,7 +16,11 @@ public class ResourceLoaderFactory {
     private final MarkdownTextSplitter markdownTextSplitter;
     private final TokenTextSplitter tokenTextSplitter;
     public ResourceLoader getLoaderByFileType(String fileType){
-        if (FileType.isTextFile(fileType)){
+        if (FileType.isCsv(fileType)) {
+            return new CsvFileLoader(tokenTextSplitter);
+        } else if (FileType.isJson(fileType)) {
+            return new JsonFileLoader(tokenTextSplitter);
+        } else if (FileType.isTextFile(fileType)){
             return new TextFileLoader(characterTextSplitter);
         } else if (FileType.isWord(fileType)) {
             return new WordLoader(characterTextSplitter);
@@ -9,12 +9,20 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Component
 @AllArgsConstructor
 @Slf4j
 public class TextFileLoader implements ResourceLoader{
+
+    /**
+     * 流式解析时每段的字符数 在行边界处截断
+     */
+    private static final int SECTION_CHARS = 20000;
+
     private final TextSplitter textSplitter;
     @Override
     public String getContent(InputStream inputStream) {
@@ -30,6 +38,30 @@ public class TextFileLoader implements ResourceLoader{
         }
         return stringBuffer.toString();
     }
+
+    /**
+     * 按行累积文本 达到 {@link #SECTION_CHARS} 后输出一段
+     */
+    @Override
+    public void load(InputStream inputStream, Consumer<DocumentSection> consumer) {
+        StringBuilder section = new StringBuilder();
+        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                section.append(line).append("\n");
+                if (section.length() >= SECTION_CHARS) {
+                    consumer.accept(new DocumentSection(null, section.toString()));
+                    section.setLength(0);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!section.isEmpty()) {
+            consumer.accept(new DocumentSection(null, section.toString()));
+        }
+    }
+
     @Override
     public List<String> getChunkList(String content, String kid){
         return textSplitter.split(content, kid);
@@ -3,27 +3,64 @@ package org.ruoyi.knowledge.chain.loader;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.xwpf.extractor.XWPFWordExtractor;
+import org.apache.poi.xwpf.usermodel.IBodyElement;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
 import org.ruoyi.knowledge.chain.split.TextSplitter;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Component
 @AllArgsConstructor
 @Slf4j
 public class WordLoader implements ResourceLoader{
+
+    /**
+     * 流式解析时每段的字符数 在段落边界处截断
+     */
+    private static final int SECTION_CHARS = 20000;
+
     private final TextSplitter textSplitter;
     @Override
     public String getContent(InputStream inputStream) {
-        XWPFDocument document = null;
         try {
-            document = new XWPFDocument(inputStream);
+            XWPFDocument document = new XWPFDocument(inputStream);
             XWPFWordExtractor extractor = new XWPFWordExtractor(document);
-            String content = extractor.getText();
-            return content;
+            return extractor.getText();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 按段落和表格顺序累积文本 达到 {@link #SECTION_CHARS} 后输出一段
+     * <p>
+     * docx没有固定分页 输出的段不带页码
+     */
+    @Override
+    public void load(InputStream inputStream, Consumer<DocumentSection> consumer) {
+        try {
+            XWPFDocument document = new XWPFDocument(inputStream);
+            StringBuilder section = new StringBuilder();
+            for (IBodyElement element : document.getBodyElements()) {
+                if (element instanceof XWPFParagraph paragraph) {
+                    section.append(paragraph.getText()).append('\n');
+                } else if (element instanceof XWPFTable table) {
+                    section.append(table.getText()).append('\n');
+                }
+                if (section.length() >= SECTION_CHARS) {
+                    consumer.accept(new DocumentSection(null, section.toString()));
+                    section.setLength(0);
+                }
+            }
+            if (!section.toString().isBlank()) {
+                consumer.accept(new DocumentSection(null, section.toString()));
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
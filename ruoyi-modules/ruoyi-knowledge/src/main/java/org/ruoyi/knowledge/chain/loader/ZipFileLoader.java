@@ -0,0 +1,219 @@
+package org.ruoyi.knowledge.chain.loader;
+
+import cn.hutool.core.io.FileUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.common.core.exception.ServiceException;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * ZIP压缩包载入
+ * <p>
+ * 压缩包先写入临时文件, 再按目录中的顺序逐个读取条目交给 {@link FolderLoader} 并行解析, 不解压到磁盘
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ZipFileLoader {
+
+    /**
+     * 最多处理的条目数
+     */
+    private static final int MAX_ENTRIES = 20000;
+
+    /**
+     * 单个条目解压后的大小上限 超出时跳过
+     * 目录中声明的大小可能缺失或被篡改, 读取时按实际解压的字节数再校验一次
+     */
+    private static final long MAX_ENTRY_BYTES = 200L * 1024 * 1024;
+
+    /**
+     * 整个压缩包解压后的大小上限 超出时导入失败
+     */
+    private static final long MAX_TOTAL_BYTES = 2L * 1024 * 1024 * 1024;
+
+    private static final String TOTAL_EXCEEDED = "压缩包解压后超过" + MAX_TOTAL_BYTES / 1024 / 1024 + "MB";
+
+    private final FolderLoader folderLoader;
+
+    /**
+     * 载入压缩包中的全部文档
+     *
+     * @param inputStream 压缩包
+     * @param kid         知识库ID
+     * @param consumer    接收每个文件每一段的切分结果, 同一时间只有一个线程调用
+     */
+    public void load(InputStream inputStream, String kid, Consumer<DocumentChunks> consumer) {
+        File temp = FileUtil.createTempFile("knowledge", ".zip", true);
+        try {
+            Files.copy(inputStream, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (ZipFile zipFile = open(temp)) {
+                if (zipFile.size() > MAX_ENTRIES) {
+                    throw new ServiceException("压缩包文件数超过" + MAX_ENTRIES);
+                }
+                if (declaredSize(zipFile) > MAX_TOTAL_BYTES) {
+                    throw new ServiceException(TOTAL_EXCEEDED);
+                }
+                AtomicLong total = new AtomicLong();
+                folderLoader.load(new EntryIterator(zipFile, total), kid, consumer);
+                // 超出总大小的条目按解析失败跳过, 此处让整个导入失败
+                if (total.get() > MAX_TOTAL_BYTES) {
+                    throw new ServiceException(TOTAL_EXCEEDED);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            FileUtil.del(temp);
+        }
+    }
+
+    /**
+     * 目录中声明的解压后总大小 未声明大小的条目不计入
+     */
+    private static long declaredSize(ZipFile zipFile) {
+        long size = 0;
+        Enumeration<? extends ZipEntry> entries = zipFile.entries();
+        while (entries.hasMoreElements()) {
+            size += Math.max(0, entries.nextElement().getSize());
+        }
+        return size;
+    }
+
+    /**
+     * 先按UTF-8读取文件名 不合法时按GBK读取, 兼容Windows自带的压缩工具
+     */
+    private static ZipFile open(File file) throws IOException {
+        ZipFile zipFile = new ZipFile(file, StandardCharsets.UTF_8);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                entries.nextElement();
+            }
+            return zipFile;
+        } catch (IllegalArgumentException e) {
+            zipFile.close();
+            return new ZipFile(file, Charset.forName("GBK"));
+        }
+    }
+
+    /**
+     * 按需读取条目 跳过目录和超出大小上限的条目, 解压总量超出上限后不再返回条目
+     */
+    private static class EntryIterator implements Iterator<FolderLoader.DocumentFile> {
+
+        private final ZipFile zipFile;
+
+        private final Enumeration<? extends ZipEntry> entries;
+
+        private final AtomicLong total;
+
+        private FolderLoader.DocumentFile next;
+
+        EntryIterator(ZipFile zipFile, AtomicLong total) {
+            this.zipFile = zipFile;
+            this.entries = zipFile.entries();
+            this.total = total;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (total.get() > MAX_TOTAL_BYTES) {
+                next = null;
+                return false;
+            }
+            while (next == null && entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (entry.getSize() > MAX_ENTRY_BYTES) {
+                    log.warn("压缩包条目{}超过大小上限, 已跳过", entry.getName());
+                    continue;
+                }
+                next = new FolderLoader.DocumentFile(entry.getName(),
+                    () -> new LimitedInputStream(zipFile.getInputStream(entry), entry.getName(), total));
+            }
+            return next != null;
+        }
+
+        @Override
+        public FolderLoader.DocumentFile next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            FolderLoader.DocumentFile file = next;
+            next = null;
+            return file;
+        }
+    }
+
+    /**
+     * 单个条目解压超过 {@link #MAX_ENTRY_BYTES} 或整个压缩包累计超过 {@link #MAX_TOTAL_BYTES} 时读取失败
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private final String name;
+
+        private final AtomicLong total;
+
+        private long count;
+
+        LimitedInputStream(InputStream in, String name, AtomicLong total) {
+            super(in);
+            this.name = name;
+            this.total = total;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long n) throws IOException {
+            count += n;
+            if (count > MAX_ENTRY_BYTES) {
+                throw new IOException("压缩包条目" + name + "解压后超过大小上限");
+            }
+            if (total.addAndGet(n) > MAX_TOTAL_BYTES) {
+                throw new IOException(TOTAL_EXCEEDED);
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.ruoyi.knowledge.chain.pipeline;
+
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.ruoyi.common.chat.utils.TikTokensUtil;
+import org.ruoyi.common.core.utils.Threads;
+import org.ruoyi.common.redis.utils.RedisUtils;
+import org.ruoyi.knowledge.chain.vectorizer.Vectorization;
+import org.ruoyi.knowledge.chain.vectorstore.VectorStore;
+import org.ruoyi.knowledge.domain.vo.EmbeddingProgressVo;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文档向量化流水线
+ * <p>
+ * 片段按数量和token数切分为小批次, 每个文档最多 {@link #MAX_IN_FLIGHT} 个批次同时请求向量接口,
+ * 失败时退避重试; 每个批次完成后立即写入向量库, 进度按文档ID记录在redis中
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmbeddingPipeline {
+
+    private static final String PROGRESS_KEY = "knowledge:embedding:progress:";
+
+    private static final Duration PROGRESS_TTL = Duration.ofDays(1);
+
+    /**
+     * 每批最多片段数
+     */
+    private static final int MAX_BATCH_SIZE = 32;
+
+    /**
+     * 每批最多token数
+     */
+    private static final int MAX_BATCH_TOKENS = 16000;
+
+    /**
+     * 每个文档同时请求的批次数
+     */
+    private static final int MAX_IN_FLIGHT = 4;
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final long BACKOFF_MILLIS = 1000;
+
+    private static final Encoding ENCODING = TikTokensUtil.getEncoding(EncodingType.CL100K_BASE);
+
+    private final Vectorization vectorization;
+
+    private final VectorStore vectorStore;
+
+    /**
+     * 所有文档共用 线程数即向量接口的最大并发数
+     */
+    private final ExecutorService executor = new ThreadPoolExecutor(8, 8, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(),
+        new BasicThreadFactory.Builder().namingPattern("knowledge-embedding-%d").daemon(true).build());
+
+    @PreDestroy
+    public void destroy() {
+        Threads.shutdownAndAwaitTermination(executor);
+    }
+
+    /**
+     * 提交文档的向量化任务 立即返回
+     *
+     * @param chunkList 片段内容
+     * @param kid       知识库ID
+     * @param docId     文档ID
+     * @param fidList   片段ID
+     * @return 全部片段写入向量库后完成
+     */
+    public CompletableFuture<Void> submit(List<String> chunkList, String kid, String docId, List<String> fidList) {
+        Job job = new Job(kid, docId, chunkList, fidList);
+        job.start();
+        return job.future;
+    }
+
+    /**
+     * 查询文档的向量化进度
+     */
+    public EmbeddingProgressVo getProgress(String docId) {
+        return RedisUtils.getCacheObject(PROGRESS_KEY + docId);
+    }
+
+    /**
+     * 按数量和token数切分批次 单个片段超过token上限时独占一批
+     */
+    private static List<int[]> split(List<String> chunkList) {
+        List<int[]> batches = new ArrayList<>();
+        int from = 0;
+        int tokens = 0;
+        for (int i = 0; i < chunkList.size(); i++) {
+            int chunkTokens = TikTokensUtil.tokens(ENCODING, chunkList.get(i));
+            if (i > from && (i - from == MAX_BATCH_SIZE || tokens + chunkTokens > MAX_BATCH_TOKENS)) {
+                batches.add(new int[]{from, i});
+                from = i;
+                tokens = 0;
+            }
+            tokens += chunkTokens;
+        }
+        if (from < chunkList.size()) {
+            batches.add(new int[]{from, chunkList.size()});
+        }
+        return batches;
+    }
+
+    /**
+     * 单个文档的向量化任务
+     */
+    private class Job {
+
+        private final String kid;
+
+        private final String docId;
+
+        private final List<String> chunkList;
+
+        private final List<String> fidList;
+
+        private final List<int[]> batches;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /**
+         * 下一个待提交的批次
+         */
+        private final AtomicInteger next = new AtomicInteger();
+
+        private final AtomicInteger remaining;
+
+        private final AtomicInteger completed = new AtomicInteger();
+
+        Job(String kid, String docId, List<String> chunkList, List<String> fidList) {
+            this.kid = kid;
+            this.docId = docId;
+            this.chunkList = chunkList;
+            this.fidList = fidList;
+            this.batches = split(chunkList);
+            this.remaining = new AtomicInteger(batches.size());
+        }
+
+        void start() {
+            if (batches.isEmpty()) {
+                report(EmbeddingProgressVo.STATUS_DONE, null);
+                future.complete(null);
+                return;
+            }
+            report(EmbeddingProgressVo.STATUS_RUNNING, null);
+            for (int i = 0; i < Math.min(MAX_IN_FLIGHT, batches.size()); i++) {
+                launch();
+            }
+        }
+
+        /**
+         * 提交下一个批次 一个批次完成后才提交下一个, 保证每个文档的并发不超过窗口大小
+         */
+        private void launch() {
+            int index = next.getAndIncrement();
+            if (index >= batches.size() || future.isDone()) {
+                return;
+            }
+            try {
+                executor.execute(() -> run(batches.get(index)));
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private void run(int[] batch) {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                List<String> chunks = chunkList.subList(batch[0], batch[1]);
+                List<float[]> vectors = embed(chunks);
+                List<String> fids = fidList == null ? null : fidList.subList(batch[0], Math.min(batch[1], fidList.size()));
+                vectorStore.storeFloatEmbeddings(chunks, vectors, kid, docId, fids);
+                completed.addAndGet(chunks.size());
+                if (remaining.decrementAndGet() == 0) {
+                    future.complete(null);
+                    report(EmbeddingProgressVo.STATUS_DONE, null);
+                } else {
+                    report(EmbeddingProgressVo.STATUS_RUNNING, null);
+                    launch();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * 请求向量接口 失败时指数退避重试
+         */
+        private List<float[]> embed(List<String> chunks) throws InterruptedException {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return vectorization.batchFloatVectorization(chunks, kid);
+                } catch (RuntimeException e) {
+                    if (attempt == MAX_ATTEMPTS) {
+                        throw e;
+                    }
+                    long backoff = BACKOFF_MILLIS << (attempt - 1);
+                    log.warn("文档{}向量化失败, {}ms后第{}次重试: {}", docId, backoff, attempt, e.getMessage());
+                    Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff / 2));
+                }
+            }
+        }
+
+        private void fail(Exception e) {
+            if (future.completeExceptionally(e)) {
+                log.error("文档{}向量化失败: {}", docId, e.getMessage(), e);
+                report(EmbeddingProgressVo.STATUS_FAILED, e.getMessage());
+            }
+        }
+
+        private synchronized void report(String status, String message) {
+            // 结束后不再被运行中的批次覆盖
+            if (EmbeddingProgressVo.STATUS_RUNNING.equals(status) && future.isDone()) {
+                return;
+            }
+            EmbeddingProgressVo progress = new EmbeddingProgressVo();
+            progress.setKid(kid);
+            progress.setDocId(docId);
+            progress.setStatus(status);
+            progress.setTotal(chunkList.size());
+            progress.setCompleted(completed.get());
+            progress.setMessage(message);
+            RedisUtils.setCacheObject(PROGRESS_KEY + docId, progress, PROGRESS_TTL);
+        }
+    }
+}
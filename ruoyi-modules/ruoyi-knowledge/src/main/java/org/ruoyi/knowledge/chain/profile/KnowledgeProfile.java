@@ -0,0 +1,55 @@
+package org.ruoyi.knowledge.chain.profile;
+
+import org.ruoyi.common.core.utils.StringUtils;
+import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
+
+/**
+ * 知识库配置快照
+ * <p>
+ * 切分、向量化、检索使用的知识库配置, 不可变, 可在线程间共享
+ *
+ * @param id                 知识库ID
+ * @param knowledgeSeparator 知识分隔符
+ * @param questionSeparator  提问分隔符
+ * @param overlapChar        重叠字符数
+ * @param retrieveLimit      检索条数
+ * @param textBlockSize      文本块大小
+ * @param vector             向量库
+ * @param vectorModel        向量模型
+ */
+public record KnowledgeProfile(Long id, String knowledgeSeparator, String questionSeparator, Integer overlapChar,
+                               Integer retrieveLimit, Integer textBlockSize, String vector, String vectorModel) {
+
+    public static final String DEFAULT_VECTOR = "weaviate";
+
+    public static final String DEFAULT_VECTOR_MODEL = "text-embedding-3-small";
+
+    public static final int DEFAULT_RETRIEVE_LIMIT = 10;
+
+    public static KnowledgeProfile of(KnowledgeInfoVo knowledgeInfoVo) {
+        return new KnowledgeProfile(knowledgeInfoVo.getId(), knowledgeInfoVo.getKnowledgeSeparator(),
+            knowledgeInfoVo.getQuestionSeparator(), knowledgeInfoVo.getOverlapChar(), knowledgeInfoVo.getRetrieveLimit(),
+            knowledgeInfoVo.getTextBlockSize(), knowledgeInfoVo.getVector(), knowledgeInfoVo.getVectorModel());
+    }
+
+    /**
+     * 向量库 未配置时为weaviate
+     */
+    public String vectorOrDefault() {
+        return StringUtils.isNotEmpty(vector) ? vector : DEFAULT_VECTOR;
+    }
+
+    /**
+     * 向量模型 未配置时为text-embedding-3-small
+     */
+    public String vectorModelOrDefault() {
+        return StringUtils.isNotEmpty(vectorModel) ? vectorModel : DEFAULT_VECTOR_MODEL;
+    }
+
+    /**
+     * 检索条数 未配置时为10
+     */
+    public int retrieveLimitOrDefault() {
+        return retrieveLimit == null ? DEFAULT_RETRIEVE_LIMIT : retrieveLimit;
+    }
+}
@@ -0,0 +1,108 @@
+package org.ruoyi.knowledge.chain.profile;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.date.DateUnit;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.common.core.utils.StringUtils;
+import org.ruoyi.common.redis.utils.RedisUtils;
+import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
+import org.ruoyi.knowledge.mapper.KnowledgeInfoMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 知识库配置缓存
+ * <p>
+ * 切分、向量化、检索各环节按知识库ID读取配置, 本地缓存后一次对话或入库只查询一次数据库;
+ * 知识库修改或删除后通过redis通知所有节点清除
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class KnowledgeProfileCache {
+
+    private static final String EVICT_TOPIC = "knowledge:profile:evict";
+
+    private static final long TTL = DateUnit.MINUTE.getMillis() * 10;
+
+    private final KnowledgeInfoMapper knowledgeInfoMapper;
+
+    private final LRUCache<String, KnowledgeProfile> cache = CacheUtil.newLRUCache(1024, TTL);
+
+    /**
+     * 清除次数 加载期间发生清除时不缓存加载结果
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        RedisUtils.subscribe(EVICT_TOPIC, String.class, this::remove);
+    }
+
+    /**
+     * 获取知识库配置
+     *
+     * @param kid 知识库ID
+     * @return 知识库不存在时返回null
+     */
+    public KnowledgeProfile get(String kid) {
+        if (StringUtils.isBlank(kid)) {
+            return null;
+        }
+        KnowledgeProfile profile = cache.get(kid);
+        if (profile != null) {
+            return profile;
+        }
+        long generation = evictions.get();
+        KnowledgeInfoVo knowledgeInfoVo = knowledgeInfoMapper.selectVoById(Long.valueOf(kid));
+        if (knowledgeInfoVo == null) {
+            return null;
+        }
+        profile = KnowledgeProfile.of(knowledgeInfoVo);
+        if (evictions.get() == generation) {
+            cache.put(kid, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * 清除知识库配置 在事务中调用时提交后再清除一次, 避免其他线程在提交前加载旧数据
+     *
+     * @param id 知识库ID
+     */
+    public void evict(Long id) {
+        if (id == null) {
+            return;
+        }
+        String kid = String.valueOf(id);
+        publish(kid);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(kid);
+                }
+            });
+        }
+    }
+
+    private void publish(String kid) {
+        remove(kid);
+        try {
+            RedisUtils.publish(EVICT_TOPIC, kid);
+        } catch (Exception e) {
+            log.warn("知识库{}配置缓存清除通知失败: {}", kid, e.getMessage());
+        }
+    }
+
+    private void remove(String kid) {
+        evictions.incrementAndGet();
+        cache.remove(kid);
+    }
+}
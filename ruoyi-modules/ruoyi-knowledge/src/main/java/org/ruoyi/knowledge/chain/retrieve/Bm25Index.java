@@ -0,0 +1,196 @@
+package org.ruoyi.knowledge.chain.retrieve;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 单个知识库片段的BM25倒排索引
+ * <p>
+ * 片段按加入顺序编号, 删除只做标记并更新统计; 线程安全
+ */
+public class Bm25Index {
+
+    private static final float K1 = 1.2f;
+
+    private static final float B = 0.75f;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    private final List<Fragment> fragments = new ArrayList<>();
+
+    private int[] lengths = new int[64];
+
+    private final BitSet deleted = new BitSet();
+
+    private int liveCount;
+
+    private long liveLength;
+
+    /**
+     * 加入片段
+     */
+    public void add(String fid, String docId, String content) {
+        List<String> tokens = TextTokenizer.tokenize(content);
+        Map<String, Integer> termFrequency = new HashMap<>();
+        for (String token : tokens) {
+            termFrequency.merge(token, 1, Integer::sum);
+        }
+        lock.writeLock().lock();
+        try {
+            int doc = fragments.size();
+            fragments.add(new Fragment(fid, docId, content));
+            if (doc == lengths.length) {
+                lengths = Arrays.copyOf(lengths, doc * 2);
+            }
+            lengths[doc] = tokens.size();
+            for (Map.Entry<String, Integer> entry : termFrequency.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), key -> new Postings()).add(doc, entry.getValue());
+            }
+            liveCount++;
+            liveLength += tokens.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 删除满足条件的片段
+     *
+     * @return 删除数量
+     */
+    public int delete(Predicate<Fragment> filter) {
+        lock.writeLock().lock();
+        try {
+            int count = 0;
+            for (int doc = 0; doc < fragments.size(); doc++) {
+                Fragment fragment = fragments.get(doc);
+                if (deleted.get(doc) || !filter.test(fragment)) {
+                    continue;
+                }
+                deleted.set(doc);
+                liveCount--;
+                liveLength -= lengths[doc];
+                for (String term : new LinkedHashSet<>(TextTokenizer.tokenize(fragment.content()))) {
+                    Postings termPostings = postings.get(term);
+                    if (termPostings != null) {
+                        termPostings.live--;
+                    }
+                }
+                count++;
+            }
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 已删除片段的占比 过高时应重建
+     */
+    public double deletedRatio() {
+        lock.readLock().lock();
+        try {
+            return fragments.isEmpty() ? 0 : (double) (fragments.size() - liveCount) / fragments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 查询BM25得分最高的片段
+     *
+     * @param query 查询文本
+     * @param k     返回数量
+     * @return 按得分从高到低排列的片段
+     */
+    public List<Fragment> search(String query, int k) {
+        Set<String> terms = new LinkedHashSet<>(TextTokenizer.tokenize(query));
+        lock.readLock().lock();
+        try {
+            List<Fragment> result = new ArrayList<>();
+            if (liveCount == 0 || terms.isEmpty() || k <= 0) {
+                return result;
+            }
+            float averageLength = Math.max(1f, (float) liveLength / liveCount);
+            float[] scores = new float[fragments.size()];
+            for (String term : terms) {
+                Postings termPostings = postings.get(term);
+                if (termPostings == null || termPostings.live <= 0) {
+                    continue;
+                }
+                double idf = Math.log(1 + (liveCount - termPostings.live + 0.5) / (termPostings.live + 0.5));
+                for (int i = 0; i < termPostings.size; i++) {
+                    int doc = termPostings.docs[i];
+                    int tf = termPostings.frequencies[i];
+                    float norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                    scores[doc] += (float) (idf * tf * (K1 + 1) / (tf + norm));
+                }
+            }
+            PriorityQueue<Integer> top = new PriorityQueue<>(k + 1, (a, b) -> Float.compare(scores[a], scores[b]));
+            for (int doc = 0; doc < scores.length; doc++) {
+                if (scores[doc] <= 0 || deleted.get(doc)) {
+                    continue;
+                }
+                if (top.size() < k) {
+                    top.add(doc);
+                } else if (scores[doc] > scores[top.peek()]) {
+                    top.poll();
+                    top.add(doc);
+                }
+            }
+            while (!top.isEmpty()) {
+                result.add(fragments.get(top.poll()));
+            }
+            Collections.reverse(result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 索引中的片段
+     */
+    public record Fragment(String fid, String docId, String content) {
+    }
+
+    /**
+     * 单个词的倒排列表
+     */
+    private static class Postings {
+
+        private int[] docs = new int[4];
+
+        private int[] frequencies = new int[4];
+
+        private int size;
+
+        /**
+         * 未删除的片段数 即文档频率
+         */
+        private int live;
+
+        void add(int doc, int frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+            live++;
+        }
+    }
+}
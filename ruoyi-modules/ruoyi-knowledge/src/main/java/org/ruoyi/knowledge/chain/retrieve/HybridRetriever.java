@@ -0,0 +1,96 @@
+package org.ruoyi.knowledge.chain.retrieve;
+
+import jakarta.annotation.Resource;
+import lombok.RequiredArgsConstructor;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
+import org.ruoyi.knowledge.chain.vectorstore.VectorStore;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 混合检索
+ * <p>
+ * 向量检索与BM25关键词检索的结果按倒数排名融合(RRF), 片段得分为各路排名 1/(60 + rank) 之和,
+ * 返回数量取知识库的 retrieveLimit
+ */
+@Component
+@RequiredArgsConstructor
+public class HybridRetriever {
+
+    private static final int RRF_K = 60;
+
+    /**
+     * 关键词检索的候选数为返回数量的倍数
+     */
+    private static final int LEXICAL_CANDIDATE_FACTOR = 2;
+
+    private final VectorStore vectorStore;
+
+    private final LexicalRetriever lexicalRetriever;
+
+    @Resource
+    private KnowledgeProfileCache knowledgeProfileCache;
+
+    /**
+     * 检索与问题最相关的片段内容
+     *
+     * @param kid         知识库ID
+     * @param query       问题
+     * @param queryVector 问题向量
+     * @return 片段内容
+     */
+    public List<String> retrieve(String kid, String query, float[] queryVector) {
+        int limit = limit(kid);
+        return fuse(limit, vectorRetrieve(kid, queryVector), lexicalRetrieve(kid, query, limit * LEXICAL_CANDIDATE_FACTOR));
+    }
+
+    /**
+     * 仅向量检索
+     */
+    public List<String> vectorRetrieve(String kid, float[] queryVector) {
+        List<String> result = vectorStore.nearest(queryVector, kid);
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    /**
+     * 仅关键词检索
+     */
+    public List<String> lexicalRetrieve(String kid, String query, int k) {
+        return lexicalRetriever.search(kid, query, k);
+    }
+
+    public int limit(String kid) {
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
+        return profile == null ? KnowledgeProfile.DEFAULT_RETRIEVE_LIMIT : profile.retrieveLimitOrDefault();
+    }
+
+    /**
+     * 倒数排名融合 同一内容在多路结果中出现时得分累加
+     *
+     * @param limit    返回数量
+     * @param rankings 各路检索结果 按相关度从高到低
+     * @return 融合后的内容
+     */
+    @SafeVarargs
+    public static List<String> fuse(int limit, List<String>... rankings) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (List<String> ranking : rankings) {
+            for (int i = 0; i < ranking.size(); i++) {
+                scores.merge(ranking.get(i), 1.0 / (RRF_K + i + 1), Double::sum);
+            }
+        }
+        List<Map.Entry<String, Double>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort(Map.Entry.<String, Double>comparingByValue().reversed());
+        List<String> result = new ArrayList<>(Math.min(limit, entries.size()));
+        for (int i = 0; i < Math.min(limit, entries.size()); i++) {
+            result.add(entries.get(i).getKey());
+        }
+        return result;
+    }
+}
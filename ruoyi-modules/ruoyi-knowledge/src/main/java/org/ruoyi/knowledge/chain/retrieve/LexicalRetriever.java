@@ -0,0 +1,155 @@
+package org.ruoyi.knowledge.chain.retrieve;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.common.redis.utils.RedisUtils;
+import org.ruoyi.knowledge.domain.KnowledgeFragment;
+import org.ruoyi.knowledge.mapper.KnowledgeFragmentMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 知识片段关键词检索
+ * <p>
+ * 每个节点在内存中为知识库建立BM25索引, 首次查询时从 knowledge_fragment 加载, 之后随入库和删除增量更新
+ * redis中记录每个知识库的版本号, 其他节点修改过的知识库在下次查询时重新加载
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LexicalRetriever {
+
+    private static final String VERSION_KEY = "knowledge:lexical:version:";
+
+    /**
+     * 已删除片段超过该占比时重新加载
+     */
+    private static final double MAX_DELETED_RATIO = 0.3;
+
+    private final KnowledgeFragmentMapper fragmentMapper;
+
+    private final LRUCache<String, LoadedIndex> indexes = CacheUtil.newLRUCache(64);
+
+    private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 查询关键词最匹配的片段内容
+     *
+     * @param kid   知识库ID
+     * @param query 查询文本
+     * @param k     返回数量
+     * @return 按得分从高到低排列的片段内容
+     */
+    public List<String> search(String kid, String query, int k) {
+        List<String> result = new ArrayList<>();
+        for (Bm25Index.Fragment fragment : getIndex(kid).search(query, k)) {
+            result.add(fragment.content());
+        }
+        return result;
+    }
+
+    /**
+     * 加入入库完成的片段
+     */
+    public void add(String kid, List<KnowledgeFragment> fragments) {
+        update(kid, index -> {
+            for (KnowledgeFragment fragment : fragments) {
+                index.add(fragment.getFid(), fragment.getDocId(), fragment.getContent());
+            }
+        });
+    }
+
+    public void removeByDocId(String kid, String docId) {
+        update(kid, index -> index.delete(fragment -> Objects.equals(docId, fragment.docId())));
+    }
+
+    public void removeByFid(String kid, String fid) {
+        update(kid, index -> index.delete(fragment -> Objects.equals(fid, fragment.fid())));
+    }
+
+    public void removeByKid(String kid) {
+        bumpVersion(kid);
+        indexes.remove(kid);
+    }
+
+    /**
+     * 修改本地已加载的索引并递增版本号 期间其他节点也有修改时丢弃本地索引
+     */
+    private void update(String kid, Consumer<Bm25Index> change) {
+        LoadedIndex loaded = indexes.get(kid);
+        if (loaded == null) {
+            bumpVersion(kid);
+            return;
+        }
+        synchronized (loaded) {
+            change.accept(loaded.index);
+            long version = bumpVersion(kid);
+            if (version == loaded.version + 1 && loaded.index.deletedRatio() <= MAX_DELETED_RATIO) {
+                loaded.version = version;
+            } else {
+                indexes.remove(kid);
+            }
+        }
+    }
+
+    private Bm25Index getIndex(String kid) {
+        long version = currentVersion(kid);
+        LoadedIndex loaded = indexes.get(kid);
+        if (loaded != null && (loaded.version == version || version < 0)) {
+            return loaded.index;
+        }
+        synchronized (loadLocks.computeIfAbsent(kid, key -> new Object())) {
+            loaded = indexes.get(kid);
+            if (loaded != null && loaded.version == version) {
+                return loaded.index;
+            }
+            Bm25Index index = new Bm25Index();
+            List<KnowledgeFragment> fragments = fragmentMapper.selectList(Wrappers.<KnowledgeFragment>lambdaQuery()
+                .select(KnowledgeFragment::getFid, KnowledgeFragment::getDocId, KnowledgeFragment::getContent)
+                .eq(KnowledgeFragment::getKid, kid));
+            for (KnowledgeFragment fragment : fragments) {
+                index.add(fragment.getFid(), fragment.getDocId(), fragment.getContent());
+            }
+            log.info("知识库{}加载关键词索引, 片段数: {}", kid, fragments.size());
+            indexes.put(kid, new LoadedIndex(index, version));
+            return index;
+        }
+    }
+
+    /**
+     * 当前版本号 redis不可用时返回-1, 继续使用本地索引
+     */
+    private long currentVersion(String kid) {
+        try {
+            return RedisUtils.getAtomicValue(VERSION_KEY + kid);
+        } catch (Exception e) {
+            log.warn("读取知识库{}关键词索引版本失败: {}", kid, e.getMessage());
+            return -1;
+        }
+    }
+
+    private long bumpVersion(String kid) {
+        return RedisUtils.incrAtomicValue(VERSION_KEY + kid);
+    }
+
+    private static class LoadedIndex {
+
+        private final Bm25Index index;
+
+        private volatile long version;
+
+        LoadedIndex(Bm25Index index, long version) {
+            this.index = index;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.ruoyi.knowledge.chain.retrieve;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
+import org.ruoyi.common.core.service.ConfigService;
+import org.ruoyi.common.core.utils.StringUtils;
+import org.ruoyi.common.core.utils.Threads;
+import org.ruoyi.knowledge.chain.vectorizer.Vectorization;
+import org.ruoyi.knowledge.chain.vectorizer.VectorizationFactory;
+import org.ruoyi.knowledge.chain.vectorstore.VectorSearchHit;
+import org.ruoyi.knowledge.chain.vectorstore.VectorStore;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 多知识库检索
+ * <p>
+ * 问题按向量模型各向量化一次, 各知识库的向量检索并行执行, 总耗时约为最慢的知识库;
+ * 超过截止时间(配置 knowledge/retrieveTimeout 毫秒, 默认3000)仍未返回的知识库不参与合并, 其未开始的任务被取消;
+ * 线程池队列已满时跳过该知识库.
+ * 不同向量库的相似度量纲不同(Milvus为内积, Weaviate和本地库为余弦相似度), 结果按倒数排名融合(RRF)而非按分数合并,
+ * 片段得分为其在各知识库结果中排名 1/(60 + rank) 之和, 同一片段只保留一次
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MultiKnowledgeRetriever {
+
+    private static final long DEFAULT_TIMEOUT_MILLIS = 3000;
+
+    private static final int RRF_K = 60;
+
+    private final VectorStore vectorStore;
+
+    private final Vectorization vectorization;
+
+    private final VectorizationFactory vectorizationFactory;
+
+    private final ConfigService configService;
+
+    @Resource
+    private KnowledgeProfileCache knowledgeProfileCache;
+
+    /**
+     * 等待执行的任务上限 检索慢时拒绝新任务 避免积压拖慢后续请求
+     */
+    private static final int QUEUE_CAPACITY = 256;
+
+    private final ExecutorService executor = new ThreadPoolExecutor(16, 16, 0, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+        new BasicThreadFactory.Builder().namingPattern("knowledge-retrieve-%d").daemon(true).build());
+
+    @PreDestroy
+    public void destroy() {
+        Threads.shutdownAndAwaitTermination(executor);
+    }
+
+    /**
+     * 检索多个知识库
+     *
+     * @param kids  知识库ID
+     * @param query 问题
+     * @return 按融合得分从高到低排列的片段 数量取各知识库 retrieveLimit 的最大值, score 仍为所在向量库的原始相似度
+     */
+    public List<VectorSearchHit> retrieve(List<String> kids, String query) {
+        long deadline = System.currentTimeMillis() + timeout();
+        Map<String, CompletableFuture<float[]>> queryVectors = new HashMap<>();
+        Map<String, CompletableFuture<List<VectorSearchHit>>> searches = new HashMap<>();
+        Queue<CompletableFuture<?>> tasks = new ConcurrentLinkedQueue<>();
+        int limit = 0;
+        for (String kid : new LinkedHashSet<>(kids)) {
+            if (StringUtils.isBlank(kid)) {
+                continue;
+            }
+            limit = Math.max(limit, limit(kid));
+            // 使用相同向量模型的知识库共用查询向量
+            CompletableFuture<float[]> queryVector = queryVectors.computeIfAbsent(vectorizationFactory.getVectorModel(kid),
+                model -> submit(() -> vectorization.singleFloatVectorization(query, kid), tasks));
+            searches.put(kid, queryVector.thenCompose(vector -> System.currentTimeMillis() >= deadline
+                ? CompletableFuture.completedFuture(Collections.emptyList())
+                : submit(() -> vectorStore.search(vector, kid), tasks)));
+        }
+
+        Map<String, VectorSearchHit> hits = new HashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<List<VectorSearchHit>>> entry : searches.entrySet()) {
+            // 同一知识库内的分数可比较 先按分数排出名次
+            List<VectorSearchHit> ranking = new ArrayList<>(await(entry.getKey(), entry.getValue(), deadline));
+            ranking.sort(Comparator.comparingDouble(VectorSearchHit::score).reversed());
+            for (int i = 0; i < ranking.size(); i++) {
+                VectorSearchHit hit = ranking.get(i);
+                String key = hit.fid() != null ? hit.fid() : hit.kid() + ':' + hit.content();
+                hits.putIfAbsent(key, hit);
+                scores.merge(key, 1.0 / (RRF_K + i + 1), Double::sum);
+            }
+        }
+        // 取消超时未开始的任务 已在执行的任务结束后丢弃结果
+        tasks.forEach(task -> task.cancel(false));
+        List<String> keys = new ArrayList<>(scores.keySet());
+        keys.sort(Comparator.comparingDouble(scores::get).reversed());
+        List<VectorSearchHit> result = new ArrayList<>(Math.min(limit, keys.size()));
+        for (int i = 0; i < Math.min(limit, keys.size()); i++) {
+            result.add(hits.get(keys.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * 提交任务 线程池已满时返回失败的结果
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> supplier, Queue<CompletableFuture<?>> tasks) {
+        try {
+            CompletableFuture<T> task = CompletableFuture.supplyAsync(supplier, executor);
+            tasks.add(task);
+            return task;
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 等待单个知识库的结果 超时或失败时返回空结果
+     */
+    private List<VectorSearchHit> await(String kid, CompletableFuture<List<VectorSearchHit>> search, long deadline) {
+        try {
+            List<VectorSearchHit> hits = search.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            return hits == null ? Collections.emptyList() : hits;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        } catch (Exception e) {
+            log.warn("知识库{}检索失败或超时, 不参与合并: {}", kid, e.toString());
+            return Collections.emptyList();
+        }
+    }
+
+    private int limit(String kid) {
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
+        return profile == null ? KnowledgeProfile.DEFAULT_RETRIEVE_LIMIT : profile.retrieveLimitOrDefault();
+    }
+
+    private long timeout() {
+        String value = configService.getConfigValue("knowledge", "retrieveTimeout");
+        try {
+            return StringUtils.isBlank(value) ? DEFAULT_TIMEOUT_MILLIS : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return DEFAULT_TIMEOUT_MILLIS;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.ruoyi.knowledge.chain.retrieve;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 检索效果离线评估
+ * <p>
+ * 对标注好相关片段的问题集合分别执行检索, 统计 recall@k、MRR 和平均耗时, 用于比较不同检索方式, 例如:
+ * <pre>
+ * RetrievalEvaluator.evaluate(cases, 10, q -&gt; hybridRetriever.vectorRetrieve(kid, vectorization.singleFloatVectorization(q, kid)));
+ * RetrievalEvaluator.evaluate(cases, 10, q -&gt; hybridRetriever.retrieve(kid, q, vectorization.singleFloatVectorization(q, kid)));
+ * </pre>
+ */
+public final class RetrievalEvaluator {
+
+    private RetrievalEvaluator() {
+    }
+
+    /**
+     * 评估检索方式
+     *
+     * @param cases     标注数据
+     * @param k         只统计前k个结果
+     * @param retriever 问题到片段内容的检索方式
+     * @return 评估结果
+     */
+    public static Report evaluate(List<Case> cases, int k, Function<String, List<String>> retriever) {
+        double recall = 0;
+        double reciprocalRank = 0;
+        long nanos = 0;
+        for (Case item : cases) {
+            long start = System.nanoTime();
+            List<String> result = retriever.apply(item.query());
+            nanos += System.nanoTime() - start;
+
+            int hits = 0;
+            int firstHit = 0;
+            for (int i = 0; i < Math.min(k, result.size()); i++) {
+                if (item.relevant().contains(result.get(i))) {
+                    hits++;
+                    if (firstHit == 0) {
+                        firstHit = i + 1;
+                    }
+                }
+            }
+            if (!item.relevant().isEmpty()) {
+                recall += (double) hits / item.relevant().size();
+            }
+            if (firstHit > 0) {
+                reciprocalRank += 1.0 / firstHit;
+            }
+        }
+        int size = Math.max(1, cases.size());
+        return new Report(cases.size(), recall / size, reciprocalRank / size, nanos / 1_000_000.0 / size);
+    }
+
+    /**
+     * 标注数据
+     *
+     * @param query    问题
+     * @param relevant 相关片段内容
+     */
+    public record Case(String query, Set<String> relevant) {
+    }
+
+    /**
+     * 评估结果
+     *
+     * @param cases         问题数
+     * @param recall        平均召回率
+     * @param mrr           平均倒数排名
+     * @param averageMillis 平均耗时(毫秒)
+     */
+    public record Report(int cases, double recall, double mrr, double averageMillis) {
+    }
+}
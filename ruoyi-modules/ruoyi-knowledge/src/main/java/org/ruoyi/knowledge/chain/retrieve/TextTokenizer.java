@@ -0,0 +1,61 @@
+package org.ruoyi.knowledge.chain.retrieve;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 检索分词
+ * <p>
+ * 英文、数字等按连续的字母数字切分并转为小写; 中日韩文字没有空格分隔, 按单字和相邻两字切分, 无需词典
+ */
+public class TextTokenizer {
+
+    private TextTokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        StringBuilder word = new StringBuilder();
+        int previousCjk = -1;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                flush(word, tokens);
+                String current = new String(Character.toChars(codePoint));
+                tokens.add(current);
+                if (previousCjk >= 0) {
+                    tokens.add(new String(Character.toChars(previousCjk)) + current);
+                }
+                previousCjk = codePoint;
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                word.appendCodePoint(codePoint);
+                previousCjk = -1;
+            } else {
+                flush(word, tokens);
+                previousCjk = -1;
+            }
+        }
+        flush(word, tokens);
+        return tokens;
+    }
+
+    private static void flush(StringBuilder word, List<String> tokens) {
+        if (!word.isEmpty()) {
+            tokens.add(word.toString().toLowerCase(Locale.ROOT));
+            word.setLength(0);
+        }
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA
+            || script == Character.UnicodeScript.HANGUL;
+    }
+}
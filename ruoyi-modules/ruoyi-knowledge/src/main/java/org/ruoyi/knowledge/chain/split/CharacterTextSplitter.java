@@ -2,10 +2,9 @@ package org.ruoyi.knowledge.chain.split;
 
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
 import org.ruoyi.common.core.utils.StringUtils;
-import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
-import org.ruoyi.knowledge.service.IKnowledgeInfoService;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 
@@ -18,17 +17,16 @@ import java.util.List;
 @Primary
 public class CharacterTextSplitter implements TextSplitter {
 
-    @Lazy
     @Resource
-    private IKnowledgeInfoService knowledgeInfoService;
+    private KnowledgeProfileCache knowledgeProfileCache;
 
     @Override
     public List<String> split(String content, String kid) {
         // 从知识库表中获取配置
-        KnowledgeInfoVo knowledgeInfoVo = knowledgeInfoService.queryById(Long.valueOf(kid));
-        String knowledgeSeparator = knowledgeInfoVo.getKnowledgeSeparator();
-        int textBlockSize = knowledgeInfoVo.getTextBlockSize();
-        int overlapChar = knowledgeInfoVo.getOverlapChar();
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
+        String knowledgeSeparator = profile.knowledgeSeparator();
+        int textBlockSize = profile.textBlockSize();
+        int overlapChar = profile.overlapChar();
         List<String> chunkList = new ArrayList<>();
         if (content.contains(knowledgeSeparator) && StringUtils.isNotBlank(knowledgeSeparator)) {
             // 按自定义分隔符切分
@@ -1,17 +1,153 @@
 package org.ruoyi.knowledge.chain.split;
 
-import lombok.AllArgsConstructor;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
+/**
+ * 代码切分
+ * <p>
+ * 按token预算合并, 优先在外层的类、函数声明处截断, 其次是空行; 声明前的注释和注解与声明放在同一块
+ * 嵌套层级取大括号深度和缩进层级中的较大值, 同时适用于大括号语言和Python
+ */
 @Component
-@AllArgsConstructor
 @Slf4j
 public class CodeTextSplitter implements TextSplitter{
+
+    private static final Pattern DECLARATION = Pattern.compile(
+        "^(?:(?:public|protected|private|internal|static|final|abstract|sealed|open|override|export|default|async|pub)\\s+)*"
+            + "(?:class|interface|enum|record|struct|trait|impl|object|module|namespace|def|fun|func|fn|function)\\b");
+
+    /**
+     * 带修饰符的方法声明 如 public void foo(
+     */
+    private static final Pattern METHOD = Pattern.compile(
+        "^(?:(?:public|protected|private|static|final|abstract|synchronized|native|override|virtual|inline)\\s+)+"
+            + "[\\w<>\\[\\],.?\\s]+?\\s+\\w+\\s*\\(");
+
+    /**
+     * 最外层声明的边界强度 每深一层减一
+     */
+    private static final int DECLARATION_LEVEL = 7;
+
+    /**
+     * 最外层空行的边界强度 每深一层减一
+     */
+    private static final int BLANK_LEVEL = 3;
+
+    @Resource
+    private KnowledgeProfileCache knowledgeProfileCache;
+
     @Override
     public List<String> split(String content, String kid) {
-        return null;
+        TokenChunker chunker = TokenChunker.of(knowledgeProfileCache.get(kid));
+        List<String> lines = new ArrayList<>();
+        List<Integer> levels = new ArrayList<>();
+        int depth = 0;
+        boolean inComment = false;
+        boolean blank = false;
+        // 连续的注释、注解行的起点 声明的边界移到这里
+        int leadIn = -1;
+        int start = 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            end = end < 0 ? content.length() : end + 1;
+            String line = content.substring(start, end);
+            String trimmed = line.strip();
+            int nesting = Math.max(depth, indent(line) / 4);
+            int level = 0;
+            if (!inComment && !trimmed.isEmpty()) {
+                if (DECLARATION.matcher(trimmed).find() || METHOD.matcher(trimmed).find()) {
+                    level = DECLARATION_LEVEL - Math.min(nesting, 3);
+                } else if (blank) {
+                    level = BLANK_LEVEL - Math.min(nesting, 2);
+                }
+            }
+            int index = lines.size();
+            lines.add(line);
+            levels.add(level);
+            if (level >= DECLARATION_LEVEL - 3 && leadIn >= 0) {
+                levels.set(leadIn, Math.max(levels.get(leadIn), level));
+                levels.set(index, 0);
+            }
+            if (trimmed.isEmpty()) {
+                leadIn = -1;
+            } else if (inComment || isLeadIn(trimmed)) {
+                if (leadIn < 0) {
+                    leadIn = index;
+                }
+            } else {
+                leadIn = -1;
+            }
+            blank = trimmed.isEmpty();
+            int[] state = scan(line, depth, inComment);
+            depth = state[0];
+            inComment = state[1] == 1;
+            start = end;
+        }
+        for (int i = 0; i < lines.size(); i++) {
+            chunker.add(lines.get(i), levels.get(i), null);
+        }
+        return chunker.chunks();
+    }
+
+    private static boolean isLeadIn(String trimmed) {
+        return trimmed.startsWith("//") || trimmed.startsWith("/*") || trimmed.startsWith("*")
+            || trimmed.startsWith("@") || trimmed.startsWith("#[") || (trimmed.startsWith("#") && !trimmed.startsWith("#include"));
+    }
+
+    private static int indent(String line) {
+        int width = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ') {
+                width++;
+            } else if (c == '\t') {
+                width += 4;
+            } else {
+                break;
+            }
+        }
+        return width;
+    }
+
+    /**
+     * 计算行尾的大括号深度和是否处于块注释中 跳过字符串和注释中的括号
+     */
+    private static int[] scan(String line, int depth, boolean inComment) {
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            char next = i + 1 < line.length() ? line.charAt(i + 1) : 0;
+            if (inComment) {
+                if (c == '*' && next == '/') {
+                    inComment = false;
+                    i++;
+                }
+            } else if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '/' && next == '/') {
+                break;
+            } else if (c == '/' && next == '*') {
+                inComment = true;
+                i++;
+            } else if (c == '"' || c == '\'' || c == '`') {
+                quote = c;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth = Math.max(0, depth - 1);
+            }
+        }
+        return new int[]{depth, inComment ? 1 : 0};
     }
 }
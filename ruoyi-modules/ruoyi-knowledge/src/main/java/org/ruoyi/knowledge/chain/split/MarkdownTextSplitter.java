@@ -1,17 +1,110 @@
 package org.ruoyi.knowledge.chain.split;
 
-import lombok.AllArgsConstructor;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 
+/**
+ * Markdown切分
+ * <p>
+ * 按token预算合并, 优先在高层级标题处截断, 其次是低层级标题、空行; 代码块内部尽量不截断
+ * 不以标题开头的块在开头补充所属的标题路径
+ */
 @Component
-@AllArgsConstructor
 @Slf4j
 public class MarkdownTextSplitter implements TextSplitter{
+
+    /**
+     * 一级标题的边界强度 六级标题为 HEADING - 5
+     */
+    private static final int HEADING = 9;
+
+    private static final int PARAGRAPH = 3;
+
+    private static final int FENCE_PARAGRAPH = 1;
+
+    private static final int LINE = 1;
+
+    private static final int FENCE_LINE = 0;
+
+    @Resource
+    private KnowledgeProfileCache knowledgeProfileCache;
+
     @Override
     public List<String> split(String content, String kid) {
-        return null;
+        TokenChunker chunker = TokenChunker.of(knowledgeProfileCache.get(kid));
+        String[] titles = new String[6];
+        String path = null;
+        String fence = null;
+        boolean blank = false;
+        int start = 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            end = end < 0 ? content.length() : end + 1;
+            String line = content.substring(start, end);
+            String trimmed = line.strip();
+            int level;
+            String prefix = path;
+            if (fence != null) {
+                level = blank ? FENCE_PARAGRAPH : FENCE_LINE;
+                if (trimmed.startsWith(fence)) {
+                    fence = null;
+                }
+            } else if (trimmed.startsWith("```") || trimmed.startsWith("~~~")) {
+                level = PARAGRAPH;
+                fence = trimmed.substring(0, 3);
+            } else {
+                int heading = headingLevel(trimmed);
+                if (heading > 0) {
+                    level = HEADING + 1 - heading;
+                    // 标题行本身只带上级路径
+                    prefix = path(titles, heading - 1);
+                    titles[heading - 1] = trimmed.substring(heading).strip();
+                    for (int i = heading; i < titles.length; i++) {
+                        titles[i] = null;
+                    }
+                    path = path(titles, heading);
+                } else {
+                    level = blank ? PARAGRAPH : LINE;
+                }
+            }
+            blank = trimmed.isEmpty();
+            chunker.add(line, level, prefix);
+            start = end;
+        }
+        return chunker.chunks();
+    }
+
+    /**
+     * ATX标题的级别 不是标题时返回0
+     */
+    private static int headingLevel(String line) {
+        int level = 0;
+        while (level < line.length() && line.charAt(level) == '#') {
+            level++;
+        }
+        if (level == 0 || level > 6) {
+            return 0;
+        }
+        return level == line.length() || Character.isWhitespace(line.charAt(level)) ? level : 0;
+    }
+
+    /**
+     * 前 depth 级标题组成的路径 没有标题时为null
+     */
+    private static String path(String[] titles, int depth) {
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            if (titles[i] != null && !titles[i].isEmpty()) {
+                if (!path.isEmpty()) {
+                    path.append(" > ");
+                }
+                path.append(titles[i]);
+            }
+        }
+        return path.isEmpty() ? null : path.toString();
     }
 }
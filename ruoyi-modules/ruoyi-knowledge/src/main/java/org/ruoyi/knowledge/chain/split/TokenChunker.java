@@ -0,0 +1,194 @@
+package org.ruoyi.knowledge.chain.split;
+
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.ruoyi.common.chat.utils.TikTokensUtil;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按token预算合并文本段
+ * <p>
+ * 切分器扫描一遍原文, 按顺序添加文本段及其前面边界的强度; 合并时在预算内尽量多放文本段,
+ * 超出预算时在块内最强的边界处截断, 效果等同于按分隔符优先级递归切分, 但每段只计数一次
+ */
+final class TokenChunker {
+
+    /**
+     * 强制截断 用于知识库自定义分隔符
+     */
+    static final int HARD = Integer.MAX_VALUE;
+
+    /**
+     * 超长文本段强制拆开后的边界
+     */
+    private static final int SPLIT = -1;
+
+    static final int DEFAULT_MAX_TOKENS = 500;
+
+    private static final Encoding ENCODING = TikTokensUtil.getEncoding(EncodingType.CL100K_BASE);
+
+    private final int maxTokens;
+
+    private final int overlapTokens;
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    private final Map<String, Integer> prefixTokens = new HashMap<>();
+
+    TokenChunker(int maxTokens, int overlapTokens) {
+        this.maxTokens = Math.max(1, maxTokens);
+        this.overlapTokens = Math.max(0, Math.min(overlapTokens, this.maxTokens / 2));
+    }
+
+    /**
+     * 按知识库配置创建 文本块大小作为token预算, 重叠字符数作为重叠token数
+     */
+    static TokenChunker of(KnowledgeProfile profile) {
+        Integer textBlockSize = profile == null ? null : profile.textBlockSize();
+        Integer overlap = profile == null ? null : profile.overlapChar();
+        return new TokenChunker(textBlockSize == null || textBlockSize <= 0 ? DEFAULT_MAX_TOKENS : textBlockSize,
+            overlap == null ? 0 : overlap);
+    }
+
+    /**
+     * 添加文本段
+     *
+     * @param text   文本
+     * @param level  文本段前面边界的强度 越大越优先在此截断
+     * @param prefix 以该段开头的块需要补充的上下文, 如标题路径, 可为null; 超过预算一半时不再补充
+     */
+    void add(String text, int level, String prefix) {
+        if (text.isEmpty()) {
+            return;
+        }
+        if (prefixTokens(prefix) > maxTokens / 2) {
+            prefix = null;
+        }
+        int tokens = TikTokensUtil.tokens(ENCODING, text);
+        int budget = maxTokens - prefixTokens(prefix);
+        if (tokens <= budget) {
+            segments.add(new Segment(text, tokens, level, prefix));
+            return;
+        }
+        // 单段超出预算时按字符比例拆开 优先在标点或空白处断开
+        int from = 0;
+        int window = Math.max(1, (int) ((long) text.length() * Math.max(1, budget) / tokens));
+        while (from < text.length()) {
+            int to = Math.min(text.length(), from + window);
+            if (to < text.length()) {
+                int breakAt = lastBreak(text, from + window * 4 / 5, to);
+                if (breakAt > from) {
+                    to = breakAt;
+                }
+                if (Character.isHighSurrogate(text.charAt(to - 1))) {
+                    to--;
+                }
+                if (to <= from) {
+                    // 窗口不足一个字符时至少前进一个完整码点
+                    to = from + Character.charCount(text.codePointAt(from));
+                }
+            }
+            String piece = text.substring(from, to);
+            segments.add(new Segment(piece, TikTokensUtil.tokens(ENCODING, piece), from == 0 ? level : SPLIT, prefix));
+            from = to;
+        }
+    }
+
+    /**
+     * 合并为文本块
+     */
+    List<String> chunks() {
+        List<String> chunkList = new ArrayList<>();
+        int n = segments.size();
+        int start = 0;
+        while (start < n) {
+            Segment first = segments.get(start);
+            int budget = maxTokens - prefixTokens(first.prefix());
+            int end = start;
+            int tokens = 0;
+            int best = -1;
+            int bestLevel = Integer.MIN_VALUE;
+            while (end < n) {
+                Segment segment = segments.get(end);
+                if (end > start) {
+                    if (segment.level() == HARD || tokens + segment.tokens() > budget) {
+                        break;
+                    }
+                    // 至少填满四分之一预算后才考虑在较弱的边界处截断
+                    if (tokens >= budget / 4 && segment.level() >= bestLevel) {
+                        best = end;
+                        bestLevel = segment.level();
+                    }
+                }
+                tokens += segment.tokens();
+                end++;
+            }
+            int cut = end;
+            if (end < n && best > start && segments.get(end).level() < bestLevel) {
+                cut = best;
+            }
+            String chunk = join(start, cut);
+            if (!chunk.isBlank()) {
+                chunkList.add(chunk);
+            }
+            if (cut >= n) {
+                break;
+            }
+            start = overlapStart(start, cut);
+        }
+        return chunkList;
+    }
+
+    /**
+     * 下一块从截断点之前不超过重叠token数的位置开始 不越过强制截断点
+     */
+    private int overlapStart(int start, int cut) {
+        if (overlapTokens == 0 || segments.get(cut).level() == HARD) {
+            return cut;
+        }
+        int next = cut;
+        int tokens = 0;
+        while (next - 1 > start && tokens + segments.get(next - 1).tokens() <= overlapTokens) {
+            tokens += segments.get(next - 1).tokens();
+            next--;
+        }
+        return next;
+    }
+
+    private String join(int from, int to) {
+        Segment first = segments.get(from);
+        StringBuilder chunk = new StringBuilder();
+        if (first.prefix() != null) {
+            chunk.append(first.prefix()).append('\n');
+        }
+        for (int i = from; i < to; i++) {
+            chunk.append(segments.get(i).text());
+        }
+        return chunk.toString();
+    }
+
+    private int prefixTokens(String prefix) {
+        if (prefix == null) {
+            return 0;
+        }
+        return prefixTokens.computeIfAbsent(prefix, key -> TikTokensUtil.tokens(ENCODING, key) + 1);
+    }
+
+    private static int lastBreak(String text, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c) || "。！？；，、.!?;,".indexOf(c) >= 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private record Segment(String text, int tokens, int level, String prefix) {
+    }
+}
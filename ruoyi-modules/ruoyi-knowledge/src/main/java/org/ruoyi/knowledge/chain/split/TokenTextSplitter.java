@@ -1,17 +1,86 @@
 package org.ruoyi.knowledge.chain.split;
 
-import lombok.AllArgsConstructor;
+import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.common.core.utils.StringUtils;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 
+/**
+ * 按token数切分
+ * <p>
+ * 知识库的文本块大小作为每块的token上限, 优先在自定义分隔符、空行、换行、句末标点处截断
+ */
 @Component
-@AllArgsConstructor
 @Slf4j
 public class TokenTextSplitter implements TextSplitter{
+
+    private static final int PARAGRAPH = 3;
+
+    private static final int LINE = 2;
+
+    private static final int SENTENCE = 1;
+
+    @Resource
+    private KnowledgeProfileCache knowledgeProfileCache;
+
     @Override
     public List<String> split(String content, String kid) {
-        return null;
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
+        TokenChunker chunker = TokenChunker.of(profile);
+        String separator = profile == null ? null : profile.knowledgeSeparator();
+        if (StringUtils.isEmpty(separator) || !content.contains(separator)) {
+            addSentences(chunker, content, 0, content.length(), PARAGRAPH);
+            return chunker.chunks();
+        }
+        int from = 0;
+        while (from <= content.length()) {
+            int to = content.indexOf(separator, from);
+            if (to < 0) {
+                to = content.length();
+            }
+            addSentences(chunker, content, from, to, TokenChunker.HARD);
+            from = to + separator.length();
+        }
+        return chunker.chunks();
+    }
+
+    /**
+     * 扫描一遍 按段落、行、句子划分文本段
+     */
+    private static void addSentences(TokenChunker chunker, String content, int from, int to, int firstLevel) {
+        int start = from;
+        int level = firstLevel;
+        int i = from;
+        while (i < to) {
+            char c = content.charAt(i);
+            int boundary = -1;
+            int next = i + 1;
+            if (c == '\n') {
+                boundary = LINE;
+                while (next < to && (content.charAt(next) == '\n' || content.charAt(next) == '\r')) {
+                    boundary = PARAGRAPH;
+                    next++;
+                }
+            } else if (isSentenceEnd(c) && (next >= to || Character.isWhitespace(content.charAt(next)) || c > 0x7f)) {
+                boundary = SENTENCE;
+            }
+            if (boundary >= 0) {
+                chunker.add(content.substring(start, next), level, null);
+                start = next;
+                level = boundary;
+            }
+            i = next;
+        }
+        if (start < to) {
+            chunker.add(content.substring(start, to), level, null);
+        }
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '；' || c == '.' || c == '!' || c == '?' || c == ';';
     }
 }
@@ -10,9 +10,8 @@ import io.github.ollama4j.models.embeddings.OllamaEmbeddingsRequestModel;
 import jakarta.annotation.Resource;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
-import org.ruoyi.knowledge.service.IKnowledgeInfoService;
-import org.springframework.context.annotation.Lazy;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -22,17 +21,16 @@ public class BgeLargeVectorization implements Vectorization {
 
     String host = "http://localhost:11434/";
 
-    @Lazy
     @Resource
-    private IKnowledgeInfoService knowledgeInfoService;
+    private KnowledgeProfileCache knowledgeProfileCache;
 
     @Override
     public List<List<Double>> batchVectorization(List<String> chunkList, String kid) {
         OllamaAPI ollamaAPI = new OllamaAPI(host);
-        KnowledgeInfoVo knowledgeInfoVo = knowledgeInfoService.queryById(Long.valueOf(kid));
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
         List<Double> doubleVector;
         try {
-            doubleVector = ollamaAPI.generateEmbeddings(new OllamaEmbeddingsRequestModel(knowledgeInfoVo.getVectorModel(), new Gson().toJson(chunkList)));
+            doubleVector = ollamaAPI.generateEmbeddings(new OllamaEmbeddingsRequestModel(profile.vectorModel(), new Gson().toJson(chunkList)));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -4,11 +4,11 @@ import jakarta.annotation.Resource;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
 import org.ruoyi.common.chat.config.ChatConfig;
 import org.ruoyi.common.chat.localModels.LocalModelsofitClient;
 import org.ruoyi.common.chat.openai.OpenAiStreamClient;
-import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
-import org.ruoyi.knowledge.service.IKnowledgeInfoService;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
@@ -19,7 +19,7 @@ import java.util.List;
 @RequiredArgsConstructor
 public class LocalModelsVectorization   {
     @Resource
-    private IKnowledgeInfoService knowledgeInfoService;
+    private KnowledgeProfileCache knowledgeProfileCache;
 
     @Resource
     private LocalModelsofitClient localModelsofitClient;
@@ -40,16 +40,16 @@ public class LocalModelsVectorization   {
     public List<List<Double>> batchVectorization(List<String> chunkList, String kid) {
         logVectorizationRequest(kid, chunkList);  // 在向量化开始前记录日志
         openAiStreamClient = chatConfig.getOpenAiStreamClient(); // 获取 OpenAi 客户端
-        KnowledgeInfoVo knowledgeInfoVo = knowledgeInfoService.queryById(Long.valueOf(kid)); // 查询知识信息
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid); // 查询知识信息
         // 调用 localModelsofitClient 获取 Top K 嵌入向量
         try {
             return localModelsofitClient.getTopKEmbeddings(
                     chunkList,
-                    knowledgeInfoVo.getVectorModel(),
-                    knowledgeInfoVo.getKnowledgeSeparator(),
-                    knowledgeInfoVo.getRetrieveLimit(),
-                    knowledgeInfoVo.getTextBlockSize(),
-                    knowledgeInfoVo.getOverlapChar()
+                    profile.vectorModel(),
+                    profile.knowledgeSeparator(),
+                    profile.retrieveLimit(),
+                    profile.textBlockSize(),
+                    profile.overlapChar()
             );
         } catch (Exception e) {
             log.error("Failed to perform batch vectorization for knowledgeId: {}", kid, e);
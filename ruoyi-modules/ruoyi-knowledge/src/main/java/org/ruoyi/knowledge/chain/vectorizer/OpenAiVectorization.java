@@ -4,30 +4,25 @@ import jakarta.annotation.Resource;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
 import org.ruoyi.common.chat.config.ChatConfig;
 import org.ruoyi.common.chat.entity.embeddings.Embedding;
 
-import org.ruoyi.common.chat.entity.embeddings.EmbeddingResponse;
 import org.ruoyi.common.chat.openai.OpenAiStreamClient;
-import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
-import org.ruoyi.knowledge.service.IKnowledgeInfoService;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class OpenAiVectorization implements Vectorization {
 
-    @Lazy
     @Resource
-    private IKnowledgeInfoService knowledgeInfoService;
+    private KnowledgeProfileCache knowledgeProfileCache;
     @Lazy
     @Resource
     private LocalModelsVectorization localModelsVectorization;
@@ -38,62 +33,45 @@ public class OpenAiVectorization implements Vectorization {
     private final ChatConfig chatConfig;
 
     @Override
-    public List<List<Double>> batchVectorization(List<String> chunkList, String kid) {
-        List<List<Double>> vectorList;
+    public List<float[]> batchFloatVectorization(List<String> chunkList, String kid) {
         openAiStreamClient = chatConfig.getOpenAiStreamClient();
         // 获取知识库信息
-        KnowledgeInfoVo knowledgeInfoVo = knowledgeInfoService.queryById(Long.valueOf(kid));
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
 
-        Embedding embedding = buildEmbedding(chunkList, knowledgeInfoVo);
-        EmbeddingResponse embeddings = openAiStreamClient.embeddings(embedding);
+        Embedding embedding = buildEmbedding(chunkList, profile);
+        // 响应直接解析为float数组
+        return openAiStreamClient.embeddingVectors(embedding);
+    }
 
-        // 处理 OpenAI 返回的嵌入数据
-        vectorList = processOpenAiEmbeddings(embeddings);
+    @Override
+    public float[] singleFloatVectorization(String chunk, String kid) {
+        List<String> chunkList = new ArrayList<>();
+        chunkList.add(chunk);
+        return batchFloatVectorization(chunkList, kid).get(0);
+    }
 
+    @Override
+    public List<List<Double>> batchVectorization(List<String> chunkList, String kid) {
+        List<List<Double>> vectorList = new ArrayList<>();
+        for (float[] vector : batchFloatVectorization(chunkList, kid)) {
+            vectorList.add(VectorUtils.toDoubleList(vector));
+        }
         return vectorList;
     }
 
     /**
      * 构建 Embedding 对象
      */
-    private Embedding buildEmbedding(List<String> chunkList, KnowledgeInfoVo knowledgeInfoVo) {
+    private Embedding buildEmbedding(List<String> chunkList, KnowledgeProfile profile) {
         return Embedding.builder()
                 .input(chunkList)
-                .model(knowledgeInfoVo.getVectorModel())
+                .model(profile.vectorModel())
                 .build();
     }
 
-    /**
-     * 处理 OpenAI 返回的嵌入数据
-     */
-    private List<List<Double>> processOpenAiEmbeddings(EmbeddingResponse embeddings) {
-        List<List<Double>> vectorList = new ArrayList<>();
-
-        embeddings.getData().forEach(data -> {
-            List<BigDecimal> vector = data.getEmbedding();
-            List<Double> doubleVector = convertToDoubleList(vector);
-            vectorList.add(doubleVector);
-        });
-
-        return vectorList;
-    }
-
-    /**
-     * 将 BigDecimal 转换为 Double 列表
-     */
-    private List<Double> convertToDoubleList(List<BigDecimal> vector) {
-        return vector.stream()
-                .map(BigDecimal::doubleValue)
-                .collect(Collectors.toList());
-    }
-
-
     @Override
     public List<Double> singleVectorization(String chunk, String kid) {
-        List<String> chunkList = new ArrayList<>();
-        chunkList.add(chunk);
-        List<List<Double>> vectorList = batchVectorization(chunkList, kid);
-        return vectorList.get(0);
+        return VectorUtils.toDoubleList(singleFloatVectorization(chunk, kid));
     }
 
 }
@@ -0,0 +1,107 @@
+package org.ruoyi.knowledge.chain.vectorizer;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.date.DateUnit;
+import cn.hutool.crypto.digest.DigestUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucket;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.ruoyi.common.redis.utils.RedisUtils;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 查询向量缓存
+ * <p>
+ * 两级缓存: 本地LRU与redis, key为 向量模型 + 规范化文本的sha256, redis中存放小端 float32 字节
+ * 重复的问题无需再请求向量接口; 命中情况通过 knowledge.embedding.cache 指标暴露
+ */
+@Slf4j
+@Component
+public class QueryEmbeddingCache {
+
+    private static final String CACHE_KEY = "knowledge:embedding:query:";
+
+    private static final Duration REDIS_TTL = Duration.ofDays(7);
+
+    private final LRUCache<String, float[]> localCache = CacheUtil.newLRUCache(2048, DateUnit.HOUR.getMillis());
+
+    private final Counter localHits;
+
+    private final Counter redisHits;
+
+    private final Counter misses;
+
+    public QueryEmbeddingCache(MeterRegistry registry) {
+        this.localHits = Counter.builder("knowledge.embedding.cache").tag("result", "local_hit").register(registry);
+        this.redisHits = Counter.builder("knowledge.embedding.cache").tag("result", "redis_hit").register(registry);
+        this.misses = Counter.builder("knowledge.embedding.cache").tag("result", "miss").register(registry);
+        Gauge.builder("knowledge.embedding.cache.hit.ratio", this, QueryEmbeddingCache::hitRatio).register(registry);
+    }
+
+    /**
+     * 获取查询向量 未命中时调用 loader 并写入缓存
+     *
+     * @param vectorModel 向量模型
+     * @param text        查询文本
+     * @param loader      向量化
+     * @return 向量 调用方可修改
+     */
+    public float[] get(String vectorModel, String text, Supplier<float[]> loader) {
+        String key = CACHE_KEY + vectorModel + ":" + DigestUtil.sha256Hex(normalize(text));
+        float[] vector = localCache.get(key);
+        if (vector != null) {
+            localHits.increment();
+            return vector.clone();
+        }
+        RBucket<byte[]> bucket = RedisUtils.getClient().getBucket(key, ByteArrayCodec.INSTANCE);
+        try {
+            byte[] bytes = bucket.get();
+            if (bytes != null) {
+                redisHits.increment();
+                vector = VectorUtils.fromBytes(bytes);
+                localCache.put(key, vector);
+                return vector.clone();
+            }
+        } catch (Exception e) {
+            // redis不可用时直接向量化
+            log.warn("读取查询向量缓存失败: {}", e.getMessage());
+        }
+        misses.increment();
+        vector = loader.get();
+        localCache.put(key, vector.clone());
+        // 异步写入 不阻塞查询
+        bucket.setAsync(VectorUtils.toBytes(vector), REDIS_TTL.toMillis(), TimeUnit.MILLISECONDS)
+            .whenComplete((result, e) -> {
+                if (e != null) {
+                    log.warn("写入查询向量缓存失败: {}", e.getMessage());
+                }
+            });
+        return vector;
+    }
+
+    /**
+     * 命中率
+     */
+    public double hitRatio() {
+        double hits = localHits.count() + redisHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    /**
+     * 规范化文本: 全角转半角, 去除首尾空白, 连续空白合并为一个空格
+     */
+    private static String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).strip();
+        return normalized.replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,82 @@
+package org.ruoyi.knowledge.chain.vectorizer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 向量类型转换
+ */
+public class VectorUtils {
+
+    private VectorUtils() {
+    }
+
+    public static float[] toFloatArray(List<Double> vector) {
+        float[] result = new float[vector.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = vector.get(i).floatValue();
+        }
+        return result;
+    }
+
+    /**
+     * 编码为小端 float32 字节 用于缓存
+     */
+    public static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    public static float[] fromBytes(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    public static List<Double> toDoubleList(float[] vector) {
+        List<Double> result = new ArrayList<>(vector.length);
+        for (float value : vector) {
+            result.add((double) value);
+        }
+        return result;
+    }
+
+    /**
+     * float数组的只读 List 视图 不复制数据, 供只接受 List&lt;Float&gt; 的客户端使用
+     */
+    public static List<Float> asFloatList(float[] vector) {
+        return new FloatArrayList(vector);
+    }
+
+    public static Float[] toBoxedArray(float[] vector) {
+        Float[] result = new Float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i];
+        }
+        return result;
+    }
+
+    private static final class FloatArrayList extends AbstractList<Float> implements RandomAccess {
+
+        private final float[] vector;
+
+        private FloatArrayList(float[] vector) {
+            this.vector = vector;
+        }
+
+        @Override
+        public Float get(int index) {
+            return vector[index];
+        }
+
+        @Override
+        public int size() {
+            return vector.length;
+        }
+    }
+}
@@ -1,12 +1,42 @@
 package org.ruoyi.knowledge.chain.vectorizer;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * 向量化
+ * <p>
+ * float[] 方法为主要实现, 默认由 List&lt;Double&gt; 方法转换而来; 能直接得到float数组的实现应覆盖它们
  */
 public interface Vectorization {
     List<List<Double>> batchVectorization(List<String> chunkList, String kid);
 
     List<Double> singleVectorization(String chunk, String kid);
+
+    /**
+     * 批量向量化 返回float数组
+     *
+     * @param chunkList 文本块列表
+     * @param kid       知识库ID
+     * @return 与文本块顺序一致的向量
+     */
+    default List<float[]> batchFloatVectorization(List<String> chunkList, String kid) {
+        List<List<Double>> vectorList = batchVectorization(chunkList, kid);
+        List<float[]> result = new ArrayList<>(vectorList.size());
+        for (List<Double> vector : vectorList) {
+            result.add(VectorUtils.toFloatArray(vector));
+        }
+        return result;
+    }
+
+    /**
+     * 单个文本向量化 返回float数组
+     *
+     * @param chunk 文本
+     * @param kid   知识库ID
+     * @return 向量
+     */
+    default float[] singleFloatVectorization(String chunk, String kid) {
+        return VectorUtils.toFloatArray(singleVectorization(chunk, kid));
+    }
 }
@@ -1,11 +1,9 @@
 package org.ruoyi.knowledge.chain.vectorizer;
 
-import cn.hutool.core.util.StrUtil;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
-import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
-import org.ruoyi.knowledge.service.IKnowledgeInfoService;
-import org.springframework.context.annotation.Lazy;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
 import org.springframework.stereotype.Component;
 
 /**
@@ -20,9 +18,8 @@ public class VectorizationFactory {
 
     private final BgeLargeVectorization bgeLargeVectorization;
 
-    @Lazy
     @Resource
-    private IKnowledgeInfoService knowledgeInfoService;
+    private KnowledgeProfileCache knowledgeProfileCache;
 
     public VectorizationFactory(OpenAiVectorization openAiVectorization,BgeLargeVectorization bgeLargeVectorization) {
         this.openAiVectorization = openAiVectorization;
@@ -30,13 +27,18 @@ public class VectorizationFactory {
     }
 
     public Vectorization getEmbedding(String kid){
-        String vectorModel = "text-embedding-3-small";
-        if (StrUtil.isNotEmpty(kid)) {
-            KnowledgeInfoVo knowledgeInfoVo = knowledgeInfoService.queryById(Long.valueOf(kid));
-            if (knowledgeInfoVo != null && StrUtil.isNotEmpty(knowledgeInfoVo.getVectorModel())) {
-                vectorModel = knowledgeInfoVo.getVectorModel();
-            }
-        }
+        return getEmbeddingByModel(getVectorModel(kid));
+    }
+
+    /**
+     * 知识库使用的向量模型
+     */
+    public String getVectorModel(String kid) {
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
+        return profile == null ? KnowledgeProfile.DEFAULT_VECTOR_MODEL : profile.vectorModelOrDefault();
+    }
+
+    public Vectorization getEmbeddingByModel(String vectorModel) {
         return switch (vectorModel) {
             case "quentinz/bge-large-zh-v1.5" -> bgeLargeVectorization;
             default -> openAiVectorization;
@@ -18,6 +18,9 @@ import java.util.List;
 public class VectorizationWrapper implements Vectorization{
 
     private final VectorizationFactory vectorizationFactory;
+
+    private final QueryEmbeddingCache queryEmbeddingCache;
+
     @Override
     public List<List<Double>> batchVectorization(List<String> chunkList, String kid) {
         Vectorization embedding = vectorizationFactory.getEmbedding(kid);
@@ -26,7 +29,19 @@ public class VectorizationWrapper implements Vectorization{
 
     @Override
     public List<Double> singleVectorization(String chunk, String kid) {
+        return VectorUtils.toDoubleList(singleFloatVectorization(chunk, kid));
+    }
+
+    @Override
+    public List<float[]> batchFloatVectorization(List<String> chunkList, String kid) {
         Vectorization embedding = vectorizationFactory.getEmbedding(kid);
-        return embedding.singleVectorization(chunk, kid);
+        return embedding.batchFloatVectorization(chunkList, kid);
+    }
+
+    @Override
+    public float[] singleFloatVectorization(String chunk, String kid) {
+        String vectorModel = vectorizationFactory.getVectorModel(kid);
+        Vectorization embedding = vectorizationFactory.getEmbeddingByModel(vectorModel);
+        return queryEmbeddingCache.get(vectorModel, chunk, () -> embedding.singleFloatVectorization(chunk, kid));
     }
 }
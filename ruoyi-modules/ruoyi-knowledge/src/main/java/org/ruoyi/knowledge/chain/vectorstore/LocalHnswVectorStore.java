@@ -0,0 +1,244 @@
+package org.ruoyi.knowledge.chain.vectorstore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
+import org.ruoyi.common.core.exception.ServiceException;
+import org.ruoyi.common.core.service.ConfigService;
+import org.ruoyi.common.core.utils.Threads;
+import org.ruoyi.knowledge.chain.vectorizer.VectorUtils;
+import org.ruoyi.knowledge.chain.vectorstore.local.LocalVectorIndex;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+/**
+ * 本地向量库
+ * <p>
+ * 无需部署外部向量数据库, 每个知识库一个目录, 向量存放在内存映射的段文件中, 使用HNSW图做近似检索
+ * 存储目录读取配置 local/path, 未配置时为工作目录下的 vector-store; 查询候选集大小读取配置 local/efSearch, 默认128
+ */
+@Service
+@Slf4j
+public class LocalHnswVectorStore implements VectorStore {
+
+    private static final String DEFAULT_PATH = "vector-store";
+
+    @Resource
+    private KnowledgeProfileCache knowledgeProfileCache;
+
+    @Lazy
+    @Resource
+    private ConfigService configService;
+
+    private volatile Path basePath;
+
+    private volatile int efSearch = LocalVectorIndex.DEFAULT_EF_SEARCH;
+
+    private final Map<String, LocalVectorIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * 正在整理的知识库
+     */
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService compactExecutor = Executors.newSingleThreadExecutor(
+        new BasicThreadFactory.Builder().namingPattern("local-vector-compact-%d").daemon(true).build());
+
+    @PostConstruct
+    public void loadConfig() {
+        String path = configService.getConfigValue("local", "path");
+        this.basePath = Paths.get(StringUtils.isBlank(path) ? DEFAULT_PATH : path).toAbsolutePath();
+        String ef = configService.getConfigValue("local", "efSearch");
+        try {
+            this.efSearch = StringUtils.isBlank(ef) ? LocalVectorIndex.DEFAULT_EF_SEARCH : Math.max(1, Integer.parseInt(ef.trim()));
+        } catch (NumberFormatException e) {
+            this.efSearch = LocalVectorIndex.DEFAULT_EF_SEARCH;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        Threads.shutdownAndAwaitTermination(compactExecutor);
+        for (LocalVectorIndex index : indexes.values()) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                log.warn("关闭本地向量索引失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void newSchema(String kid) {
+        getIndex(kid, true);
+    }
+
+    @Override
+    public void storeEmbeddings(List<String> chunkList, List<List<Double>> vectorList, String kid, String docId, List<String> fidList) {
+        List<float[]> vectors = new ArrayList<>(vectorList.size());
+        for (List<Double> vector : vectorList) {
+            vectors.add(VectorUtils.toFloatArray(vector));
+        }
+        storeFloatEmbeddings(chunkList, vectors, kid, docId, fidList);
+    }
+
+    @Override
+    public void storeFloatEmbeddings(List<String> chunkList, List<float[]> vectorList, String kid, String docId, List<String> fidList) {
+        try {
+            getIndex(kid, true).add(chunkList, vectorList, docId, fidList);
+        } catch (IOException e) {
+            throw new ServiceException("本地向量库写入失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void removeByDocId(String kid, String docId) {
+        remove(kid, entry -> Objects.equals(docId, entry.docId()));
+    }
+
+    @Override
+    public void removeByKidAndFid(String kid, String fid) {
+        remove(kid, entry -> Objects.equals(fid, entry.fid()));
+    }
+
+    @Override
+    public void removeByKid(String kid) {
+        LocalVectorIndex index = getIndex(kid, false);
+        if (index == null) {
+            return;
+        }
+        indexes.remove(kid);
+        try {
+            index.drop();
+        } catch (IOException e) {
+            throw new ServiceException("本地向量库删除失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public List<String> nearest(List<Double> queryVector, String kid) {
+        return nearest(VectorUtils.toFloatArray(queryVector), kid);
+    }
+
+    @Override
+    public List<String> nearest(float[] queryVector, String kid) {
+        List<String> result = new ArrayList<>();
+        for (VectorSearchHit hit : search(queryVector, kid)) {
+            result.add(hit.content());
+        }
+        return result;
+    }
+
+    @Override
+    public List<VectorSearchHit> search(float[] queryVector, String kid) {
+        List<VectorSearchHit> result = new ArrayList<>();
+        if (StringUtils.isBlank(kid)) {
+            return result;
+        }
+        LocalVectorIndex index = getIndex(kid, false);
+        if (index == null) {
+            return result;
+        }
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
+        int limit = profile == null ? KnowledgeProfile.DEFAULT_RETRIEVE_LIMIT : profile.retrieveLimitOrDefault();
+        for (LocalVectorIndex.Hit hit : index.search(queryVector, limit, efSearch)) {
+            result.add(new VectorSearchHit(kid, hit.entry().fid(), hit.entry().content(), hit.score()));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, float[]> getVectors(String kid, Collection<String> fids) {
+        LocalVectorIndex index = getIndex(kid, false);
+        if (index == null || fids.isEmpty()) {
+            return new HashMap<>();
+        }
+        return index.vectors(new HashSet<>(fids));
+    }
+
+    /**
+     * 本地向量库不支持通过文本检索相似性
+     */
+    @Override
+    public List<String> nearest(String query, String kid) {
+        return new ArrayList<>();
+    }
+
+    private void remove(String kid, Predicate<LocalVectorIndex.Entry> filter) {
+        LocalVectorIndex index = getIndex(kid, false);
+        if (index == null) {
+            return;
+        }
+        try {
+            index.delete(filter);
+        } catch (IOException e) {
+            throw new ServiceException("本地向量库删除失败: " + e.getMessage());
+        }
+        if (index.needsCompaction() && compacting.add(kid)) {
+            compactExecutor.execute(() -> compact(kid, index));
+        }
+    }
+
+    /**
+     * 后台整理墓碑
+     */
+    private void compact(String kid, LocalVectorIndex index) {
+        try {
+            if (indexes.get(kid) == index && !index.compact()) {
+                log.info("知识库{}整理期间有新的写入, 等待下次删除时再整理", kid);
+            }
+        } catch (Exception e) {
+            log.error("知识库{}向量整理失败: {}", kid, e.getMessage(), e);
+        } finally {
+            compacting.remove(kid);
+        }
+    }
+
+    /**
+     * 获取知识库的索引 首次访问时从磁盘加载
+     *
+     * @param create 目录不存在时是否创建
+     */
+    private LocalVectorIndex getIndex(String kid, boolean create) {
+        LocalVectorIndex index = indexes.get(kid);
+        if (index != null) {
+            return index;
+        }
+        Path dir = basePath.resolve(kid);
+        try {
+            if (!create && !LocalVectorIndex.recover(dir)) {
+                return null;
+            }
+        } catch (IOException e) {
+            throw new ServiceException("本地向量库加载失败: " + e.getMessage());
+        }
+        return indexes.computeIfAbsent(kid, key -> {
+            try {
+                return LocalVectorIndex.open(dir);
+            } catch (IOException e) {
+                throw new ServiceException("本地向量库加载失败: " + e.getMessage());
+            }
+        });
+    }
+}
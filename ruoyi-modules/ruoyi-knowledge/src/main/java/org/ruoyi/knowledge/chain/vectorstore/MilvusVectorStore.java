@@ -2,46 +2,93 @@ package org.ruoyi.knowledge.chain.vectorstore;
 
 import io.milvus.client.MilvusServiceClient;
 import io.milvus.grpc.DataType;
-import io.milvus.grpc.DescribeIndexResponse;
+import io.milvus.common.clientenum.ConsistencyLevelEnum;
 import io.milvus.grpc.MutationResult;
+import io.milvus.grpc.QueryResults;
 import io.milvus.grpc.SearchResults;
 import io.milvus.param.*;
 import io.milvus.param.collection.*;
 import io.milvus.param.dml.DeleteParam;
 import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.QueryParam;
 import io.milvus.param.dml.SearchParam;
 import io.milvus.param.index.CreateIndexParam;
-import io.milvus.param.index.DescribeIndexParam;
 import io.milvus.param.partition.CreatePartitionParam;
+import io.milvus.param.partition.HasPartitionParam;
+import io.milvus.param.partition.LoadPartitionsParam;
 import io.milvus.response.QueryResultsWrapper;
 import io.milvus.response.SearchResultsWrapper;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.ruoyi.common.core.exception.ServiceException;
 import org.ruoyi.common.core.service.ConfigService;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
+import org.ruoyi.knowledge.chain.vectorizer.VectorUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Slf4j
 public class MilvusVectorStore implements VectorStore {
 
+    /**
+     * 建索引和检索使用的度量 两者必须一致
+     */
+    private static final MetricType METRIC_TYPE = MetricType.IP;
+
+    private static final int DEFAULT_NPROBE = 10;
+
+    private static final int DEFAULT_INSERT_BATCH_SIZE = 1000;
+
+    private static final List<String> SEARCH_OUTPUT_FIELDS = List.of("content", "fid");
+
     private volatile Integer dimension;
     private volatile String collectionName;
+    private volatile int nprobe = DEFAULT_NPROBE;
+    private volatile int insertBatchSize = DEFAULT_INSERT_BATCH_SIZE;
     private MilvusServiceClient milvusServiceClient;
 
     @Resource
     private ConfigService configService;
 
+    @Resource
+    private KnowledgeProfileCache knowledgeProfileCache;
+
+    /**
+     * 已确认存在、已建索引并已加载的集合 删除集合或操作失败时移除
+     */
+    private final Map<String, CollectionState> collections = new ConcurrentHashMap<>();
+
+    private final Map<String, Object> collectionLocks = new ConcurrentHashMap<>();
+
     @PostConstruct
     public void loadConfig() {
         this.dimension = Integer.parseInt(configService.getConfigValue("milvus", "dimension"));
         this.collectionName = configService.getConfigValue("milvus", "collection");
+        this.nprobe = intConfig("nprobe", DEFAULT_NPROBE);
+        this.insertBatchSize = intConfig("insertBatchSize", DEFAULT_INSERT_BATCH_SIZE);
+    }
+
+    private int intConfig(String key, int defaultValue) {
+        String value = configService.getConfigValue("milvus", key);
+        try {
+            return StringUtils.isBlank(value) ? defaultValue : Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
     @PostConstruct
@@ -109,7 +156,7 @@ public class MilvusVectorStore implements VectorStore {
                         .withCollectionName(collectionName + kid)
                         .withFieldName("fv")
                         .withIndexType(INDEX_TYPE)
-                        .withMetricType(MetricType.IP)
+                        .withMetricType(METRIC_TYPE)
                         .withExtraParam(INDEX_PARAM)
                         .withSyncMode(Boolean.FALSE)
                         .build()
@@ -119,6 +166,7 @@ public class MilvusVectorStore implements VectorStore {
 
     @Override
     public void newSchema(String kid) {
+        collections.remove(collectionName + kid);
         createSchema(kid);
     }
 
@@ -127,134 +175,60 @@ public class MilvusVectorStore implements VectorStore {
         milvusServiceClient.delete(
                 DeleteParam.newBuilder()
                         .withCollectionName(collectionName + kid)
-                        .withExpr("fid == " + fid)
+                        .withExpr("fid == \"" + fid + "\"")
                         .build()
         );
     }
 
     @Override
     public void storeEmbeddings(List<String> chunkList, List<List<Double>> vectorList, String kid, String docId, List<String> fidList) {
-        String fullCollectionName = collectionName + kid;
+        List<float[]> vectors = new ArrayList<>(vectorList.size());
+        for (List<Double> vector : vectorList) {
+            vectors.add(VectorUtils.toFloatArray(vector));
+        }
+        storeFloatEmbeddings(chunkList, vectors, kid, docId, fidList);
+    }
 
-        // 检查集合是否存在
-        HasCollectionParam hasCollectionParam = HasCollectionParam.newBuilder()
-                .withCollectionName(fullCollectionName)
-                .build();
-        R<Boolean> booleanR = milvusServiceClient.hasCollection(hasCollectionParam);
-
-        if (booleanR.getStatus() == R.Status.Success.getCode()) {
-            boolean collectionExists = booleanR.getData().booleanValue();
-            if (!collectionExists) {
-                // 集合不存在，创建集合
-                List<FieldType> fieldTypes = new ArrayList<>();
-                // 假设这里定义 id 字段，根据实际情况修改
-                FieldType idField = FieldType.newBuilder()
-                        .withName("id")
-                        .withDataType(DataType.Int64)
-                        .withPrimaryKey(true)
-                        .withAutoID(true)
-                        .build();
-                fieldTypes.add(idField);
-
-                // 定义向量字段
-                FieldType vectorField = FieldType.newBuilder()
-                        .withName("fv")
-                        .withDataType(DataType.FloatVector)
-                        .withDimension(vectorList.get(0).size())
-                        .build();
-                fieldTypes.add(vectorField);
-
-                // 定义其他字段
-                FieldType contentField = FieldType.newBuilder()
-                        .withName("content")
-                        .withDataType(DataType.VarChar)
-                        .withMaxLength(chunkList.size() * 1024) // 根据实际情况修改
-                        .build();
-                fieldTypes.add(contentField);
-
-                FieldType kidField = FieldType.newBuilder()
-                        .withName("kid")
-                        .withDataType(DataType.VarChar)
-                        .withMaxLength(256) // 根据实际情况修改
-                        .build();
-                fieldTypes.add(kidField);
-
-                FieldType docIdField = FieldType.newBuilder()
-                        .withName("docId")
-                        .withDataType(DataType.VarChar)
-                        .withMaxLength(256) // 根据实际情况修改
-                        .build();
-                fieldTypes.add(docIdField);
-
-                FieldType fidField = FieldType.newBuilder()
-                        .withName("fid")
-                        .withDataType(DataType.VarChar)
-                        .withMaxLength(256) // 根据实际情况修改
-                        .build();
-                fieldTypes.add(fidField);
-
-                CreateCollectionParam createCollectionParam = CreateCollectionParam.newBuilder()
-                        .withCollectionName(fullCollectionName)
-                        .withFieldTypes(fieldTypes)
-                        .build();
-
-                R<RpcStatus> collection = milvusServiceClient.createCollection(createCollectionParam);
-                if (collection.getStatus() == R.Status.Success.getCode()) {
-                    System.out.println("集合 " + fullCollectionName + " 创建成功");
-
-                    // 创建索引
-                    CreateIndexParam createIndexParam = CreateIndexParam.newBuilder()
-                            .withCollectionName(fullCollectionName)
-                            .withFieldName("fv") // 向量字段名
-                            .withIndexType(IndexType.IVF_FLAT) // 索引类型
-                            .withMetricType(MetricType.IP)
-                            .withExtraParam("{\"nlist\":1024}") // 索引参数
-                            .build();
-                    R<RpcStatus> indexResponse = milvusServiceClient.createIndex(createIndexParam);
-                    if (indexResponse.getStatus() == R.Status.Success.getCode()) {
-                        System.out.println("索引创建成功");
-                    } else {
-                        System.err.println("索引创建失败: " + indexResponse.getMessage());
-                        return;
-                    }
-                } else {
-                    System.err.println("集合创建失败: " + collection.getMessage());
-                    return;
-                }
-            }
-        } else {
-            System.err.println("检查集合是否存在时出错: " + booleanR.getMessage());
+    /**
+     * 集合和分区只在首次写入时检查和创建 已加载的集合写入后即可检索, 不再重新加载
+     */
+    @Override
+    public void storeFloatEmbeddings(List<String> chunkList, List<float[]> vectorList, String kid, String docId, List<String> fidList) {
+        int size = Math.min(chunkList.size(), vectorList.size());
+        if (size == 0) {
             return;
         }
-
-        if (StringUtils.isNotBlank(docId)) {
-            milvusServiceClient.createPartition(
-                    CreatePartitionParam.newBuilder()
-                            .withCollectionName(fullCollectionName)
-                            .withPartitionName(docId)
-                            .build()
-            );
+        String fullCollectionName = collectionName + kid;
+        try {
+            CollectionState state = prepareCollection(fullCollectionName, vectorList.get(0).length);
+            if (StringUtils.isNotBlank(docId)) {
+                preparePartition(fullCollectionName, state, docId);
+            }
+            for (int from = 0; from < size; from += insertBatchSize) {
+                insert(fullCollectionName, chunkList, vectorList, kid, docId, fidList, from, Math.min(size, from + insertBatchSize));
+            }
+        } catch (RuntimeException e) {
+            collections.remove(fullCollectionName);
+            throw e;
         }
+    }
 
-        List<List<Float>> vectorFloatList = new ArrayList<>();
-        List<String> kidList = new ArrayList<>();
-        List<String> docIdList = new ArrayList<>();
-        for (int i = 0; i < Math.min(chunkList.size(), vectorList.size()); i++) {
-            List<Double> vector = vectorList.get(i);
-            List<Float> vfList = new ArrayList<>();
-            for (int j = 0; j < vector.size(); j++) {
-                Double value = vector.get(j);
-                vfList.add(value.floatValue());
-            }
-            vectorFloatList.add(vfList);
+    private void insert(String fullCollectionName, List<String> chunkList, List<float[]> vectorList, String kid, String docId,
+                        List<String> fidList, int from, int to) {
+        List<List<Float>> vectorFloatList = new ArrayList<>(to - from);
+        List<String> kidList = new ArrayList<>(to - from);
+        List<String> docIdList = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            // 只读视图 不复制向量
+            vectorFloatList.add(VectorUtils.asFloatList(vectorList.get(i)));
             kidList.add(kid);
             docIdList.add(docId);
         }
         List<InsertParam.Field> fields = new ArrayList<>();
-        fields.add(new InsertParam.Field("content", chunkList));
+        fields.add(new InsertParam.Field("content", chunkList.subList(from, to)));
         fields.add(new InsertParam.Field("kid", kidList));
         fields.add(new InsertParam.Field("docId", docIdList));
-        fields.add(new InsertParam.Field("fid", fidList));
+        fields.add(new InsertParam.Field("fid", fidList.subList(from, to)));
         fields.add(new InsertParam.Field("fv", vectorFloatList));
 
         InsertParam insertParam = InsertParam.newBuilder()
@@ -262,26 +236,146 @@ public class MilvusVectorStore implements VectorStore {
                 .withPartitionName(docId)
                 .withFields(fields)
                 .build();
-        System.out.println("=========================");
-
         R<MutationResult> insert = milvusServiceClient.insert(insertParam);
-        if (insert.getStatus() == R.Status.Success.getCode()) {
-            System.out.println("插入成功，插入的行数: " + insert.getData().getInsertCnt());
-        } else {
-            System.err.println("插入失败: " + insert.getMessage());
+        if (insert.getStatus() != R.Status.Success.getCode()) {
+            throw new ServiceException("milvus写入失败: " + insert.getMessage());
+        }
+        log.debug("集合{}写入{}条", fullCollectionName, insert.getData().getInsertCnt());
+    }
+
+    /**
+     * 确认集合存在并已加载 首次访问时检查, 之后直接使用缓存的状态
+     *
+     * @param fullCollectionName 集合名
+     * @param createDimension    集合不存在时按该维度创建, 为null时不创建
+     * @return 集合不存在且不创建时返回null
+     */
+    private CollectionState prepareCollection(String fullCollectionName, Integer createDimension) {
+        CollectionState state = collections.get(fullCollectionName);
+        if (state != null) {
+            return state;
+        }
+        synchronized (collectionLocks.computeIfAbsent(fullCollectionName, key -> new Object())) {
+            state = collections.get(fullCollectionName);
+            if (state != null) {
+                return state;
+            }
+            R<Boolean> booleanR = milvusServiceClient.hasCollection(HasCollectionParam.newBuilder()
+                    .withCollectionName(fullCollectionName)
+                    .build());
+            if (booleanR.getStatus() != R.Status.Success.getCode()) {
+                throw new ServiceException("检查milvus集合是否存在时出错: " + booleanR.getMessage());
+            }
+            if (!booleanR.getData()) {
+                if (createDimension == null) {
+                    return null;
+                }
+                createCollection(fullCollectionName, createDimension);
+            }
+            // milvus在将数据装载到内存后才能进行向量计算, 已加载的集合之后写入的数据无需重新加载
+            R<RpcStatus> loadResponse = milvusServiceClient.loadCollection(LoadCollectionParam.newBuilder()
+                    .withCollectionName(fullCollectionName)
+                    .build());
+            if (loadResponse.getStatus() != R.Status.Success.getCode()) {
+                throw new ServiceException("加载milvus集合" + fullCollectionName + "时出错: " + loadResponse.getMessage());
+            }
+            state = new CollectionState();
+            collections.put(fullCollectionName, state);
+            return state;
+        }
+    }
+
+    private void createCollection(String fullCollectionName, int vectorDimension) {
+        List<FieldType> fieldTypes = new ArrayList<>();
+        fieldTypes.add(FieldType.newBuilder()
+                .withName("id")
+                .withDataType(DataType.Int64)
+                .withPrimaryKey(true)
+                .withAutoID(true)
+                .build());
+        fieldTypes.add(FieldType.newBuilder()
+                .withName("fv")
+                .withDataType(DataType.FloatVector)
+                .withDimension(vectorDimension)
+                .build());
+        fieldTypes.add(FieldType.newBuilder()
+                .withName("content")
+                .withDataType(DataType.VarChar)
+                .withMaxLength(65535)
+                .build());
+        fieldTypes.add(FieldType.newBuilder()
+                .withName("kid")
+                .withDataType(DataType.VarChar)
+                .withMaxLength(256)
+                .build());
+        fieldTypes.add(FieldType.newBuilder()
+                .withName("docId")
+                .withDataType(DataType.VarChar)
+                .withMaxLength(256)
+                .build());
+        fieldTypes.add(FieldType.newBuilder()
+                .withName("fid")
+                .withDataType(DataType.VarChar)
+                .withMaxLength(256)
+                .build());
+        R<RpcStatus> collection = milvusServiceClient.createCollection(CreateCollectionParam.newBuilder()
+                .withCollectionName(fullCollectionName)
+                .withFieldTypes(fieldTypes)
+                .build());
+        if (collection.getStatus() != R.Status.Success.getCode()) {
+            throw new ServiceException("milvus集合创建失败: " + collection.getMessage());
         }
-        System.out.println("=========================");
-        // milvus在将数据装载到内存后才能进行向量计算.
-        LoadCollectionParam loadCollectionParam = LoadCollectionParam.newBuilder()
+        R<RpcStatus> indexResponse = milvusServiceClient.createIndex(CreateIndexParam.newBuilder()
                 .withCollectionName(fullCollectionName)
-                .build();
-        R<RpcStatus> loadResponse = milvusServiceClient.loadCollection(loadCollectionParam);
-        if (loadResponse.getStatus() != R.Status.Success.getCode()) {
-            System.err.println("加载集合 " + fullCollectionName + " 到内存时出错：" + loadResponse.getMessage());
+                .withFieldName("fv")
+                .withIndexType(IndexType.IVF_FLAT)
+                .withMetricType(METRIC_TYPE)
+                .withExtraParam("{\"nlist\":1024}")
+                .build());
+        if (indexResponse.getStatus() != R.Status.Success.getCode()) {
+            throw new ServiceException("milvus索引创建失败: " + indexResponse.getMessage());
         }
-//        milvusServiceClient.loadCollection(LoadCollectionParam.newBuilder().withCollectionName(fullCollectionName).build());
+        log.info("milvus集合{}创建成功", fullCollectionName);
     }
 
+    /**
+     * 文档对应的分区只在首次写入时创建并加载
+     */
+    private void preparePartition(String fullCollectionName, CollectionState state, String partition) {
+        if (state.partitions.contains(partition)) {
+            return;
+        }
+        synchronized (state) {
+            if (state.partitions.contains(partition)) {
+                return;
+            }
+            R<Boolean> hasPartition = milvusServiceClient.hasPartition(HasPartitionParam.newBuilder()
+                    .withCollectionName(fullCollectionName)
+                    .withPartitionName(partition)
+                    .build());
+            if (hasPartition.getStatus() != R.Status.Success.getCode()) {
+                throw new ServiceException("检查milvus分区时出错: " + hasPartition.getMessage());
+            }
+            if (!hasPartition.getData()) {
+                R<RpcStatus> created = milvusServiceClient.createPartition(CreatePartitionParam.newBuilder()
+                        .withCollectionName(fullCollectionName)
+                        .withPartitionName(partition)
+                        .build());
+                if (created.getStatus() != R.Status.Success.getCode()) {
+                    throw new ServiceException("milvus分区创建失败: " + created.getMessage());
+                }
+                R<RpcStatus> loaded = milvusServiceClient.loadPartitions(LoadPartitionsParam.newBuilder()
+                        .withCollectionName(fullCollectionName)
+                        .withPartitionNames(List.of(partition))
+                        .build());
+                if (loaded.getStatus() != R.Status.Success.getCode()) {
+                    // 已加载集合中新建的分区通常会自动加载 此处失败不影响写入
+                    log.warn("milvus分区{}加载失败: {}", partition, loaded.getMessage());
+                }
+            }
+            state.partitions.add(partition);
+        }
+    }
 
     @Override
     public void removeByDocId(String kid, String docId) {
@@ -296,6 +390,7 @@ public class MilvusVectorStore implements VectorStore {
 
     @Override
     public void removeByKid(String kid) {
+        collections.remove(collectionName + kid);
         milvusServiceClient.dropCollection(
                 DropCollectionParam.newBuilder()
                         .withCollectionName(collectionName + kid)
@@ -305,84 +400,111 @@ public class MilvusVectorStore implements VectorStore {
 
     @Override
     public List<String> nearest(List<Double> queryVector, String kid) {
-        String fullCollectionName = collectionName + kid;
-
-        HasCollectionParam hasCollectionParam = HasCollectionParam.newBuilder()
-                .withCollectionName(fullCollectionName)
-                .build();
-
-        R<Boolean> booleanR = milvusServiceClient.hasCollection(hasCollectionParam);
-        if (booleanR.getStatus() != R.Status.Success.getCode() || !booleanR.getData().booleanValue()) {
-            System.err.println("集合 " + fullCollectionName + " 不存在或检查集合存在性时出错。");
-            return new ArrayList<>();
-        }
-
-        DescribeIndexParam describeIndexParam = DescribeIndexParam.newBuilder().withCollectionName(fullCollectionName).build();
-
-        R<DescribeIndexResponse> describeIndexResponseR = milvusServiceClient.describeIndex(describeIndexParam);
+        return nearest(VectorUtils.toFloatArray(queryVector), kid);
+    }
 
-        if (describeIndexResponseR.getStatus() == R.Status.Success.getCode()) {
-            System.out.println("索引信息: " + describeIndexResponseR.getData().getIndexDescriptionsCount());
-        } else {
-            System.err.println("获取索引失败: " + describeIndexResponseR.getMessage());
+    @Override
+    public List<String> nearest(float[] queryVector, String kid) {
+        List<String> resultList = new ArrayList<>();
+        for (VectorSearchHit hit : search(queryVector, kid)) {
+            resultList.add(hit.content());
         }
+        return resultList;
+    }
 
-//        // 加载集合到内存
-//        LoadCollectionParam loadCollectionParam = LoadCollectionParam.newBuilder()
-//                .withCollectionName(fullCollectionName)
-//                .build();
-//        R<RpcStatus> loadResponse = milvusServiceClient.loadCollection(loadCollectionParam);
-//        if (loadResponse.getStatus() != R.Status.Success.getCode()) {
-//            System.err.println("加载集合 " + fullCollectionName + " 到内存时出错：" + loadResponse.getMessage());
-//            return new ArrayList<>();
-//        }
-
-        List<String> search_output_fields = Arrays.asList("content", "fv");
-        List<Float> fv = new ArrayList<>();
-        for (int i = 0; i < queryVector.size(); i++) {
-            fv.add(queryVector.get(i).floatValue());
+    /**
+     * 集合状态已缓存时只发送一次检索请求, 只返回内容和片段ID, 不返回向量
+     * <p>
+     * 集合使用IP度量 向量已归一化时即余弦相似度; topK取知识库的检索条数, nprobe取配置 milvus/nprobe
+     */
+    @Override
+    public List<VectorSearchHit> search(float[] queryVector, String kid) {
+        String fullCollectionName = collectionName + kid;
+        List<VectorSearchHit> resultList = new ArrayList<>();
+        try {
+            if (prepareCollection(fullCollectionName, null) == null) {
+                log.warn("milvus集合{}不存在", fullCollectionName);
+                return resultList;
+            }
+        } catch (ServiceException e) {
+            log.error(e.getMessage());
+            return resultList;
         }
-        List<List<Float>> vectors = new ArrayList<>();
-        vectors.add(fv);
-        String search_param = "{\"nprobe\":10, \"offset\":0}";
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
+        int topK = profile == null ? KnowledgeProfile.DEFAULT_RETRIEVE_LIMIT : profile.retrieveLimitOrDefault();
         SearchParam searchParam = SearchParam.newBuilder()
-                .withCollectionName(collectionName + kid)
-                .withMetricType(MetricType.IP)
-                .withOutFields(search_output_fields)
-                .withTopK(10)
-                .withVectors(vectors)
+                .withCollectionName(fullCollectionName)
+                .withMetricType(METRIC_TYPE)
+                .withOutFields(SEARCH_OUTPUT_FIELDS)
+                .withTopK(topK)
+                .withVectors(Collections.singletonList(VectorUtils.asFloatList(queryVector)))
                 .withVectorFieldName("fv")
-                .withParams(search_param)
+                .withParams("{\"nprobe\":" + nprobe + "}")
                 .build();
-        System.out.println("SearchParam: " + searchParam.toString());
         R<SearchResults> respSearch = milvusServiceClient.search(searchParam);
-        if (respSearch.getStatus() == R.Status.Success.getCode()) {
-            SearchResults searchResults = respSearch.getData();
-            if (searchResults != null) {
-                System.out.println(searchResults.getResults());
-                SearchResultsWrapper wrapperSearch = new SearchResultsWrapper(searchResults.getResults());
-                List<QueryResultsWrapper.RowRecord> rowRecords = wrapperSearch.getRowRecords();
-
-                List<String> resultList = new ArrayList<>();
-                if (rowRecords != null && !rowRecords.isEmpty()) {
-                    for (QueryResultsWrapper.RowRecord rowRecord : rowRecords) {
-                        String content = rowRecord.get("content").toString();
-                        resultList.add(content);
-                    }
-                }
-                return resultList;
-            } else {
-                System.err.println("搜索结果为空");
-            }
-        } else {
-            System.err.println("搜索操作失败: " + respSearch.getMessage());
+        if (respSearch.getStatus() != R.Status.Success.getCode()) {
+            // 集合可能已被其他节点删除 下次重新检查
+            collections.remove(fullCollectionName);
+            log.error("milvus集合{}检索失败: {}", fullCollectionName, respSearch.getMessage());
+            return resultList;
+        }
+        SearchResultsWrapper wrapperSearch = new SearchResultsWrapper(respSearch.getData().getResults());
+        for (SearchResultsWrapper.IDScore idScore : wrapperSearch.getIDScore(0)) {
+            Object fid = idScore.getFieldValues().get("fid");
+            resultList.add(new VectorSearchHit(kid, fid == null ? null : fid.toString(),
+                    idScore.get("content").toString(), idScore.getScore()));
         }
-        return new ArrayList<>();
+        return resultList;
+    }
 
+    /**
+     * 使用强一致性读取 同一批次刚写入的片段也能读到
+     */
+    @Override
+    public Map<String, float[]> getVectors(String kid, Collection<String> fids) {
+        Map<String, float[]> result = new HashMap<>();
+        String fullCollectionName = collectionName + kid;
+        if (fids.isEmpty()) {
+            return result;
+        }
+        try {
+            if (prepareCollection(fullCollectionName, null) == null) {
+                return result;
+            }
+        } catch (ServiceException e) {
+            log.error(e.getMessage());
+            return result;
+        }
+        StringJoiner expr = new StringJoiner(", ", "fid in [", "]");
+        for (String fid : fids) {
+            expr.add("\"" + fid + "\"");
+        }
+        R<QueryResults> response = milvusServiceClient.query(QueryParam.newBuilder()
+                .withCollectionName(fullCollectionName)
+                .withExpr(expr.toString())
+                .withOutFields(List.of("fid", "fv"))
+                .withConsistencyLevel(ConsistencyLevelEnum.STRONG)
+                .build());
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            log.warn("milvus集合{}读取向量失败: {}", fullCollectionName, response.getMessage());
+            return result;
+        }
+        QueryResultsWrapper wrapper = new QueryResultsWrapper(response.getData());
+        List<?> fidData = wrapper.getFieldWrapper("fid").getFieldData();
+        List<?> vectorData = wrapper.getFieldWrapper("fv").getFieldData();
+        for (int i = 0; i < Math.min(fidData.size(), vectorData.size()); i++) {
+            List<?> vector = (List<?>) vectorData.get(i);
+            float[] floats = new float[vector.size()];
+            for (int j = 0; j < floats.length; j++) {
+                floats[j] = ((Number) vector.get(j)).floatValue();
+            }
+            result.putIfAbsent(String.valueOf(fidData.get(i)), floats);
+        }
+        return result;
     }
 
     /**
-     * milvus 不支持通过文本检索相似性
+     * milvus 不支持通过文本检索相似性 关键词检索见 {@link org.ruoyi.knowledge.chain.retrieve.LexicalRetriever}
      *
      * @param query
      * @param kid
@@ -390,7 +512,17 @@ public class MilvusVectorStore implements VectorStore {
      */
     @Override
     public List<String> nearest(String query, String kid) {
-        return null;
+        return Collections.emptyList();
     }
 
+    /**
+     * 集合状态 存在即表示集合已创建、已建索引并已加载
+     */
+    private static class CollectionState {
+
+        /**
+         * 已确认存在并已加载的分区
+         */
+        private final Set<String> partitions = ConcurrentHashMap.newKeySet();
+    }
 }
@@ -0,0 +1,12 @@
+package org.ruoyi.knowledge.chain.vectorstore;
+
+/**
+ * 向量检索结果
+ *
+ * @param kid     知识库ID
+ * @param fid     片段ID 向量库未保存时为null
+ * @param content 片段内容
+ * @param score   与查询向量的相似度 越大越相似; 量纲取决于向量库, 不同向量库的分数不能直接比较
+ */
+public record VectorSearchHit(String kid, String fid, String content, float score) {
+}
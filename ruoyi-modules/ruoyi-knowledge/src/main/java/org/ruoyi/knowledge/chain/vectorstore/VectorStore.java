@@ -1,9 +1,17 @@
 package org.ruoyi.knowledge.chain.vectorstore;
 
+import org.ruoyi.knowledge.chain.vectorizer.VectorUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 向量存储
+ * <p>
+ * float[] 方法默认转换后调用 List&lt;Double&gt; 方法, 各实现覆盖 float[] 方法以避免装箱
  */
 public interface VectorStore {
 
@@ -20,4 +28,63 @@ public interface VectorStore {
     void newSchema(String kid);
 
     void removeByKidAndFid(String kid, String fid);
+
+    /**
+     * 保存float数组形式的向量
+     *
+     * @param chunkList  文本块列表
+     * @param vectorList 与文本块顺序一致的向量
+     * @param kid        知识库ID
+     * @param docId      文档ID
+     * @param fidList    片段ID列表
+     */
+    default void storeFloatEmbeddings(List<String> chunkList, List<float[]> vectorList, String kid, String docId, List<String> fidList) {
+        List<List<Double>> doubleVectors = new ArrayList<>(vectorList.size());
+        for (float[] vector : vectorList) {
+            doubleVectors.add(VectorUtils.toDoubleList(vector));
+        }
+        storeEmbeddings(chunkList, doubleVectors, kid, docId, fidList);
+    }
+
+    /**
+     * 使用float数组形式的向量检索
+     *
+     * @param queryVector 查询向量
+     * @param kid         知识库ID
+     * @return 相似的片段内容
+     */
+    default List<String> nearest(float[] queryVector, String kid) {
+        return nearest(VectorUtils.toDoubleList(queryVector), kid);
+    }
+
+    /**
+     * 检索相似片段及相似度
+     * <p>
+     * 默认由 {@link #nearest(float[], String)} 转换, 不提供片段ID, 相似度按排名递减
+     *
+     * @param queryVector 查询向量
+     * @param kid         知识库ID
+     * @return 按相似度从高到低排列的结果
+     */
+    default List<VectorSearchHit> search(float[] queryVector, String kid) {
+        List<String> contents = nearest(queryVector, kid);
+        List<VectorSearchHit> hits = new ArrayList<>(contents.size());
+        for (int i = 0; i < contents.size(); i++) {
+            hits.add(new VectorSearchHit(kid, null, contents.get(i), 1f / (i + 1)));
+        }
+        return hits;
+    }
+
+    /**
+     * 按片段ID读取已保存的向量 用于相同内容的片段复用向量
+     * <p>
+     * 默认不支持, 返回空结果, 调用方改为重新向量化
+     *
+     * @param kid  知识库ID
+     * @param fids 片段ID
+     * @return 片段ID到向量的映射 未找到的片段不包含在内
+     */
+    default Map<String, float[]> getVectors(String kid, Collection<String> fids) {
+        return Collections.emptyMap();
+    }
 }
@@ -1,10 +1,9 @@
 package org.ruoyi.knowledge.chain.vectorstore;
 
-import cn.hutool.core.util.StrUtil;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
-import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
-import org.ruoyi.knowledge.mapper.KnowledgeInfoMapper;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -15,26 +14,27 @@ public class VectorStoreFactory {
 
     private final MilvusVectorStore milvusVectorStore;
 
+    private final LocalHnswVectorStore localHnswVectorStore;
+
     @Resource
-    private KnowledgeInfoMapper knowledgeInfoMapper;
+    private KnowledgeProfileCache knowledgeProfileCache;
 
-    public VectorStoreFactory(WeaviateVectorStore weaviateVectorStore, MilvusVectorStore milvusVectorStore) {
+    public VectorStoreFactory(WeaviateVectorStore weaviateVectorStore, MilvusVectorStore milvusVectorStore,
+                              LocalHnswVectorStore localHnswVectorStore) {
         this.weaviateVectorStore = weaviateVectorStore;
         this.milvusVectorStore = milvusVectorStore;
+        this.localHnswVectorStore = localHnswVectorStore;
     }
 
     public VectorStore getVectorStore(String kid){
-        String vectorModel = "weaviate";
-        if (StrUtil.isNotEmpty(kid)) {
-            KnowledgeInfoVo knowledgeInfoVo = knowledgeInfoMapper.selectVoById(Long.valueOf(kid));
-            if (knowledgeInfoVo != null && StrUtil.isNotEmpty(knowledgeInfoVo.getVector())) {
-                vectorModel = knowledgeInfoVo.getVector();
-            }
-        }
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
+        String vectorModel = profile == null ? KnowledgeProfile.DEFAULT_VECTOR : profile.vectorOrDefault();
         if ("weaviate".equals(vectorModel)){
             return weaviateVectorStore;
         }else if ("milvus".equals(vectorModel)){
             return milvusVectorStore;
+        }else if ("local".equals(vectorModel)){
+            return localHnswVectorStore;
         }
         return null;
     }
@@ -5,7 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @Slf4j
@@ -56,4 +58,28 @@ public class VectorStoreWrapper implements VectorStore {
         VectorStore vectorStore = vectorStoreFactory.getVectorStore(kid);
         vectorStore.removeByKidAndFid(kid, fid);
     }
+
+    @Override
+    public void storeFloatEmbeddings(List<String> chunkList, List<float[]> vectorList, String kid, String docId, List<String> fidList) {
+        VectorStore vectorStore = vectorStoreFactory.getVectorStore(kid);
+        vectorStore.storeFloatEmbeddings(chunkList, vectorList, kid, docId, fidList);
+    }
+
+    @Override
+    public List<String> nearest(float[] queryVector, String kid) {
+        VectorStore vectorStore = vectorStoreFactory.getVectorStore(kid);
+        return vectorStore.nearest(queryVector, kid);
+    }
+
+    @Override
+    public List<VectorSearchHit> search(float[] queryVector, String kid) {
+        VectorStore vectorStore = vectorStoreFactory.getVectorStore(kid);
+        return vectorStore.search(queryVector, kid);
+    }
+
+    @Override
+    public Map<String, float[]> getVectors(String kid, Collection<String> fids) {
+        VectorStore vectorStore = vectorStoreFactory.getVectorStore(kid);
+        return vectorStore.getVectors(kid, fids);
+    }
 }
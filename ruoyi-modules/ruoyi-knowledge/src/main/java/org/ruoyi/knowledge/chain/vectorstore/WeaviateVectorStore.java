@@ -6,6 +6,9 @@ import com.google.gson.internal.LinkedTreeMap;
 import io.weaviate.client.Config;
 import io.weaviate.client.WeaviateClient;
 import io.weaviate.client.base.Result;
+import io.weaviate.client.v1.batch.api.ObjectsBatcher;
+import io.weaviate.client.v1.batch.model.BatchDeleteResponse;
+import io.weaviate.client.v1.batch.model.ObjectGetResponse;
 import io.weaviate.client.v1.data.model.WeaviateObject;
 import io.weaviate.client.v1.data.replication.model.ConsistencyLevel;
 import io.weaviate.client.v1.filters.Operator;
@@ -26,45 +29,92 @@ import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfile;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
+import org.ruoyi.common.core.exception.ServiceException;
 import org.ruoyi.common.core.service.ConfigService;
-import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
-import org.ruoyi.knowledge.service.IKnowledgeInfoService;
+import org.ruoyi.knowledge.chain.vectorizer.VectorUtils;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 @Slf4j
 public class WeaviateVectorStore implements VectorStore {
 
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final int DEFAULT_BATCH_PARALLELISM = 4;
+
+    /**
+     * 并行写入时等待全部请求完成的时间
+     */
+    private static final int BATCH_AWAIT_MILLIS = 10 * 60 * 1000;
+
     private volatile String protocol;
     private volatile String host;
     private volatile String className;
 
-    @Lazy
     @Resource
-    private IKnowledgeInfoService knowledgeInfoService;
+    private KnowledgeProfileCache knowledgeProfileCache;
 
     @Lazy
     @Resource
     private ConfigService configService;
 
+    /**
+     * 批量写入时每个请求的对象数
+     */
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * 批量写入时同时发送的请求数
+     */
+    private volatile int batchParallelism = DEFAULT_BATCH_PARALLELISM;
+
+    private volatile WeaviateClient client;
+
     @PostConstruct
     public void loadConfig() {
         this.protocol = configService.getConfigValue("weaviate", "protocol");
         this.host = configService.getConfigValue("weaviate", "host");
         this.className = configService.getConfigValue("weaviate", "classname");
+        this.batchSize = intConfig("batchSize", DEFAULT_BATCH_SIZE);
+        this.batchParallelism = intConfig("batchParallelism", DEFAULT_BATCH_PARALLELISM);
     }
 
+    /**
+     * 所有操作共用一个客户端
+     */
     public WeaviateClient getClient() {
-        Config config = new Config(protocol, host);
-        WeaviateClient client = new WeaviateClient(config);
-        return client;
+        WeaviateClient current = client;
+        if (current == null) {
+            synchronized (this) {
+                current = client;
+                if (current == null) {
+                    current = new WeaviateClient(new Config(protocol, host));
+                    client = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private int intConfig(String key, int defaultValue) {
+        String value = configService.getConfigValue("weaviate", key);
+        try {
+            return StringUtils.isBlank(value) ? defaultValue : Math.max(1, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
     public Result<Meta> getMeta() {
@@ -218,43 +268,29 @@ public class WeaviateVectorStore implements VectorStore {
 
     @Override
     public void removeByKidAndFid(String kid, String fid) {
-        List<String> resultList = new ArrayList<>();
-        WeaviateClient client = getClient();
-        Field fieldId = Field.builder().name("uuid").build();
-        WhereFilter where = WhereFilter.builder()
-                .path(new String[]{"fid"})
-                .operator(Operator.Equal)
-                .valueString(fid)
-                .build();
-        Result<GraphQLResponse> result = client.graphQL().get()
-                .withClassName(className + kid)
-                .withFields(fieldId)
-                .withWhere(where)
-                .run();
-        LinkedTreeMap<String, Object> t = (LinkedTreeMap<String, Object>) result.getResult().getData();
-        LinkedTreeMap<String, ArrayList<LinkedTreeMap>> l = (LinkedTreeMap<String, ArrayList<LinkedTreeMap>>) t.get("Get");
-        ArrayList<LinkedTreeMap> m = l.get(className + kid);
-        for (LinkedTreeMap linkedTreeMap : m) {
-            String uuid = linkedTreeMap.get("uuid").toString();
-            resultList.add(uuid);
-        }
-        for (String uuid : resultList) {
-            Result<Boolean> deleteResult = client.data().deleter()
-                    .withID(uuid)
-                    .withClassName(className + kid)
-                    .withConsistencyLevel(ConsistencyLevel.ALL)  // default QUORUM
-                    .run();
-        }
+        batchDelete(kid, "fid", fid);
     }
 
     @Override
     public void storeEmbeddings(List<String> chunkList, List<List<Double>> vectorList, String kid, String docId, List<String> fidList) {
-        WeaviateClient client = getClient();
-
-        for (int i = 0; i < Math.min(chunkList.size(), vectorList.size()); i++) {
-            List<Double> vector = vectorList.get(i);
-            Float[] vf = vector.stream().map(Double::floatValue).toArray(Float[]::new);
+        List<float[]> vectors = new ArrayList<>(vectorList.size());
+        for (List<Double> vector : vectorList) {
+            vectors.add(VectorUtils.toFloatArray(vector));
+        }
+        storeFloatEmbeddings(chunkList, vectors, kid, docId, fidList);
+    }
 
+    /**
+     * 使用批量接口写入 不超过一批时在当前线程发送一个请求, 否则按批并行发送
+     */
+    @Override
+    public void storeFloatEmbeddings(List<String> chunkList, List<float[]> vectorList, String kid, String docId, List<String> fidList) {
+        int size = Math.min(chunkList.size(), vectorList.size());
+        if (size == 0) {
+            return;
+        }
+        WeaviateObject[] objects = new WeaviateObject[size];
+        for (int i = 0; i < size; i++) {
             Map<String, Object> dataSchema = new HashMap<>();
             dataSchema.put("content", chunkList.get(i));
             dataSchema.put("kid", kid);
@@ -262,45 +298,81 @@ public class WeaviateVectorStore implements VectorStore {
             dataSchema.put("fid", fidList.get(i));
             String uuid = UUID.randomUUID().toString();
             dataSchema.put("uuid", uuid);
+            objects[i] = WeaviateObject.builder()
+                    .className(className + kid)
+                    .id(uuid)
+                    .vector(VectorUtils.toBoxedArray(vectorList.get(i)))
+                    .properties(dataSchema)
+                    .build();
+        }
 
-            Result<WeaviateObject> result = client.data().creator()
-                    .withClassName(className + kid)
-                    .withID(uuid)
-                    .withVector(vf)
-                    .withProperties(dataSchema)
-                    .run();
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger responses = new AtomicInteger();
+        if (size <= batchSize) {
+            collectErrors(getClient().batch().objectsBatcher().withObjects(objects).run(), responses, errors);
+        } else {
+            ObjectsBatcher.AutoBatchConfig autoBatchConfig = ObjectsBatcher.AutoBatchConfig.builder()
+                    .batchSize(batchSize)
+                    .poolSize(batchParallelism)
+                    .awaitTerminationMs(BATCH_AWAIT_MILLIS)
+                    .callback(result -> collectErrors(result, responses, errors))
+                    .build();
+            try (ObjectsBatcher batcher = getClient().batch().objectsAutoBatcher(autoBatchConfig)) {
+                batcher.withObjects(objects);
+            }
         }
+        if (errors.isEmpty() && responses.get() < size) {
+            errors.add("未确认写入" + (size - responses.get()) + "条");
+        }
+        if (!errors.isEmpty()) {
+            log.error("知识库{}文档{}写入weaviate失败{}条: {}", kid, docId, errors.size(), errors.get(0));
+            throw new ServiceException("向量写入weaviate失败: " + errors.get(0));
+        }
+    }
 
+    private static void collectErrors(Result<ObjectGetResponse[]> result, AtomicInteger responses, List<String> errors) {
+        if (result.hasErrors()) {
+            errors.add(String.valueOf(result.getError().getMessages()));
+            return;
+        }
+        responses.addAndGet(result.getResult().length);
+        for (ObjectGetResponse response : result.getResult()) {
+            if (response.getResult() != null && response.getResult().getErrors() != null) {
+                errors.add(String.valueOf(response.getResult().getErrors()));
+            }
+        }
     }
 
     @Override
     public void removeByDocId(String kid, String docId) {
-        List<String> resultList = new ArrayList<>();
-        WeaviateClient client = getClient();
-        Field fieldId = Field.builder().name("uuid").build();
+        batchDelete(kid, "docId", docId);
+    }
+
+    /**
+     * 按属性批量删除 服务端单次删除数量有上限, 删满时继续删除剩余对象
+     */
+    private void batchDelete(String kid, String property, String value) {
         WhereFilter where = WhereFilter.builder()
-                .path(new String[]{"docId"})
+                .path(new String[]{property})
                 .operator(Operator.Equal)
-                .valueString(docId)
+                .valueString(value)
                 .build();
-        Result<GraphQLResponse> result = client.graphQL().get()
-                .withClassName(className + kid)
-                .withFields(fieldId)
-                .withWhere(where)
-                .run();
-        LinkedTreeMap<String, Object> t = (LinkedTreeMap<String, Object>) result.getResult().getData();
-        LinkedTreeMap<String, ArrayList<LinkedTreeMap>> l = (LinkedTreeMap<String, ArrayList<LinkedTreeMap>>) t.get("Get");
-        ArrayList<LinkedTreeMap> m = l.get(className + kid);
-        for (LinkedTreeMap linkedTreeMap : m) {
-            String uuid = linkedTreeMap.get("uuid").toString();
-            resultList.add(uuid);
-        }
-        for (String uuid : resultList) {
-            Result<Boolean> deleteResult = client.data().deleter()
-                    .withID(uuid)
+        while (true) {
+            Result<BatchDeleteResponse> result = getClient().batch().objectsBatchDeleter()
                     .withClassName(className + kid)
+                    .withWhere(where)
                     .withConsistencyLevel(ConsistencyLevel.ALL)  // default QUORUM
                     .run();
+            if (result.hasErrors()) {
+                log.error("知识库{}按{}={}删除失败: {}", kid, property, value, result.getError().getMessages());
+                return;
+            }
+            BatchDeleteResponse.Results results = result.getResult().getResults();
+            if (results == null || results.getLimit() == null || results.getMatches() == null
+                    || results.getMatches() < results.getLimit() || results.getSuccessful() == null
+                    || results.getSuccessful() == 0) {
+                return;
+            }
         }
     }
 
@@ -318,17 +390,31 @@ public class WeaviateVectorStore implements VectorStore {
 
     @Override
     public List<String> nearest(List<Double> queryVector, String kid) {
-        if (StringUtils.isBlank(kid)) {
-            return new ArrayList<String>();
-        }
+        return nearest(VectorUtils.toFloatArray(queryVector), kid);
+    }
+
+    @Override
+    public List<String> nearest(float[] queryVector, String kid) {
         List<String> resultList = new ArrayList<>();
-        Float[] vf = new Float[queryVector.size()];
-        for (int j = 0; j < queryVector.size(); j++) {
-            Double value = queryVector.get(j);
-            vf[j] = value.floatValue();
+        for (VectorSearchHit hit : search(queryVector, kid)) {
+            resultList.add(hit.content());
         }
+        return resultList;
+    }
+
+    /**
+     * 类使用余弦距离 相似度为 1 - distance
+     */
+    @Override
+    public List<VectorSearchHit> search(float[] queryVector, String kid) {
+        if (StringUtils.isBlank(kid)) {
+            return new ArrayList<>();
+        }
+        List<VectorSearchHit> resultList = new ArrayList<>();
+        Float[] vf = VectorUtils.toBoxedArray(queryVector);
         WeaviateClient client = getClient();
         Field contentField = Field.builder().name("content").build();
+        Field fidField = Field.builder().name("fid").build();
         Field _additional = Field.builder()
                 .name("_additional")
                 .fields(new Field[]{
@@ -338,23 +424,80 @@ public class WeaviateVectorStore implements VectorStore {
                 .vector(vf)
                 .distance(1.6f) // certainty = 1f - distance /2f
                 .build();
-        KnowledgeInfoVo knowledgeInfoVo = knowledgeInfoService.queryById(Long.valueOf(kid));
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
         Result<GraphQLResponse> result = client.graphQL().get()
                 .withClassName(className + kid)
-                .withFields(contentField, _additional)
+                .withFields(contentField, fidField, _additional)
                 .withNearVector(nearVector)
-                .withLimit(knowledgeInfoVo.getRetrieveLimit())
+                .withLimit(profile.retrieveLimit())
                 .run();
         LinkedTreeMap<String, Object> t = (LinkedTreeMap<String, Object>) result.getResult().getData();
         LinkedTreeMap<String, ArrayList<LinkedTreeMap>> l = (LinkedTreeMap<String, ArrayList<LinkedTreeMap>>) t.get("Get");
         ArrayList<LinkedTreeMap> m = l.get(className + kid);
         for (LinkedTreeMap linkedTreeMap : m) {
             String content = linkedTreeMap.get("content").toString();
-            resultList.add(content);
+            Object fid = linkedTreeMap.get("fid");
+            Object distance = ((Map<?, ?>) linkedTreeMap.get("_additional")).get("distance");
+            float score = distance instanceof Number number ? 1f - number.floatValue() : 0f;
+            resultList.add(new VectorSearchHit(kid, fid == null ? null : fid.toString(), content, score));
         }
         return resultList;
     }
 
+    @Override
+    public Map<String, float[]> getVectors(String kid, Collection<String> fids) {
+        Map<String, float[]> result = new HashMap<>();
+        if (StringUtils.isBlank(kid) || fids.isEmpty()) {
+            return result;
+        }
+        WhereFilter[] operands = fids.stream()
+                .map(fid -> WhereFilter.builder()
+                        .path(new String[]{"fid"})
+                        .operator(Operator.Equal)
+                        .valueString(fid)
+                        .build())
+                .toArray(WhereFilter[]::new);
+        WhereFilter where = operands.length == 1 ? operands[0]
+                : WhereFilter.builder().operator(Operator.Or).operands(operands).build();
+        Field fidField = Field.builder().name("fid").build();
+        Field _additional = Field.builder()
+                .name("_additional")
+                .fields(new Field[]{
+                        Field.builder().name("vector").build()
+                }).build();
+        Result<GraphQLResponse> response = getClient().graphQL().get()
+                .withClassName(className + kid)
+                .withFields(fidField, _additional)
+                .withWhere(where)
+                .withLimit(fids.size())
+                .run();
+        if (response.hasErrors() || response.getResult().getErrors() != null) {
+            log.warn("知识库{}读取向量失败: {}", kid, response.hasErrors()
+                    ? response.getError().getMessages() : response.getResult().getErrors());
+            return result;
+        }
+        Map<?, ?> data = (Map<?, ?>) response.getResult().getData();
+        Map<?, ?> get = data == null ? null : (Map<?, ?>) data.get("Get");
+        List<?> objects = get == null ? null : (List<?>) get.get(className + kid);
+        if (objects == null) {
+            return result;
+        }
+        for (Object object : objects) {
+            Map<?, ?> item = (Map<?, ?>) object;
+            Object fid = item.get("fid");
+            Object vector = ((Map<?, ?>) item.get("_additional")).get("vector");
+            if (fid == null || !(vector instanceof List<?> values)) {
+                continue;
+            }
+            float[] floats = new float[values.size()];
+            for (int i = 0; i < floats.length; i++) {
+                floats[i] = ((Number) values.get(i)).floatValue();
+            }
+            result.putIfAbsent(fid.toString(), floats);
+        }
+        return result;
+    }
+
     @Override
     public List<String> nearest(String query, String kid) {
         if (StringUtils.isBlank(kid)) {
@@ -372,12 +515,12 @@ public class WeaviateVectorStore implements VectorStore {
                 .concepts(new String[]{query})
                 .distance(1.6f) // certainty = 1f - distance /2f
                 .build();
-        KnowledgeInfoVo knowledgeInfoVo = knowledgeInfoService.queryById(Long.valueOf(kid));
+        KnowledgeProfile profile = knowledgeProfileCache.get(kid);
         Result<GraphQLResponse> result = client.graphQL().get()
                 .withClassName(className + kid)
                 .withFields(contentField, _additional)
                 .withNearText(nearText)
-                .withLimit(knowledgeInfoVo.getRetrieveLimit())
+                .withLimit(profile.retrieveLimit())
                 .run();
         LinkedTreeMap<String, Object> t = (LinkedTreeMap<String, Object>) result.getResult().getData();
         LinkedTreeMap<String, ArrayList<LinkedTreeMap>> l = (LinkedTreeMap<String, ArrayList<LinkedTreeMap>>) t.get("Get");
@@ -0,0 +1,285 @@
+package org.ruoyi.knowledge.chain.vectorstore.local;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * HNSW近似最近邻图
+ * <p>
+ * 节点编号即向量编号, 相似度为内积(向量已归一化时即余弦相似度)
+ * 非线程安全 由调用方加锁: 插入互斥, 查询可并发
+ */
+public class HnswGraph {
+
+    /**
+     * 向量读取
+     */
+    public interface Vectors {
+
+        /**
+         * 节点与查询向量的内积
+         */
+        float dot(int node, float[] query);
+
+        /**
+         * 两个节点的内积
+         */
+        float dot(int a, int b);
+    }
+
+    private static final Comparator<Scored> BY_SCORE = Comparator.comparingDouble(Scored::score);
+
+    private final Vectors vectors;
+
+    /**
+     * 每层最大连接数 第0层为其两倍
+     */
+    private final int m;
+
+    private final int efConstruction;
+
+    private final double levelFactor;
+
+    private final Random random = new Random(42);
+
+    /**
+     * 每个节点各层的邻居 下标0存放邻居数量
+     */
+    private final List<int[][]> links = new ArrayList<>();
+
+    /**
+     * 与 links 对应的邻居相似度 裁剪邻居时无需重新计算
+     */
+    private final List<float[][]> linkScores = new ArrayList<>();
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    public HnswGraph(Vectors vectors, int m, int efConstruction) {
+        this.vectors = vectors;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.levelFactor = 1 / Math.log(m);
+    }
+
+    public int size() {
+        return links.size();
+    }
+
+    /**
+     * 插入节点 节点编号必须等于当前节点数
+     *
+     * @param node   节点编号
+     * @param vector 节点向量
+     */
+    public void add(int node, float[] vector) {
+        if (node != links.size()) {
+            throw new IllegalArgumentException("节点编号不连续: " + node);
+        }
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelFactor);
+        int[][] nodeLinks = new int[level + 1][];
+        float[][] nodeScores = new float[level + 1][];
+        for (int i = 0; i <= level; i++) {
+            nodeLinks[i] = new int[maxLinks(i) + 1];
+            nodeScores[i] = new float[maxLinks(i) + 1];
+        }
+        links.add(nodeLinks);
+        linkScores.add(nodeScores);
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        for (int i = maxLevel; i > level; i--) {
+            current = greedy(vector, current, i);
+        }
+        for (int i = Math.min(level, maxLevel); i >= 0; i--) {
+            List<Scored> candidates = searchLayer(vector, current, efConstruction, i);
+            List<Scored> selected = selectNeighbors(candidates, maxLinks(i));
+            setLinks(node, i, selected);
+            for (Scored neighbor : selected) {
+                connect(neighbor.node(), node, neighbor.score(), i);
+            }
+            current = candidates.get(0).node();
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * 查询最相似的节点
+     *
+     * @param query   查询向量
+     * @param k       返回数量
+     * @param ef      第0层候选集大小
+     * @param deleted 已删除的节点 仍参与遍历但不返回 可为空
+     * @return 按相似度从高到低排列的节点
+     */
+    public List<Scored> search(float[] query, int k, int ef, BitSet deleted) {
+        if (entryPoint < 0 || k <= 0) {
+            return new ArrayList<>();
+        }
+        int current = entryPoint;
+        for (int i = maxLevel; i > 0; i--) {
+            current = greedy(query, current, i);
+        }
+        List<Scored> candidates = searchLayer(query, current, Math.max(ef, k), 0);
+        List<Scored> result = new ArrayList<>(k);
+        for (Scored candidate : candidates) {
+            if (deleted == null || !deleted.get(candidate.node())) {
+                result.add(candidate);
+                if (result.size() == k) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? m * 2 : m;
+    }
+
+    /**
+     * 在上层贪心移动到最相似的节点
+     */
+    private int greedy(float[] query, int start, int level) {
+        int current = start;
+        float best = vectors.dot(current, query);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] neighbors = links.get(current)[level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                float score = vectors.dot(neighbors[i], query);
+                if (score > best) {
+                    best = score;
+                    current = neighbors[i];
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在指定层做束搜索
+     *
+     * @return 按相似度从高到低排列的候选节点
+     */
+    private List<Scored> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(links.size());
+        PriorityQueue<Scored> candidates = new PriorityQueue<>(BY_SCORE.reversed());
+        PriorityQueue<Scored> results = new PriorityQueue<>(BY_SCORE);
+        Scored first = new Scored(start, vectors.dot(start, query));
+        visited.set(start);
+        candidates.add(first);
+        results.add(first);
+        while (!candidates.isEmpty()) {
+            Scored candidate = candidates.poll();
+            if (results.size() >= ef && candidate.score() < results.peek().score()) {
+                break;
+            }
+            int[][] nodeLinks = links.get(candidate.node());
+            if (level >= nodeLinks.length) {
+                continue;
+            }
+            int[] neighbors = nodeLinks[level];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int neighbor = neighbors[i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float score = vectors.dot(neighbor, query);
+                if (results.size() < ef || score > results.peek().score()) {
+                    Scored scored = new Scored(neighbor, score);
+                    candidates.add(scored);
+                    results.add(scored);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        List<Scored> sorted = new ArrayList<>(results);
+        sorted.sort(BY_SCORE.reversed());
+        return sorted;
+    }
+
+    /**
+     * 启发式选择邻居: 只保留比已选邻居更接近当前节点的候选, 使邻居分布在不同方向上
+     *
+     * @param candidates 按相似度从高到低排列的候选
+     */
+    private List<Scored> selectNeighbors(List<Scored> candidates, int max) {
+        List<Scored> selected = new ArrayList<>(Math.min(max, candidates.size()));
+        for (Scored candidate : candidates) {
+            if (selected.size() == max) {
+                break;
+            }
+            boolean diverse = true;
+            for (Scored existing : selected) {
+                if (vectors.dot(candidate.node(), existing.node()) > candidate.score()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            }
+        }
+        return selected;
+    }
+
+    private void setLinks(int node, int level, List<Scored> neighbors) {
+        int[] nodeLinks = links.get(node)[level];
+        float[] nodeScores = linkScores.get(node)[level];
+        for (int i = 0; i < neighbors.size(); i++) {
+            nodeLinks[i + 1] = neighbors.get(i).node();
+            nodeScores[i + 1] = neighbors.get(i).score();
+        }
+        nodeLinks[0] = neighbors.size();
+    }
+
+    /**
+     * 为已有节点增加一条反向连接 超出上限时替换最远的邻居
+     */
+    private void connect(int node, int neighbor, float score, int level) {
+        int[] nodeLinks = links.get(node)[level];
+        float[] nodeScores = linkScores.get(node)[level];
+        int count = nodeLinks[0];
+        if (count < nodeLinks.length - 1) {
+            nodeLinks[++count] = neighbor;
+            nodeScores[count] = score;
+            nodeLinks[0] = count;
+            return;
+        }
+        int worst = 1;
+        for (int i = 2; i <= count; i++) {
+            if (nodeScores[i] < nodeScores[worst]) {
+                worst = i;
+            }
+        }
+        // 替换最远的邻居
+        if (score > nodeScores[worst]) {
+            nodeLinks[worst] = neighbor;
+            nodeScores[worst] = score;
+        }
+    }
+
+    /**
+     * 节点及其相似度
+     */
+    public record Scored(int node, float score) {
+    }
+}
@@ -0,0 +1,512 @@
+package org.ruoyi.knowledge.chain.vectorstore.local;
+
+import cn.hutool.core.io.FileUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * 单个知识库的本地向量索引
+ * <p>
+ * 目录结构: segment-*.vec 存放归一化后的向量, meta.log 顺序记录新增与删除(墓碑)
+ * 启动时重放 meta.log 并重建HNSW图; 删除只写墓碑, 墓碑占比过高时由 {@link #compact()} 重写目录
+ */
+@Slf4j
+public class LocalVectorIndex implements Closeable {
+
+    private static final int MAGIC = 0x48565331;
+
+    private static final byte OP_ADD = 1;
+
+    private static final byte OP_DELETE = 2;
+
+    private static final String META_FILE = "meta.log";
+
+    private static final int M = 16;
+
+    private static final int EF_CONSTRUCTION = 128;
+
+    /**
+     * 默认查询候选集大小, 可通过配置 local/efSearch 调整, 越大召回率越高、耗时越长
+     */
+    public static final int DEFAULT_EF_SEARCH = 128;
+
+    /**
+     * 触发整理的最少墓碑数
+     */
+    private static final int COMPACT_MIN_DELETED = 64;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Path dir;
+
+    private VectorSegments segments;
+
+    private HnswGraph graph;
+
+    private List<Entry> entries = new ArrayList<>();
+
+    private BitSet deleted = new BitSet();
+
+    private int deletedCount;
+
+    private DataOutputStream metaLog;
+
+    /**
+     * 每次写入递增 整理期间有写入时放弃本次整理
+     */
+    private long version;
+
+    private LocalVectorIndex(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 打开目录下的索引 目录不存在时创建
+     */
+    public static LocalVectorIndex open(Path dir) throws IOException {
+        recover(dir);
+        LocalVectorIndex index = new LocalVectorIndex(dir);
+        Files.createDirectories(dir);
+        index.load();
+        return index;
+    }
+
+    /**
+     * 恢复整理时中断的目录替换
+     * 原目录已改名而新目录未就位时, 整理结果完整则换入, 否则换回原目录; 原目录存在时清理残留目录
+     *
+     * @return 恢复后索引目录是否存在
+     */
+    public static boolean recover(Path dir) throws IOException {
+        Path target = compactDir(dir);
+        Path backup = backupDir(dir);
+        if (!Files.isDirectory(dir)) {
+            if (Files.isDirectory(target) && Files.isDirectory(backup)) {
+                // 整理结果写完后才会改名原目录
+                Files.move(target, dir);
+                log.warn("向量索引 {} 恢复中断的整理", dir);
+            } else if (Files.isDirectory(backup)) {
+                Files.move(backup, dir);
+                log.warn("向量索引 {} 回滚中断的整理", dir);
+            }
+        }
+        if (Files.isDirectory(dir)) {
+            FileUtil.del(target);
+            FileUtil.del(backup);
+            return true;
+        }
+        // 知识库已删除 残留的整理结果无用
+        FileUtil.del(target);
+        return false;
+    }
+
+    /**
+     * 写入一批向量
+     *
+     * @param contents 片段内容
+     * @param vectors  向量 写入前归一化
+     * @param docId    文档ID
+     * @param fids     片段ID
+     */
+    public void add(List<String> contents, List<float[]> vectors, String docId, List<String> fids) throws IOException {
+        int size = Math.min(contents.size(), vectors.size());
+        if (size == 0) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (segments == null) {
+                init(vectors.get(0).length);
+            }
+            for (int i = 0; i < size; i++) {
+                float[] vector = normalize(vectors.get(i));
+                if (vector.length != segments.dimension()) {
+                    throw new IllegalArgumentException("向量维度不一致: " + vector.length + " != " + segments.dimension());
+                }
+                Entry entry = new Entry(docId, fids == null || i >= fids.size() ? null : fids.get(i), contents.get(i));
+                append(entry, vector);
+            }
+            segments.force();
+            metaLog.flush();
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 标记删除满足条件的向量
+     *
+     * @return 删除数量
+     */
+    public int delete(Predicate<Entry> filter) throws IOException {
+        lock.writeLock().lock();
+        try {
+            int count = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                if (!deleted.get(i) && filter.test(entries.get(i))) {
+                    deleted.set(i);
+                    metaLog.writeByte(OP_DELETE);
+                    metaLog.writeInt(i);
+                    count++;
+                }
+            }
+            if (count > 0) {
+                deletedCount += count;
+                metaLog.flush();
+                version++;
+            }
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查询最相似的片段
+     *
+     * @param query 查询向量
+     * @param k     返回数量
+     * @return 按余弦相似度从高到低排列的片段
+     */
+    public List<Hit> search(float[] query, int k) {
+        return search(query, k, DEFAULT_EF_SEARCH);
+    }
+
+    /**
+     * 查询最相似的片段
+     *
+     * @param query    查询向量
+     * @param k        返回数量
+     * @param efSearch 候选集大小
+     * @return 按余弦相似度从高到低排列的片段
+     */
+    public List<Hit> search(float[] query, int k, int efSearch) {
+        lock.readLock().lock();
+        try {
+            List<Hit> result = new ArrayList<>(k);
+            if (graph == null || query.length != segments.dimension()) {
+                return result;
+            }
+            // 墓碑参与遍历 适当放大候选集
+            int ef = Math.max(efSearch, k) + Math.min(deletedCount, efSearch);
+            for (HnswGraph.Scored scored : graph.search(normalize(query), k, ef, deleted)) {
+                result.add(new Hit(entries.get(scored.node()), scored.score()));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 按片段ID读取向量
+     *
+     * @param fids 片段ID
+     * @return 片段ID到向量(已归一化)的映射
+     */
+    public Map<String, float[]> vectors(Set<String> fids) {
+        lock.readLock().lock();
+        try {
+            Map<String, float[]> result = new HashMap<>();
+            if (segments == null) {
+                return result;
+            }
+            for (int i = 0; i < entries.size() && result.size() < fids.size(); i++) {
+                String fid = entries.get(i).fid();
+                if (fid != null && !deleted.get(i) && fids.contains(fid)) {
+                    result.putIfAbsent(fid, segments.get(i));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 墓碑是否多到需要整理
+     */
+    public boolean needsCompaction() {
+        lock.readLock().lock();
+        try {
+            return deletedCount >= COMPACT_MIN_DELETED && deletedCount * 5 >= entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 整理索引: 将存活的向量重写到新目录并重建图, 完成后替换原目录
+     * 重写期间不阻塞查询; 若期间有新的写入则放弃本次整理
+     *
+     * @return 是否完成整理
+     */
+    public boolean compact() throws IOException {
+        Path target = compactDir(dir);
+        FileUtil.del(target);
+        LocalVectorIndex compacted;
+        long snapshot;
+        lock.readLock().lock();
+        try {
+            snapshot = version;
+            compacted = open(target);
+            if (segments != null) {
+                compacted.init(segments.dimension());
+                for (int i = 0; i < entries.size(); i++) {
+                    if (!deleted.get(i)) {
+                        compacted.append(entries.get(i), segments.get(i));
+                    }
+                }
+                compacted.segments.force();
+            }
+            compacted.closeLog();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (snapshot != version) {
+                FileUtil.del(target);
+                return false;
+            }
+            closeLog();
+            Path backup = backupDir(dir);
+            FileUtil.del(backup);
+            Files.move(dir, backup);
+            Files.move(target, dir);
+            FileUtil.del(backup);
+            // 映射的向量段在目录改名后仍然有效
+            compacted.segments.relocate(dir);
+            segments = compacted.segments;
+            graph = compacted.graph;
+            entries = compacted.entries;
+            deleted = compacted.deleted;
+            deletedCount = 0;
+            openLog();
+            version++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 关闭并删除索引目录
+     */
+    public void drop() throws IOException {
+        lock.writeLock().lock();
+        try {
+            closeLog();
+            segments = null;
+            graph = null;
+            entries = new ArrayList<>();
+            deleted = new BitSet();
+            deletedCount = 0;
+            // 进行中的整理不再替换目录
+            version++;
+            FileUtil.del(dir);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            closeLog();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void init(int dimension) throws IOException {
+        segments = new VectorSegments(dir, dimension);
+        graph = newGraph(segments);
+        Path meta = dir.resolve(META_FILE);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(meta))) {
+            out.writeInt(MAGIC);
+            out.writeInt(dimension);
+        }
+        openLog();
+    }
+
+    private static Path compactDir(Path dir) {
+        return dir.resolveSibling(dir.getFileName() + ".compact");
+    }
+
+    private static Path backupDir(Path dir) {
+        return dir.resolveSibling(dir.getFileName() + ".old");
+    }
+
+    private static HnswGraph newGraph(VectorSegments segments) {
+        return new HnswGraph(new HnswGraph.Vectors() {
+            @Override
+            public float dot(int node, float[] query) {
+                return segments.dot(node, query);
+            }
+
+            @Override
+            public float dot(int a, int b) {
+                return segments.dot(a, b);
+            }
+        }, M, EF_CONSTRUCTION);
+    }
+
+    private void append(Entry entry, float[] vector) throws IOException {
+        int id = entries.size();
+        segments.set(id, vector);
+        metaLog.writeByte(OP_ADD);
+        writeString(metaLog, entry.docId());
+        writeString(metaLog, entry.fid());
+        writeString(metaLog, entry.content());
+        entries.add(entry);
+        graph.add(id, vector);
+    }
+
+    /**
+     * 重放元数据日志 末尾不完整的记录被截断
+     */
+    private void load() throws IOException {
+        Path meta = dir.resolve(META_FILE);
+        if (!Files.exists(meta)) {
+            return;
+        }
+        long valid;
+        int dimension;
+        List<Entry> loaded = new ArrayList<>();
+        BitSet tombstones = new BitSet();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(meta)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("向量索引文件格式错误: " + meta);
+            }
+            dimension = in.readInt();
+            valid = 8;
+            try {
+                while (true) {
+                    byte op = in.readByte();
+                    if (op == OP_ADD) {
+                        byte[] docId = readBytes(in);
+                        byte[] fid = readBytes(in);
+                        byte[] content = readBytes(in);
+                        loaded.add(new Entry(string(docId), string(fid), string(content)));
+                        valid += 1 + length(docId) + length(fid) + length(content);
+                    } else if (op == OP_DELETE) {
+                        tombstones.set(in.readInt());
+                        valid += 5;
+                    } else {
+                        break;
+                    }
+                }
+            } catch (EOFException e) {
+                // 写入中断的记录
+            }
+        }
+        try (FileChannel channel = FileChannel.open(meta, StandardOpenOption.WRITE)) {
+            if (channel.size() > valid) {
+                log.warn("向量索引 {} 截断不完整的记录", dir);
+                channel.truncate(valid);
+            }
+        }
+
+        segments = new VectorSegments(dir, dimension);
+        graph = newGraph(segments);
+        for (int i = 0; i < loaded.size(); i++) {
+            graph.add(i, segments.get(i));
+        }
+        entries = loaded;
+        deleted = tombstones;
+        deletedCount = tombstones.cardinality();
+        openLog();
+    }
+
+    private void openLog() throws IOException {
+        metaLog = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(dir.resolve(META_FILE), StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+
+    private void closeLog() throws IOException {
+        if (metaLog != null) {
+            metaLog.close();
+            metaLog = null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static String string(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    /**
+     * 向量对应的片段信息
+     */
+    public record Entry(String docId, String fid, String content) {
+    }
+
+    /**
+     * 检索结果
+     */
+    public record Hit(Entry entry, float score) {
+    }
+}
@@ -0,0 +1,151 @@
+package org.ruoyi.knowledge.chain.vectorstore.local;
+
+import cn.hutool.core.io.FileUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 本地向量索引离线基准
+ * <p>
+ * 用随机向量建索引, 对比HNSW检索与暴力检索的 recall@k 和平均耗时, 用于选择配置 local/efSearch, 例如:
+ * <pre>
+ * LocalVectorIndexBenchmark.run(100_000, 768, 200, 10, 64, 128, 256, 512).forEach(System.out::println);
+ * </pre>
+ */
+public final class LocalVectorIndexBenchmark {
+
+    private static final long SEED = 42;
+
+    private LocalVectorIndexBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        for (Report report : run(size, dimension, 200, 10, 32, 64, 128, 256, 512)) {
+            System.out.println(report);
+        }
+    }
+
+    /**
+     * 执行基准
+     *
+     * @param size      向量数
+     * @param dimension 向量维度
+     * @param queries   查询数
+     * @param k         只统计前k个结果
+     * @param efs       待比较的候选集大小
+     * @return 每个候选集大小的结果
+     */
+    public static List<Report> run(int size, int dimension, int queries, int k, int... efs) throws IOException {
+        Random random = new Random(SEED);
+        List<float[]> vectors = new ArrayList<>(size);
+        List<String> fids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            vectors.add(randomUnit(random, dimension));
+            fids.add(String.valueOf(i));
+        }
+        List<float[]> queryVectors = new ArrayList<>(queries);
+        for (int i = 0; i < queries; i++) {
+            queryVectors.add(randomUnit(random, dimension));
+        }
+
+        Path dir = Files.createTempDirectory("hnsw-benchmark");
+        try (LocalVectorIndex index = LocalVectorIndex.open(dir)) {
+            long start = System.nanoTime();
+            index.add(fids, vectors, "benchmark", fids);
+            double buildMillis = (System.nanoTime() - start) / 1_000_000.0;
+
+            List<Set<String>> truth = new ArrayList<>(queries);
+            start = System.nanoTime();
+            for (float[] query : queryVectors) {
+                truth.add(bruteForce(vectors, query, k));
+            }
+            double bruteMillis = (System.nanoTime() - start) / 1_000_000.0 / Math.max(1, queries);
+
+            List<Report> reports = new ArrayList<>(efs.length);
+            for (int ef : efs) {
+                // 预热一轮, 避免首次查询的JIT和缺页计入耗时
+                for (float[] query : queryVectors) {
+                    index.search(query, k, ef);
+                }
+                double recall = 0;
+                long nanos = 0;
+                for (int i = 0; i < queries; i++) {
+                    start = System.nanoTime();
+                    List<LocalVectorIndex.Hit> hits = index.search(queryVectors.get(i), k, ef);
+                    nanos += System.nanoTime() - start;
+                    int found = 0;
+                    for (LocalVectorIndex.Hit hit : hits) {
+                        if (truth.get(i).contains(hit.entry().fid())) {
+                            found++;
+                        }
+                    }
+                    recall += (double) found / k;
+                }
+                int count = Math.max(1, queries);
+                reports.add(new Report(size, dimension, k, ef, recall / count, nanos / 1_000_000.0 / count,
+                    bruteMillis, buildMillis));
+            }
+            return reports;
+        } finally {
+            FileUtil.del(dir);
+        }
+    }
+
+    private static Set<String> bruteForce(List<float[]> vectors, float[] query, int k) {
+        List<float[]> scored = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            float score = 0;
+            float[] vector = vectors.get(i);
+            for (int j = 0; j < vector.length; j++) {
+                score += vector[j] * query[j];
+            }
+            scored.add(new float[]{score, i});
+        }
+        scored.sort(Collections.reverseOrder((a, b) -> Float.compare(a[0], b[0])));
+        Set<String> result = new HashSet<>(k);
+        for (int i = 0; i < Math.min(k, scored.size()); i++) {
+            result.add(String.valueOf((int) scored.get(i)[1]));
+        }
+        return result;
+    }
+
+    private static float[] randomUnit(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        double norm = 0;
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimension; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    /**
+     * 基准结果
+     *
+     * @param size             向量数
+     * @param dimension        向量维度
+     * @param k                统计的结果数
+     * @param efSearch         候选集大小
+     * @param recall           相对暴力检索的平均召回率
+     * @param averageMillis    HNSW平均查询耗时(毫秒)
+     * @param bruteForceMillis 暴力检索平均耗时(毫秒)
+     * @param buildMillis      建索引耗时(毫秒)
+     */
+    public record Report(int size, int dimension, int k, int efSearch, double recall, double averageMillis,
+                         double bruteForceMillis, double buildMillis) {
+    }
+}
@@ -0,0 +1,134 @@
+package org.ruoyi.knowledge.chain.vectorstore.local;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 内存映射的向量段文件
+ * <p>
+ * 向量按编号顺序存放在定长的段文件中, 每段 {@link #SEGMENT_VECTORS} 条 float32 向量, 写满后新建下一段
+ */
+public class VectorSegments {
+
+    /**
+     * 每个段文件存放的向量数
+     */
+    public static final int SEGMENT_VECTORS = 4096;
+
+    private Path dir;
+
+    private final int dimension;
+
+    private final List<MappedByteBuffer> buffers = new ArrayList<>();
+
+    private final List<FloatBuffer> segments = new ArrayList<>();
+
+    /**
+     * 上次刷盘后写入过的最小段号
+     */
+    private int dirtyFrom = Integer.MAX_VALUE;
+
+    public VectorSegments(Path dir, int dimension) throws IOException {
+        this.dir = dir;
+        this.dimension = dimension;
+        Files.createDirectories(dir);
+        for (int i = 0; Files.exists(segmentPath(i)); i++) {
+            map(i);
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    /**
+     * 写入向量
+     *
+     * @param id     向量编号
+     * @param vector 向量
+     */
+    public void set(int id, float[] vector) throws IOException {
+        int segment = id / SEGMENT_VECTORS;
+        while (segments.size() <= segment) {
+            map(segments.size());
+        }
+        segments.get(segment).put(offset(id), vector, 0, dimension);
+        dirtyFrom = Math.min(dirtyFrom, segment);
+    }
+
+    /**
+     * 读取向量
+     */
+    public float[] get(int id) {
+        float[] vector = new float[dimension];
+        segments.get(id / SEGMENT_VECTORS).get(offset(id), vector, 0, dimension);
+        return vector;
+    }
+
+    public float dot(int id, float[] query) {
+        FloatBuffer segment = segments.get(id / SEGMENT_VECTORS);
+        int offset = offset(id);
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += segment.get(offset + i) * query[i];
+        }
+        return sum;
+    }
+
+    public float dot(int a, int b) {
+        FloatBuffer segmentA = segments.get(a / SEGMENT_VECTORS);
+        FloatBuffer segmentB = segments.get(b / SEGMENT_VECTORS);
+        int offsetA = offset(a);
+        int offsetB = offset(b);
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += segmentA.get(offsetA + i) * segmentB.get(offsetB + i);
+        }
+        return sum;
+    }
+
+    /**
+     * 将写入的向量刷到磁盘
+     */
+    public void force() {
+        for (int i = dirtyFrom; i < buffers.size(); i++) {
+            buffers.get(i).force();
+        }
+        dirtyFrom = Integer.MAX_VALUE;
+    }
+
+    /**
+     * 段文件所在目录被移动后更新目录 已映射的段不受影响
+     */
+    public void relocate(Path dir) {
+        this.dir = dir;
+    }
+
+    private int offset(int id) {
+        return (id % SEGMENT_VECTORS) * dimension;
+    }
+
+    private void map(int segment) throws IOException {
+        long size = (long) SEGMENT_VECTORS * dimension * Float.BYTES;
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath(segment).toFile(), "rw");
+             FileChannel channel = file.getChannel()) {
+            // 映射在通道关闭后仍然有效
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffers.add(buffer);
+            segments.add(buffer.asFloatBuffer());
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return dir.resolve(String.format("segment-%05d.vec", segment));
+    }
+}
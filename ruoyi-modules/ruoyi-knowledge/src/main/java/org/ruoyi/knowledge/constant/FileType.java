@@ -37,6 +37,11 @@ public class FileType {
     public static final String YAML = "yaml";
     public static final String YML = "yml";
 
+    public static final String JSON = "json";
+    public static final String JSONL = "jsonl";
+
+    public static final String ZIP = "zip";
+
     public static boolean isTextFile(String type){
         if (type.equalsIgnoreCase(TXT) || type.equalsIgnoreCase(CSV) || type.equalsIgnoreCase(PROPERTIES)
                 || type.equalsIgnoreCase(INI) || type.equalsIgnoreCase(YAML) || type.equalsIgnoreCase(YML)
@@ -88,4 +93,23 @@ public class FileType {
         }
     }
 
+    public static boolean isCsv(String type){
+        return type.equalsIgnoreCase(CSV);
+    }
+
+    public static boolean isJson(String type){
+        return type.equalsIgnoreCase(JSON) || type.equalsIgnoreCase(JSONL);
+    }
+
+    public static boolean isZip(String type){
+        return type.equalsIgnoreCase(ZIP);
+    }
+
+    /**
+     * 是否为可解析的文档 导入目录或压缩包时跳过其他文件
+     */
+    public static boolean isDocument(String type){
+        return isTextFile(type) || isCodeFile(type) || isMdFile(type) || isWord(type) || isPdf(type) || isJson(type);
+    }
+
 }
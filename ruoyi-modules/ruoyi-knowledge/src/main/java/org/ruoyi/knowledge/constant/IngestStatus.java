@@ -0,0 +1,21 @@
+package org.ruoyi.knowledge.constant;
+
+/**
+ * 知识库附件处理状态
+ */
+public class IngestStatus {
+    public static final String QUEUED = "queued";
+    public static final String PARSING = "parsing";
+    public static final String SPLITTING = "splitting";
+    public static final String EMBEDDING = "embedding";
+    public static final String INDEXING = "indexing";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    /**
+     * 是否已结束 旧数据没有状态视为已完成
+     */
+    public static boolean isFinished(String status) {
+        return status == null || DONE.equals(status) || FAILED.equals(status);
+    }
+}
@@ -48,4 +48,24 @@ public class KnowledgeAttach  extends BaseEntity {
      */
     private String content;
 
+    /**
+     * 处理状态
+     */
+    private String status;
+
+    /**
+     * 原文件OSS ID
+     */
+    private Long ossId;
+
+    /**
+     * 失败原因
+     */
+    private String errorMsg;
+
+    /**
+     * 入库完成后替换的旧文档ID
+     */
+    private String replaceDocId;
+
 }
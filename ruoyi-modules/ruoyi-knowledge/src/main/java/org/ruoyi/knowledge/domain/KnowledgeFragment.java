@@ -45,10 +45,25 @@ public class KnowledgeFragment extends BaseEntity {
      */
     private Integer idx;
 
+    /**
+     * 所在页码 无分页信息时为空
+     */
+    private Integer page;
+
+    /**
+     * 来源文件 压缩包中文件的相对路径, 单个文件上传时为空
+     */
+    private String source;
+
     /**
      * 文档内容
      */
     private String content;
 
+    /**
+     * 内容哈希 同一知识库中相同内容的片段复用向量
+     */
+    private String contentHash;
+
 
 }
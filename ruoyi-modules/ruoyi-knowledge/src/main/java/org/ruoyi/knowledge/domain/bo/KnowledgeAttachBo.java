@@ -52,5 +52,10 @@ public class KnowledgeAttachBo extends BaseEntity {
     @NotBlank(message = "文档内容不能为空")
     private String content;
 
+    /**
+     * 处理状态
+     */
+    private String status;
+
 
 }
@@ -10,4 +10,9 @@ public class KnowledgeInfoUploadRequest {
 
     private MultipartFile file;
 
+    /**
+     * 被替换的文档ID 上传修订版时填写, 未变化的片段复用原向量, 入库完成后删除旧文档
+     */
+    private String replaceDocId;
+
 }
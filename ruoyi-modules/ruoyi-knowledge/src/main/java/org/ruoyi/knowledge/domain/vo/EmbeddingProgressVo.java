@@ -0,0 +1,53 @@
+package org.ruoyi.knowledge.domain.vo;
+
+import lombok.Data;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * 文档向量化进度视图对象
+ */
+@Data
+public class EmbeddingProgressVo implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public static final String STATUS_RUNNING = "running";
+
+    public static final String STATUS_DONE = "done";
+
+    public static final String STATUS_FAILED = "failed";
+
+    /**
+     * 知识库ID
+     */
+    private String kid;
+
+    /**
+     * 文档ID
+     */
+    private String docId;
+
+    /**
+     * 状态 running/done/failed
+     */
+    private String status;
+
+    /**
+     * 片段总数
+     */
+    private Integer total;
+
+    /**
+     * 已写入向量库的片段数
+     */
+    private Integer completed;
+
+    /**
+     * 失败原因
+     */
+    private String message;
+
+}
@@ -59,5 +59,22 @@ public class KnowledgeAttachVo implements Serializable {
     @ExcelProperty(value = "文档内容")
     private String content;
 
+    /**
+     * 处理状态
+     */
+    @ExcelProperty(value = "处理状态")
+    private String status;
+
+    /**
+     * 原文件OSS ID
+     */
+    private Long ossId;
+
+    /**
+     * 失败原因
+     */
+    @ExcelProperty(value = "失败原因")
+    private String errorMsg;
+
 
 }
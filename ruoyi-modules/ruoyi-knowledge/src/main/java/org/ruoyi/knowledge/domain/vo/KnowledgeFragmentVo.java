@@ -53,6 +53,18 @@ public class KnowledgeFragmentVo implements Serializable {
     @ExcelProperty(value = "片段索引下标")
     private Long idx;
 
+    /**
+     * 所在页码
+     */
+    @ExcelProperty(value = "所在页码")
+    private Integer page;
+
+    /**
+     * 来源文件
+     */
+    @ExcelProperty(value = "来源文件")
+    private String source;
+
     /**
      * 文档内容
      */
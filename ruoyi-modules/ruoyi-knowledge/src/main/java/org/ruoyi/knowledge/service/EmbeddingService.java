@@ -1,17 +1,45 @@
 package org.ruoyi.knowledge.service;
 
+import org.ruoyi.knowledge.domain.vo.EmbeddingProgressVo;
+
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public interface EmbeddingService {
 
     void storeEmbeddings(List<String> chunkList, String kid, String docId,List<String> fidList);
 
+    /**
+     * 后台分批向量化并写入向量库 立即返回
+     */
+    CompletableFuture<Void> storeEmbeddingsAsync(List<String> chunkList, String kid, String docId, List<String> fidList);
+
+    /**
+     * 复用已有片段的向量写入新片段 不请求向量接口
+     *
+     * @param sourceFids 与新片段一一对应的已有片段ID
+     * @param chunkList  新片段内容
+     * @param kid        知识库ID
+     * @param docId      文档ID
+     * @param fidList    新片段ID
+     * @return 已写入的新片段ID 找不到源向量的片段不写入
+     */
+    Set<String> reuseEmbeddings(List<String> sourceFids, List<String> chunkList, String kid, String docId, List<String> fidList);
+
+    /**
+     * 查询文档的向量化进度
+     */
+    EmbeddingProgressVo getProgress(String docId);
+
     void removeByDocId(String kid,String docId);
 
     void removeByKid(String kid);
 
     List<Double> getQueryVector(String query, String kid);
 
+    float[] getQueryFloatVector(String query, String kid);
+
     void createSchema(String kid);
 
     void removeByKidAndFid(String kid, String fid);
@@ -0,0 +1,48 @@
+package org.ruoyi.knowledge.service;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 知识库问答语义缓存Service接口
+ */
+public interface IAnswerCacheService {
+
+    /**
+     * 知识库当前的缓存版本 文档变更后递增
+     *
+     * @param kid 知识库ID
+     */
+    long version(String kid);
+
+    /**
+     * 查找相似问题的回答
+     *
+     * @param kid         知识库ID
+     * @param model       对话模型
+     * @param queryVector 问题向量
+     * @return 缓存的回答 未命中返回null
+     */
+    String get(String kid, String model, float[] queryVector);
+
+    /**
+     * 缓存回答
+     *
+     * @param version 检索前读取的缓存版本 与当前版本不一致时不缓存
+     */
+    void put(String kid, String model, float[] queryVector, String answer, long version);
+
+    /**
+     * 使知识库的缓存失效
+     *
+     * @param kid 知识库ID
+     */
+    void invalidate(String kid);
+
+    /**
+     * 以流式响应的格式回放缓存的回答
+     *
+     * @param answer 回答
+     * @param model  对话模型
+     */
+    SseEmitter replay(String answer, String model);
+}
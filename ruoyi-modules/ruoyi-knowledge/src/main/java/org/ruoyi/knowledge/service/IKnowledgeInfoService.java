@@ -3,7 +3,6 @@ package org.ruoyi.knowledge.service;
 import org.ruoyi.common.mybatis.core.page.PageQuery;
 import org.ruoyi.common.mybatis.core.page.TableDataInfo;
 import org.ruoyi.knowledge.domain.bo.KnowledgeInfoBo;
-import org.ruoyi.knowledge.domain.req.KnowledgeInfoUploadRequest;
 import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
 
 import java.util.List;
@@ -42,11 +41,6 @@ public interface IKnowledgeInfoService {
      */
     void saveOne(KnowledgeInfoBo bo);
 
-    /**
-     * 上传附件
-     */
-    void upload(KnowledgeInfoUploadRequest request);
-
     /**
      * 删除知识库
      */
@@ -0,0 +1,35 @@
+package org.ruoyi.knowledge.service;
+
+import org.ruoyi.knowledge.domain.vo.EmbeddingProgressVo;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 知识库附件入库Service接口
+ */
+public interface IKnowledgeIngestService {
+
+    /**
+     * 保存原文件并提交入库任务 解析、切分、向量化由后台执行
+     *
+     * @param kid          知识库ID
+     * @param file         附件
+     * @param replaceDocId 被替换的文档ID 可为空, 入库完成后删除该文档
+     * @return 文档ID
+     */
+    String submit(String kid, MultipartFile file, String replaceDocId);
+
+    /**
+     * 查询入库进度
+     *
+     * @param docId 文档ID
+     */
+    EmbeddingProgressVo getProgress(String docId);
+
+    /**
+     * 订阅入库进度 结束后关闭
+     *
+     * @param docId 文档ID
+     */
+    SseEmitter subscribeProgress(String docId);
+}
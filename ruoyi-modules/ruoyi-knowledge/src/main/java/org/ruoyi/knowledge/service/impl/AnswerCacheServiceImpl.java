@@ -0,0 +1,209 @@
+package org.ruoyi.knowledge.service.impl;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.date.DateUnit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.common.chat.entity.chat.ChatChoice;
+import org.ruoyi.common.chat.entity.chat.ChatCompletionResponse;
+import org.ruoyi.common.chat.entity.chat.Message;
+import org.ruoyi.common.core.service.ConfigService;
+import org.ruoyi.common.core.utils.StringUtils;
+import org.ruoyi.common.json.utils.JsonUtils;
+import org.ruoyi.common.redis.utils.RedisUtils;
+import org.ruoyi.knowledge.service.IAnswerCacheService;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+
+/**
+ * 知识库问答语义缓存Service业务层处理
+ * <p>
+ * 每个知识库在本地保存最近的问答, 新问题与已有问题的向量余弦相似度达到阈值(配置 knowledge/cacheThreshold, 默认0.95)时直接回放回答
+ * 知识库文档变更时递增redis中的版本号, 各节点发现版本变化后清空该知识库的缓存
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AnswerCacheServiceImpl implements IAnswerCacheService {
+
+    private static final String VERSION_KEY = "knowledge:answer:version:";
+
+    private static final double DEFAULT_THRESHOLD = 0.95;
+
+    /**
+     * 每个知识库缓存的问答数
+     */
+    private static final int MAX_ENTRIES = 256;
+
+    private static final long ENTRY_TTL = DateUnit.DAY.getMillis();
+
+    /**
+     * 回放时每个事件的字符数
+     */
+    private static final int REPLAY_CHUNK = 16;
+
+    private final ConfigService configService;
+
+    private final LRUCache<String, KidEntries> cache = CacheUtil.newLRUCache(1024, ENTRY_TTL);
+
+    @Override
+    public long version(String kid) {
+        return RedisUtils.getAtomicValue(VERSION_KEY + kid);
+    }
+
+    @Override
+    public String get(String kid, String model, float[] queryVector) {
+        double threshold = threshold();
+        if (threshold > 1) {
+            return null;
+        }
+        KidEntries entries = cache.get(kid);
+        if (entries == null) {
+            return null;
+        }
+        long version = version(kid);
+        if (entries.version != version) {
+            cache.remove(kid);
+            return null;
+        }
+        float[] query = normalize(queryVector);
+        long now = System.currentTimeMillis();
+        Entry best = null;
+        double bestScore = threshold;
+        synchronized (entries) {
+            for (Entry entry : entries.items) {
+                if (now - entry.createdAt() > ENTRY_TTL || !entry.model().equals(model)) {
+                    continue;
+                }
+                double score = dot(query, entry.vector());
+                if (score >= bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+        }
+        return best == null ? null : best.answer();
+    }
+
+    @Override
+    public void put(String kid, String model, float[] queryVector, String answer, long version) {
+        if (StringUtils.isBlank(answer) || threshold() > 1 || version(kid) != version) {
+            return;
+        }
+        KidEntries entries = cache.get(kid);
+        if (entries == null || entries.version != version) {
+            entries = new KidEntries(version);
+            cache.put(kid, entries);
+        }
+        synchronized (entries) {
+            if (entries.items.size() >= MAX_ENTRIES) {
+                entries.items.pollFirst();
+            }
+            entries.items.addLast(new Entry(model, normalize(queryVector), answer, System.currentTimeMillis()));
+        }
+    }
+
+    @Override
+    public void invalidate(String kid) {
+        try {
+            RedisUtils.incrAtomicValue(VERSION_KEY + kid);
+        } catch (Exception e) {
+            log.warn("知识库{}问答缓存失效失败: {}", kid, e.getMessage());
+        }
+        cache.remove(kid);
+    }
+
+    @Override
+    public SseEmitter replay(String answer, String model) {
+        SseEmitter emitter = new SseEmitter(0L);
+        try {
+            // 连接建立前发送的事件由 SseEmitter 暂存 返回后依次写出
+            int start = 0;
+            while (start < answer.length()) {
+                int end = Math.min(answer.length(), start + REPLAY_CHUNK);
+                if (end < answer.length() && Character.isHighSurrogate(answer.charAt(end - 1))) {
+                    end++;
+                }
+                emitter.send(chunk(answer.substring(start, end), model));
+                start = end;
+            }
+            emitter.complete();
+        } catch (Exception e) {
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    /**
+     * 构建与上游格式一致的增量数据 与实时回答一样只发送带内容的数据
+     */
+    private static String chunk(String content, String model) {
+        ChatChoice choice = new ChatChoice();
+        choice.setDelta(Message.builder().role(Message.Role.ASSISTANT).content(content).build());
+        ChatCompletionResponse response = new ChatCompletionResponse();
+        response.setId("cache");
+        response.setObject("chat.completion.chunk");
+        response.setCreated(System.currentTimeMillis() / 1000);
+        response.setModel(model);
+        response.setChoices(Collections.singletonList(choice));
+        return JsonUtils.toJsonString(response);
+    }
+
+    private double threshold() {
+        String value = configService.getConfigValue("knowledge", "cacheThreshold");
+        try {
+            return StringUtils.isBlank(value) ? DEFAULT_THRESHOLD : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return DEFAULT_THRESHOLD;
+        }
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * 单个知识库的问答 按写入顺序淘汰
+     */
+    private static class KidEntries {
+
+        private final long version;
+
+        private final Deque<Entry> items = new ArrayDeque<>();
+
+        KidEntries(long version) {
+            this.version = version;
+        }
+    }
+
+    private record Entry(String model, float[] vector, String answer, long createdAt) {
+    }
+}
@@ -1,13 +1,21 @@
 package org.ruoyi.knowledge.service.impl;
 
 import lombok.AllArgsConstructor;
+import org.ruoyi.knowledge.chain.pipeline.EmbeddingPipeline;
+import org.ruoyi.knowledge.chain.retrieve.LexicalRetriever;
 import org.ruoyi.knowledge.chain.vectorizer.Vectorization;
 import org.ruoyi.knowledge.chain.vectorstore.VectorStore;
+import org.ruoyi.knowledge.domain.vo.EmbeddingProgressVo;
 import org.ruoyi.knowledge.service.EmbeddingService;
+import org.ruoyi.knowledge.service.IAnswerCacheService;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @AllArgsConstructor
@@ -15,6 +23,9 @@ public class EmbeddingServiceImpl implements EmbeddingService {
 
     private final VectorStore vectorStore;
     private final Vectorization vectorization;
+    private final EmbeddingPipeline embeddingPipeline;
+    private final IAnswerCacheService answerCacheService;
+    private final LexicalRetriever lexicalRetriever;
 
     /**
      * 保存向量数据库
@@ -24,18 +35,64 @@ public class EmbeddingServiceImpl implements EmbeddingService {
      */
     @Override
     public void storeEmbeddings(List<String> chunkList, String kid, String docId,List<String> fidList) {
-        List<List<Double>> vectorList = vectorization.batchVectorization(chunkList, kid);
-        vectorStore.storeEmbeddings(chunkList,vectorList,kid,docId,fidList);
+        try {
+            embeddingPipeline.submit(chunkList, kid, docId, fidList).join();
+        } finally {
+            answerCacheService.invalidate(kid);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> storeEmbeddingsAsync(List<String> chunkList, String kid, String docId, List<String> fidList) {
+        // 文档变更后问答缓存失效
+        return embeddingPipeline.submit(chunkList, kid, docId, fidList)
+            .whenComplete((result, e) -> answerCacheService.invalidate(kid));
+    }
+
+    @Override
+    public Set<String> reuseEmbeddings(List<String> sourceFids, List<String> chunkList, String kid, String docId, List<String> fidList) {
+        Set<String> written = new HashSet<>();
+        Map<String, float[]> vectors = vectorStore.getVectors(kid, new HashSet<>(sourceFids));
+        if (vectors.isEmpty()) {
+            return written;
+        }
+        List<String> chunks = new ArrayList<>();
+        List<float[]> vectorList = new ArrayList<>();
+        List<String> fids = new ArrayList<>();
+        for (int i = 0; i < sourceFids.size(); i++) {
+            float[] vector = vectors.get(sourceFids.get(i));
+            if (vector != null) {
+                chunks.add(chunkList.get(i));
+                vectorList.add(vector);
+                fids.add(fidList.get(i));
+            }
+        }
+        try {
+            vectorStore.storeFloatEmbeddings(chunks, vectorList, kid, docId, fids);
+        } finally {
+            answerCacheService.invalidate(kid);
+        }
+        written.addAll(fids);
+        return written;
+    }
+
+    @Override
+    public EmbeddingProgressVo getProgress(String docId) {
+        return embeddingPipeline.getProgress(docId);
     }
 
     @Override
     public void removeByDocId(String kid,String docId) {
         vectorStore.removeByDocId(kid,docId);
+        lexicalRetriever.removeByDocId(kid,docId);
+        answerCacheService.invalidate(kid);
     }
 
     @Override
     public void removeByKid(String kid) {
         vectorStore.removeByKid(kid);
+        lexicalRetriever.removeByKid(kid);
+        answerCacheService.invalidate(kid);
     }
 
     @Override
@@ -43,6 +100,11 @@ public class EmbeddingServiceImpl implements EmbeddingService {
         return vectorization.singleVectorization(query,kid);
     }
 
+    @Override
+    public float[] getQueryFloatVector(String query, String kid) {
+        return vectorization.singleFloatVectorization(query,kid);
+    }
+
     @Override
     public void createSchema(String kid) {
         vectorStore.newSchema(kid);
@@ -51,6 +113,8 @@ public class EmbeddingServiceImpl implements EmbeddingService {
     @Override
     public void removeByKidAndFid(String kid, String fid) {
         vectorStore.removeByKidAndFid(kid,fid);
+        lexicalRetriever.removeByFid(kid,fid);
+        answerCacheService.invalidate(kid);
     }
 
     @Override
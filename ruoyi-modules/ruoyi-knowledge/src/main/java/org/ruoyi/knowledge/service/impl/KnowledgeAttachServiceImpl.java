@@ -18,13 +18,16 @@ import org.ruoyi.knowledge.mapper.KnowledgeAttachMapper;
 import org.ruoyi.knowledge.mapper.KnowledgeFragmentMapper;
 import org.ruoyi.knowledge.mapper.KnowledgeInfoMapper;
 import org.ruoyi.knowledge.service.IKnowledgeAttachService;
+import org.ruoyi.knowledge.service.EmbeddingService;
 import org.ruoyi.knowledge.service.IKnowledgeInfoService;
+import org.ruoyi.system.service.ISysOssService;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * 知识库附件Service业务层处理
@@ -44,6 +47,10 @@ public class KnowledgeAttachServiceImpl implements IKnowledgeAttachService {
 
     private final IKnowledgeInfoService knowledgeInfoService;
 
+    private final ISysOssService ossService;
+
+    private final EmbeddingService embeddingService;
+
 
     /**
      * 查询知识库附件
@@ -80,6 +87,7 @@ public class KnowledgeAttachServiceImpl implements IKnowledgeAttachService {
         lqw.like(StringUtils.isNotBlank(bo.getDocName()), KnowledgeAttach::getDocName, bo.getDocName());
         lqw.eq(StringUtils.isNotBlank(bo.getDocType()), KnowledgeAttach::getDocType, bo.getDocType());
         lqw.eq(StringUtils.isNotBlank(bo.getContent()), KnowledgeAttach::getContent, bo.getContent());
+        lqw.eq(StringUtils.isNotBlank(bo.getStatus()), KnowledgeAttach::getStatus, bo.getStatus());
         return lqw;
     }
 
@@ -129,7 +137,15 @@ public class KnowledgeAttachServiceImpl implements IKnowledgeAttachService {
     public void removeKnowledgeAttach(String docId) {
         Map<String,Object> map = new HashMap<>();
         map.put("doc_id",docId);
+        // 删除入库时保存的原文件
+        List<KnowledgeAttach> attachList = baseMapper.selectByMap(map);
+        attachList.stream()
+            .map(KnowledgeAttach::getOssId)
+            .filter(Objects::nonNull)
+            .forEach(ossId -> ossService.deleteWithValidByIds(List.of(ossId), false));
         baseMapper.deleteByMap(map);
         fragmentMapper.deleteByMap(map);
+        // 删除向量和关键词索引
+        attachList.forEach(attach -> embeddingService.removeByDocId(attach.getKid(), docId));
     }
 }
@@ -1,6 +1,5 @@
 package org.ruoyi.knowledge.service.impl;
 
-import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.util.RandomUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
@@ -12,13 +11,9 @@ import org.ruoyi.common.core.utils.StringUtils;
 import org.ruoyi.common.mybatis.core.page.PageQuery;
 import org.ruoyi.common.mybatis.core.page.TableDataInfo;
 import org.ruoyi.common.satoken.utils.LoginHelper;
-import org.ruoyi.knowledge.chain.loader.ResourceLoader;
-import org.ruoyi.knowledge.chain.loader.ResourceLoaderFactory;
-import org.ruoyi.knowledge.domain.KnowledgeAttach;
-import org.ruoyi.knowledge.domain.KnowledgeFragment;
+import org.ruoyi.knowledge.chain.profile.KnowledgeProfileCache;
 import org.ruoyi.knowledge.domain.KnowledgeInfo;
 import org.ruoyi.knowledge.domain.bo.KnowledgeInfoBo;
-import org.ruoyi.knowledge.domain.req.KnowledgeInfoUploadRequest;
 import org.ruoyi.knowledge.domain.vo.KnowledgeInfoVo;
 import org.ruoyi.knowledge.mapper.KnowledgeAttachMapper;
 import org.ruoyi.knowledge.mapper.KnowledgeFragmentMapper;
@@ -27,9 +22,7 @@ import org.ruoyi.knowledge.service.EmbeddingService;
 import org.ruoyi.knowledge.service.IKnowledgeInfoService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
 import java.util.*;
 
 /**
@@ -46,12 +39,12 @@ public class KnowledgeInfoServiceImpl implements IKnowledgeInfoService {
 
     private final EmbeddingService embeddingService;
 
-    private final ResourceLoaderFactory resourceLoaderFactory;
-
     private final KnowledgeFragmentMapper fragmentMapper;
 
     private final KnowledgeAttachMapper attachMapper;
 
+    private final KnowledgeProfileCache knowledgeProfileCache;
+
     /**
      * 查询知识库
      */
@@ -97,7 +90,9 @@ public class KnowledgeInfoServiceImpl implements IKnowledgeInfoService {
     public Boolean updateByBo(KnowledgeInfoBo bo) {
         KnowledgeInfo update = MapstructUtils.convert(bo, KnowledgeInfo.class);
         validEntityBeforeSave(update);
-        return baseMapper.updateById(update) > 0;
+        boolean updated = baseMapper.updateById(update) > 0;
+        knowledgeProfileCache.evict(bo.getId());
+        return updated;
     }
 
     /**
@@ -121,55 +116,10 @@ public class KnowledgeInfoServiceImpl implements IKnowledgeInfoService {
             embeddingService.createSchema(String.valueOf(knowledgeInfo.getId()));
         }else {
             baseMapper.updateById(knowledgeInfo);
+            knowledgeProfileCache.evict(bo.getId());
         }
     }
 
-    @Override
-    public void upload(KnowledgeInfoUploadRequest request) {
-        storeContent(request.getFile(), request.getKid());
-    }
-
-    public void storeContent(MultipartFile file, String kid) {
-        String fileName = file.getOriginalFilename();
-        List<String> chunkList = new ArrayList<>();
-        KnowledgeAttach knowledgeAttach = new KnowledgeAttach();
-        knowledgeAttach.setKid(kid);
-        String docId = RandomUtil.randomString(10);
-        knowledgeAttach.setDocId(docId);
-        knowledgeAttach.setDocName(fileName);
-        knowledgeAttach.setDocType(fileName.substring(fileName.lastIndexOf(".")+1));
-        String content = "";
-        ResourceLoader resourceLoader = resourceLoaderFactory.getLoaderByFileType(knowledgeAttach.getDocType());
-        List<String> fids = new ArrayList<>();
-        try {
-            content = resourceLoader.getContent(file.getInputStream());
-            chunkList = resourceLoader.getChunkList(content, kid);
-            List<KnowledgeFragment> knowledgeFragmentList = new ArrayList<>();
-            if (CollUtil.isNotEmpty(chunkList)) {
-                for (int i = 0; i < chunkList.size(); i++) {
-                    String fid = RandomUtil.randomString(16);
-                    fids.add(fid);
-                    KnowledgeFragment knowledgeFragment = new KnowledgeFragment();
-                    knowledgeFragment.setKid(kid);
-                    knowledgeFragment.setDocId(docId);
-                    knowledgeFragment.setFid(fid);
-                    knowledgeFragment.setIdx(i);
-                    // String text = convertTextBlockToPretrainData(chunkList.get(i));
-                    knowledgeFragment.setContent(chunkList.get(i));
-                    knowledgeFragment.setCreateTime(new Date());
-                    knowledgeFragmentList.add(knowledgeFragment);
-                }
-            }
-            fragmentMapper.insertBatch(knowledgeFragmentList);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        knowledgeAttach.setContent(content);
-        knowledgeAttach.setCreateTime(new Date());
-        attachMapper.insert(knowledgeAttach);
-        embeddingService.storeEmbeddings(chunkList,kid,docId,fids);
-    }
-
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void removeKnowledge(String id) {
@@ -186,6 +136,7 @@ public class KnowledgeInfoServiceImpl implements IKnowledgeInfoService {
         attachMapper.deleteByMap(map);
         // 删除知识库
         baseMapper.deleteByMap(map);
+        knowledgeInfoList.forEach(knowledgeInfoVo -> knowledgeProfileCache.evict(knowledgeInfoVo.getId()));
     }
 
     @Override
@@ -0,0 +1,505 @@
+package org.ruoyi.knowledge.service.impl;
+
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.redisson.api.RBlockingQueue;
+import org.redisson.api.RLock;
+import org.ruoyi.common.core.exception.ServiceException;
+import org.ruoyi.common.core.utils.StringUtils;
+import org.ruoyi.common.core.utils.Threads;
+import org.ruoyi.common.oss.factory.OssFactory;
+import org.ruoyi.common.redis.utils.QueueUtils;
+import org.ruoyi.knowledge.chain.loader.ResourceLoader;
+import org.ruoyi.knowledge.chain.loader.ResourceLoaderFactory;
+import org.ruoyi.knowledge.chain.loader.ZipFileLoader;
+import org.ruoyi.knowledge.chain.retrieve.LexicalRetriever;
+import org.ruoyi.knowledge.constant.FileType;
+import org.ruoyi.knowledge.constant.IngestStatus;
+import org.ruoyi.knowledge.domain.KnowledgeAttach;
+import org.ruoyi.knowledge.domain.KnowledgeFragment;
+import org.ruoyi.knowledge.domain.vo.EmbeddingProgressVo;
+import org.ruoyi.knowledge.mapper.KnowledgeAttachMapper;
+import org.ruoyi.knowledge.mapper.KnowledgeFragmentMapper;
+import org.ruoyi.knowledge.service.EmbeddingService;
+import org.ruoyi.knowledge.service.IKnowledgeAttachService;
+import org.ruoyi.knowledge.service.IKnowledgeIngestService;
+import org.ruoyi.system.domain.vo.SysOssVo;
+import org.ruoyi.system.service.ISysOssService;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 知识库附件入库Service业务层处理
+ * <p>
+ * 上传时只保存原文件并将文档ID放入redis队列; 每个节点启动 {@link #WORKERS} 个线程从队列领取任务,
+ * 文档按页或按段流式解析, 切分后的片段每满 {@link #FLUSH_CHUNKS} 个向量化并写入一次, 状态记录在 knowledge_attach 上
+ * 同一文档同时只由一个线程处理, 重试前清理上次残留的片段和向量, 节点宕机后由定时扫描重新入队
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class KnowledgeIngestServiceImpl implements IKnowledgeIngestService {
+
+    private static final String QUEUE_NAME = "knowledge:ingest:queue";
+
+    private static final String LOCK_KEY = "knowledge:ingest:lock:";
+
+    /**
+     * 每个节点的处理线程数
+     */
+    private static final int WORKERS = 2;
+
+    private static final long POLL_SECONDS = 5;
+
+    /**
+     * 超过该时间未更新且无人处理的任务重新入队
+     */
+    private static final long STALE_MINUTES = 10;
+
+    private static final long PROGRESS_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * 每累积该数量的片段向量化并写入一次
+     */
+    private static final int FLUSH_CHUNKS = 256;
+
+    /**
+     * 附件表只保存原文开头 全文按片段保存
+     */
+    private static final int CONTENT_PREVIEW_CHARS = 10000;
+
+    private final KnowledgeAttachMapper attachMapper;
+
+    private final KnowledgeFragmentMapper fragmentMapper;
+
+    private final ResourceLoaderFactory resourceLoaderFactory;
+
+    private final ZipFileLoader zipFileLoader;
+
+    private final IKnowledgeAttachService attachService;
+
+    private final EmbeddingService embeddingService;
+
+    private final LexicalRetriever lexicalRetriever;
+
+    private final ISysOssService ossService;
+
+    private final ExecutorService workers = Executors.newFixedThreadPool(WORKERS,
+        new BasicThreadFactory.Builder().namingPattern("knowledge-ingest-%d").daemon(true).build());
+
+    private final ScheduledExecutorService scheduler = new ScheduledThreadPoolExecutor(1,
+        new BasicThreadFactory.Builder().namingPattern("knowledge-ingest-schedule-%d").daemon(true).build());
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < WORKERS; i++) {
+            workers.execute(this::poll);
+        }
+        scheduler.scheduleWithFixedDelay(this::recover, 1, STALE_MINUTES / 2, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        running = false;
+        Threads.shutdownAndAwaitTermination(scheduler);
+        Threads.shutdownAndAwaitTermination(workers);
+    }
+
+    @Override
+    public String submit(String kid, MultipartFile file, String replaceDocId) {
+        String fileName = file.getOriginalFilename();
+        if (StringUtils.isBlank(fileName) || !fileName.contains(".")) {
+            throw new ServiceException("文件名称缺少后缀");
+        }
+        boolean replacing = StringUtils.isNotBlank(replaceDocId);
+        if (replacing) {
+            KnowledgeAttach replaced = getAttach(replaceDocId);
+            if (replaced == null || !kid.equals(replaced.getKid())) {
+                throw new ServiceException("被替换的文档不存在");
+            }
+        }
+        // 替换时新旧文档可以同名 旧文档入库完成后删除
+        boolean exists = attachMapper.exists(Wrappers.<KnowledgeAttach>lambdaQuery()
+            .eq(KnowledgeAttach::getKid, kid)
+            .eq(KnowledgeAttach::getDocName, fileName)
+            .ne(replacing, KnowledgeAttach::getDocId, replaceDocId));
+        if (exists) {
+            throw new ServiceException("文档已存在");
+        }
+        SysOssVo oss = ossService.upload(file);
+        KnowledgeAttach knowledgeAttach = new KnowledgeAttach();
+        knowledgeAttach.setKid(kid);
+        knowledgeAttach.setDocId(RandomUtil.randomString(10));
+        knowledgeAttach.setDocName(fileName);
+        knowledgeAttach.setDocType(fileName.substring(fileName.lastIndexOf(".") + 1));
+        knowledgeAttach.setOssId(oss.getOssId());
+        knowledgeAttach.setStatus(IngestStatus.QUEUED);
+        knowledgeAttach.setReplaceDocId(replacing ? replaceDocId : null);
+        knowledgeAttach.setCreateTime(new Date());
+        try {
+            attachMapper.insert(knowledgeAttach);
+        } catch (RuntimeException e) {
+            // 删除已上传的原文件
+            ossService.deleteWithValidByIds(List.of(oss.getOssId()), false);
+            throw e;
+        }
+        QueueUtils.addQueueObject(QUEUE_NAME, knowledgeAttach.getDocId());
+        return knowledgeAttach.getDocId();
+    }
+
+    @Override
+    public EmbeddingProgressVo getProgress(String docId) {
+        KnowledgeAttach attach = getAttach(docId);
+        if (attach == null) {
+            return null;
+        }
+        EmbeddingProgressVo progress = null;
+        if (!IngestStatus.QUEUED.equals(attach.getStatus())) {
+            progress = embeddingService.getProgress(docId);
+        }
+        if (progress == null) {
+            progress = new EmbeddingProgressVo();
+            progress.setKid(attach.getKid());
+            progress.setDocId(docId);
+        }
+        // 以附件状态为准 向量化进度只提供片段数
+        progress.setStatus(attach.getStatus() == null ? IngestStatus.DONE : attach.getStatus());
+        progress.setMessage(attach.getErrorMsg());
+        return progress;
+    }
+
+    @Override
+    public SseEmitter subscribeProgress(String docId) {
+        SseEmitter emitter = new SseEmitter(PROGRESS_TIMEOUT);
+        AtomicBoolean closed = new AtomicBoolean();
+        emitter.onCompletion(() -> closed.set(true));
+        emitter.onTimeout(() -> closed.set(true));
+        emitter.onError(e -> closed.set(true));
+        scheduler.execute(() -> pushProgress(docId, emitter, closed));
+        return emitter;
+    }
+
+    /**
+     * 推送一次进度 未结束时一秒后再次推送
+     */
+    private void pushProgress(String docId, SseEmitter emitter, AtomicBoolean closed) {
+        if (closed.get()) {
+            return;
+        }
+        try {
+            EmbeddingProgressVo progress = getProgress(docId);
+            if (progress == null) {
+                emitter.completeWithError(new ServiceException("文档不存在"));
+                return;
+            }
+            emitter.send(progress);
+            if (IngestStatus.isFinished(progress.getStatus())) {
+                emitter.complete();
+                return;
+            }
+        } catch (Exception e) {
+            emitter.completeWithError(e);
+            return;
+        }
+        scheduler.schedule(() -> pushProgress(docId, emitter, closed), 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 处理线程: 阻塞领取队列中的文档ID
+     */
+    private void poll() {
+        RBlockingQueue<String> queue = QueueUtils.getClient().getBlockingQueue(QUEUE_NAME);
+        while (running) {
+            try {
+                String docId = queue.poll(POLL_SECONDS, TimeUnit.SECONDS);
+                if (docId != null) {
+                    process(docId);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("知识库入库队列读取失败: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void process(String docId) {
+        RLock lock = QueueUtils.getClient().getLock(LOCK_KEY + docId);
+        // 未指定租期 持有期间自动续期, 节点宕机后锁自动释放
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            KnowledgeAttach attach = getAttach(docId);
+            if (attach == null || IngestStatus.isFinished(attach.getStatus())) {
+                return;
+            }
+            ingest(attach);
+        } catch (Exception e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.error("文档{}入库失败: {}", docId, cause.getMessage(), cause);
+            updateStatus(docId, IngestStatus.FAILED, StringUtils.substring(cause.getMessage(), 0, 500));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ingest(KnowledgeAttach attach) throws IOException {
+        String kid = attach.getKid();
+        String docId = attach.getDocId();
+        // 重试时清理上次残留
+        fragmentMapper.delete(Wrappers.<KnowledgeFragment>lambdaQuery().eq(KnowledgeFragment::getDocId, docId));
+        embeddingService.removeByDocId(kid, docId);
+
+        updateStatus(docId, IngestStatus.PARSING, null);
+        ResourceLoader resourceLoader = resourceLoaderFactory.getLoaderByFileType(attach.getDocType());
+        SysOssVo oss = ossService.getById(attach.getOssId());
+        if (oss == null) {
+            throw new ServiceException("原文件不存在");
+        }
+        // 边解析边切分写入 内存中只保留未写入的片段
+        FragmentWriter writer = new FragmentWriter(kid, docId);
+        try (InputStream inputStream = OssFactory.instance(oss.getService()).getObjectContent(oss.getFileName())) {
+            if (FileType.isZip(attach.getDocType())) {
+                // 压缩包中的文件并行解析 切分结果依次写入
+                zipFileLoader.load(inputStream, kid, documentChunks -> {
+                    writer.stage(IngestStatus.SPLITTING);
+                    documentChunks.chunks().forEach(writer::preview);
+                    writer.add(documentChunks.chunks(), documentChunks.page(), documentChunks.source());
+                });
+            } else {
+                resourceLoader.load(inputStream, section -> {
+                    writer.stage(IngestStatus.SPLITTING);
+                    writer.preview(section.content());
+                    writer.add(resourceLoader.getChunkList(section.content(), kid), section.page(), null);
+                });
+            }
+        }
+        writer.flush();
+
+        attachMapper.update(null, Wrappers.<KnowledgeAttach>lambdaUpdate()
+            .set(KnowledgeAttach::getContent, writer.preview.toString())
+            .eq(KnowledgeAttach::getDocId, docId));
+        log.info("文档{}入库完成, 共{}个片段, 复用向量{}个", docId, writer.idx, writer.reused);
+        replace(attach);
+        updateStatus(docId, IngestStatus.DONE, null);
+    }
+
+    /**
+     * 新版本入库完成后删除被替换的旧文档 删除失败不影响新文档
+     */
+    private void replace(KnowledgeAttach attach) {
+        String replaceDocId = attach.getReplaceDocId();
+        if (StringUtils.isBlank(replaceDocId) || replaceDocId.equals(attach.getDocId())) {
+            return;
+        }
+        try {
+            attachService.removeKnowledgeAttach(replaceDocId);
+        } catch (Exception e) {
+            log.error("文档{}替换旧文档{}失败: {}", attach.getDocId(), replaceDocId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 累积切分后的片段 每 {@link #FLUSH_CHUNKS} 个向量化并写入一次
+     * 解析与写入交替进行, 状态随当前阶段在 切分 向量化 写入索引 之间切换
+     */
+    private class FragmentWriter {
+
+        private final String kid;
+
+        private final String docId;
+
+        private final List<KnowledgeFragment> pending = new ArrayList<>(FLUSH_CHUNKS);
+
+        /**
+         * 原文开头 保存到附件表
+         */
+        private final StringBuilder preview = new StringBuilder();
+
+        private int idx;
+
+        /**
+         * 复用已有向量的片段数
+         */
+        private int reused;
+
+        /**
+         * 当前处理阶段 阶段变化时才更新附件状态
+         */
+        private String stage = IngestStatus.PARSING;
+
+        FragmentWriter(String kid, String docId) {
+            this.kid = kid;
+            this.docId = docId;
+        }
+
+        void stage(String status) {
+            if (!status.equals(stage)) {
+                updateStatus(docId, status, null);
+                stage = status;
+            }
+        }
+
+        void preview(String content) {
+            int remaining = CONTENT_PREVIEW_CHARS - preview.length();
+            if (remaining > 0) {
+                preview.append(content, 0, Math.min(remaining, content.length()));
+            }
+        }
+
+        void add(List<String> chunkList, Integer page, String source) {
+            for (String chunk : chunkList) {
+                KnowledgeFragment knowledgeFragment = new KnowledgeFragment();
+                knowledgeFragment.setKid(kid);
+                knowledgeFragment.setDocId(docId);
+                knowledgeFragment.setFid(RandomUtil.randomString(16));
+                knowledgeFragment.setIdx(idx++);
+                knowledgeFragment.setPage(page);
+                knowledgeFragment.setSource(source);
+                knowledgeFragment.setContent(chunk);
+                knowledgeFragment.setContentHash(DigestUtil.sha256Hex(chunk));
+                knowledgeFragment.setCreateTime(new Date());
+                pending.add(knowledgeFragment);
+                if (pending.size() >= FLUSH_CHUNKS) {
+                    flush();
+                }
+            }
+        }
+
+        /**
+         * 知识库中已有相同内容的片段时复用其向量 只向量化新内容
+         */
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            stage(IngestStatus.EMBEDDING);
+            Map<String, String> sources = existingFids(pending);
+            List<KnowledgeFragment> embedList = new ArrayList<>();
+            List<KnowledgeFragment> reuseList = new ArrayList<>();
+            List<String> sourceFids = new ArrayList<>();
+            for (KnowledgeFragment knowledgeFragment : pending) {
+                String source = sources.get(knowledgeFragment.getContentHash());
+                if (source == null) {
+                    // 同一批中重复的内容只向量化第一个
+                    sources.put(knowledgeFragment.getContentHash(), knowledgeFragment.getFid());
+                    embedList.add(knowledgeFragment);
+                } else {
+                    reuseList.add(knowledgeFragment);
+                    sourceFids.add(source);
+                }
+            }
+            embed(embedList);
+            if (!reuseList.isEmpty()) {
+                Set<String> written = embeddingService.reuseEmbeddings(sourceFids, contents(reuseList), kid, docId, fids(reuseList));
+                reused += written.size();
+                // 源向量已不存在或向量库不支持读取时重新向量化
+                embed(reuseList.stream().filter(fragment -> !written.contains(fragment.getFid())).toList());
+            }
+            // 阶段切换同时刷新更新时间 长文档处理期间不会被判定为超时
+            stage(IngestStatus.INDEXING);
+            fragmentMapper.insertBatch(pending);
+            lexicalRetriever.add(kid, pending);
+            pending.clear();
+        }
+
+        private void embed(List<KnowledgeFragment> fragments) {
+            if (!fragments.isEmpty()) {
+                embeddingService.storeEmbeddingsAsync(contents(fragments), kid, docId, fids(fragments)).join();
+            }
+        }
+
+        /**
+         * 查询知识库中内容哈希相同的已有片段
+         *
+         * @return 内容哈希到片段ID的映射
+         */
+        private Map<String, String> existingFids(List<KnowledgeFragment> fragments) {
+            Set<String> hashes = new HashSet<>();
+            for (KnowledgeFragment knowledgeFragment : fragments) {
+                hashes.add(knowledgeFragment.getContentHash());
+            }
+            Map<String, String> sources = new HashMap<>();
+            List<KnowledgeFragment> existing = fragmentMapper.selectList(Wrappers.<KnowledgeFragment>lambdaQuery()
+                .select(KnowledgeFragment::getFid, KnowledgeFragment::getContentHash)
+                .eq(KnowledgeFragment::getKid, kid)
+                .in(KnowledgeFragment::getContentHash, hashes));
+            for (KnowledgeFragment knowledgeFragment : existing) {
+                sources.putIfAbsent(knowledgeFragment.getContentHash(), knowledgeFragment.getFid());
+            }
+            return sources;
+        }
+    }
+
+    private static List<String> contents(List<KnowledgeFragment> fragments) {
+        return fragments.stream().map(KnowledgeFragment::getContent).toList();
+    }
+
+    private static List<String> fids(List<KnowledgeFragment> fragments) {
+        return fragments.stream().map(KnowledgeFragment::getFid).toList();
+    }
+
+    /**
+     * 重新入队长时间未更新且没有线程处理的任务
+     */
+    private void recover() {
+        try {
+            Date deadline = new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(STALE_MINUTES));
+            List<KnowledgeAttach> staleList = attachMapper.selectList(Wrappers.<KnowledgeAttach>lambdaQuery()
+                .select(KnowledgeAttach::getDocId)
+                .notIn(KnowledgeAttach::getStatus, IngestStatus.DONE, IngestStatus.FAILED)
+                .lt(KnowledgeAttach::getUpdateTime, deadline));
+            for (KnowledgeAttach attach : staleList) {
+                if (!QueueUtils.getClient().getLock(LOCK_KEY + attach.getDocId()).isLocked()) {
+                    log.info("文档{}入库任务超时未完成, 重新入队", attach.getDocId());
+                    updateStatus(attach.getDocId(), IngestStatus.QUEUED, null);
+                    QueueUtils.addQueueObject(QUEUE_NAME, attach.getDocId());
+                }
+            }
+        } catch (Exception e) {
+            log.error("知识库入库任务扫描失败: {}", e.getMessage(), e);
+        }
+    }
+
+    private KnowledgeAttach getAttach(String docId) {
+        return attachMapper.selectOne(Wrappers.<KnowledgeAttach>lambdaQuery()
+            .eq(KnowledgeAttach::getDocId, docId)
+            .last("limit 1"));
+    }
+
+    private void updateStatus(String docId, String status, String errorMsg) {
+        attachMapper.update(null, Wrappers.<KnowledgeAttach>lambdaUpdate()
+            .set(KnowledgeAttach::getStatus, status)
+            .set(KnowledgeAttach::getErrorMsg, errorMsg)
+            .set(KnowledgeAttach::getUpdateTime, new Date())
+            .eq(KnowledgeAttach::getDocId, docId));
+    }
+}
@@ -15,6 +15,7 @@ import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 对话配置信息
@@ -73,6 +74,15 @@ public class ChatConfigController extends BaseController {
         return R.ok(chatConfigService.getSysConfigValue("sys"));
     }
 
+    /**
+     * 查询本地配置缓存命中统计
+     */
+    @SaCheckPermission("system:config:list")
+    @GetMapping(value = "/cacheStats")
+    public R<Map<String, Long>> cacheStats() {
+        return R.ok(chatConfigService.getCacheStats());
+    }
+
     /**
      * 新增对话配置信息
      */
@@ -39,6 +39,7 @@ import org.ruoyi.system.domain.bo.SysUserBo;
 import org.ruoyi.system.domain.request.OrderRequest;
 import org.ruoyi.system.domain.vo.PaymentOrdersVo;
 import org.ruoyi.system.domain.vo.SysUserVo;
+import org.ruoyi.system.service.IBalanceLedgerService;
 import org.ruoyi.system.service.IPaymentOrdersService;
 import org.ruoyi.system.service.ISysUserService;
 import org.springframework.web.bind.annotation.*;
@@ -70,6 +71,8 @@ public class PayController {
 
     private final ConfigService configService;
 
+    private final IBalanceLedgerService balanceLedgerService;
+
     /**
      * 获取支付二维码
      *
@@ -143,10 +146,12 @@ public class PayController {
         BeanUtil.copyProperties(paymentOrdersVo,paymentOrdersBo);
         paymentOrdersService.updateByBo(paymentOrdersBo);
 
+        balanceLedgerService.credit(paymentOrdersVo.getUserId(), money);
         SysUserVo sysUserVo = userService.selectUserById(paymentOrdersVo.getUserId());
-        sysUserVo.setUserBalance(sysUserVo.getUserBalance() + money);
         SysUserBo sysUserBo = new SysUserBo();
         BeanUtil.copyProperties(sysUserVo,sysUserBo);
+        // 余额已由账本增加 不再整体写回
+        sysUserBo.setUserBalance(null);
         // 设置为付费用户
         sysUserBo.setUserGrade("1");
         userService.updateUser(sysUserBo);
@@ -178,10 +183,12 @@ public class PayController {
         paymentOrdersVo.setPaymentMethod("wx");
         BeanUtil.copyProperties(paymentOrdersVo,paymentOrdersBo);
         paymentOrdersService.updateByBo(paymentOrdersBo);
+        balanceLedgerService.credit(paymentOrdersVo.getUserId(), convertCentsToYuan(notifyResult.getTotalFee()));
         SysUserVo sysUserVo = userService.selectUserById(paymentOrdersVo.getUserId());
-        sysUserVo.setUserBalance(sysUserVo.getUserBalance() + convertCentsToYuan(notifyResult.getTotalFee()));
         SysUserBo sysUserBo = new SysUserBo();
         BeanUtil.copyProperties(sysUserVo,sysUserBo);
+        // 余额已由账本增加 不再整体写回
+        sysUserBo.setUserBalance(null);
         // 设置为付费用户
         sysUserBo.setUserGrade("1");
         userService.updateUser(sysUserBo);
@@ -6,6 +6,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
 import lombok.RequiredArgsConstructor;
+import org.ruoyi.common.chat.config.ChatConfig;
 import org.ruoyi.common.core.domain.R;
 import org.ruoyi.common.core.validate.AddGroup;
 import org.ruoyi.common.core.validate.EditGroup;
@@ -32,6 +33,7 @@ import org.springframework.web.bind.annotation.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -52,6 +54,8 @@ public class SysModelController extends BaseController {
 
     private final ISysUserService userService;
 
+    private final ChatConfig chatConfig;
+
     /**
      * 查询系统模型列表 - 全部
      */
@@ -105,6 +109,15 @@ public class SysModelController extends BaseController {
         ExcelUtil.exportExcel(list, "系统模型", SysModelVo.class, response);
     }
 
+    /**
+     * 查询模型客户端连接统计
+     */
+    @SaCheckPermission("system:model:query")
+    @GetMapping("/clientStats")
+    public R<Map<String, Object>> clientStats() {
+        return R.ok(chatConfig.getClientStats());
+    }
+
     /**
      * 获取系统模型详细信息
      *
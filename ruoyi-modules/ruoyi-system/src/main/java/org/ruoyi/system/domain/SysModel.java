@@ -66,6 +66,11 @@ public class SysModel extends BaseEntity {
      */
     private String systemPrompt;
 
+    /**
+     * 上下文token上限 为空时不裁剪
+     */
+    private Integer contextWindow;
+
     /**
      * 请求地址
      */
@@ -70,6 +70,11 @@ public class SysModelBo extends BaseEntity {
      */
     private String systemPrompt;
 
+    /**
+     * 上下文token上限 为空时不裁剪
+     */
+    private Integer contextWindow;
+
     /**
      * 请求地址
      */
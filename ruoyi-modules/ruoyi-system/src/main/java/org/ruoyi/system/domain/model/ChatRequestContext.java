@@ -0,0 +1,56 @@
+package org.ruoyi.system.domain.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * 流式对话请求上下文
+ * <p>
+ * 在请求线程中确定 由对应的监听器持有 不同会话之间互不影响
+ */
+@Getter
+@RequiredArgsConstructor
+public class ChatRequestContext {
+
+    /**
+     * 计费类型: token扣费
+     */
+    public static final String BILLING_TOKEN = "1";
+
+    /**
+     * 计费类型: 次数扣费
+     */
+    public static final String BILLING_TIMES = "2";
+
+    /**
+     * 用户id 未登录为空
+     */
+    private final Long userId;
+
+    /**
+     * 模型名称
+     */
+    private final String modelName;
+
+    /**
+     * 计费类型
+     */
+    private final String billingMode;
+
+    /**
+     * 提问消耗的token数
+     */
+    private final int promptTokens;
+
+    /**
+     * 预授权ID 未预授权为空
+     */
+    private final String reservationId;
+
+    /**
+     * 是否需要在回答结束后结算
+     */
+    public boolean isBillable() {
+        return userId != null;
+    }
+}
@@ -74,6 +74,11 @@ public class SysModelVo implements Serializable {
      */
     private String systemPrompt;
 
+    /**
+     * 上下文token上限 为空时不裁剪
+     */
+    private Integer contextWindow;
+
     /**
      * 请求地址
      */
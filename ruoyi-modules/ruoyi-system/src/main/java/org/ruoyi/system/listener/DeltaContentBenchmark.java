@@ -0,0 +1,123 @@
+package org.ruoyi.system.listener;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ruoyi.common.chat.entity.chat.ChatCompletionResponse;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流式增量内容解析离线基准
+ * <p>
+ * 对比原先每条数据新建 ObjectMapper 并反序列化为 {@link ChatCompletionResponse}、
+ * 共用 ObjectMapper 反序列化、以及 {@link SSEEventSourceListener#readDeltaContent} 流式读取的
+ * 单条平均耗时和分配字节数, 例如:
+ * <pre>
+ * DeltaContentBenchmark.run(1000, 100).forEach(System.out::println);
+ * </pre>
+ */
+public final class DeltaContentBenchmark {
+
+    private static final ObjectMapper SHARED_MAPPER = new ObjectMapper();
+
+    private DeltaContentBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int chunks = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        run(chunks, 100).forEach(System.out::println);
+    }
+
+    /**
+     * 执行基准 各方式先预热同样的轮数
+     *
+     * @param chunks 每轮解析的数据条数
+     * @param rounds 每种方式的轮数
+     * @return 各方式的结果
+     */
+    public static List<Report> run(int chunks, int rounds) throws IOException {
+        List<String> data = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            data.add(chunk(i));
+        }
+        List<Report> reports = new ArrayList<>(3);
+        reports.add(measure("new ObjectMapper", data, rounds, chunk -> objectContent(new ObjectMapper(), chunk)));
+        reports.add(measure("shared ObjectMapper", data, rounds, chunk -> objectContent(SHARED_MAPPER, chunk)));
+        reports.add(measure("streaming", data, rounds, SSEEventSourceListener::readDeltaContent));
+        return reports;
+    }
+
+    private static Report measure(String name, List<String> data, int rounds, Parser parser) throws IOException {
+        long length = 0;
+        for (int i = 0; i < rounds; i++) {
+            length += parseAll(data, parser);
+        }
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            length -= parseAll(data, parser);
+        }
+        long count = (long) rounds * data.size();
+        double micros = (System.nanoTime() - start) / 1000.0 / count;
+        long bytes = (allocatedBytes() - allocated) / count;
+        if (length != 0) {
+            throw new IllegalStateException("解析结果不一致");
+        }
+        return new Report(name, micros, bytes);
+    }
+
+    private static long parseAll(List<String> data, Parser parser) throws IOException {
+        long length = 0;
+        for (String chunk : data) {
+            String content = parser.parse(chunk);
+            length += content == null ? 0 : content.length();
+        }
+        return length;
+    }
+
+    /**
+     * 原先的解析方式
+     */
+    private static String objectContent(ObjectMapper mapper, String chunk) throws IOException {
+        ChatCompletionResponse response = mapper.readValue(chunk, ChatCompletionResponse.class);
+        if (response == null || response.getChoices() == null || response.getChoices().isEmpty()
+            || response.getChoices().get(0).getDelta() == null) {
+            return null;
+        }
+        Object content = response.getChoices().get(0).getDelta().getContent();
+        return content == null ? null : content.toString();
+    }
+
+    /**
+     * 与上游返回格式一致的一条增量数据
+     */
+    private static String chunk(int i) {
+        return "{\"id\":\"chatcmpl-9Hq3bQkT7x2Yz\",\"object\":\"chat.completion.chunk\",\"created\":1718000000,"
+            + "\"model\":\"gpt-4o-2024-05-13\",\"system_fingerprint\":\"fp_3aa7262c27\",\"choices\":[{\"index\":0,"
+            + "\"delta\":{\"content\":\"第" + i + "段回答内容\"},\"logprobs\":null,\"finish_reason\":null}]}";
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadMXBean) {
+            return threadMXBean.getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    @FunctionalInterface
+    private interface Parser {
+        String parse(String chunk) throws IOException;
+    }
+
+    /**
+     * 基准结果 不支持统计分配字节数的JVM上分配字节数为0
+     *
+     * @param name          解析方式
+     * @param averageMicros 单条平均耗时(微秒)
+     * @param averageBytes  单条分配的字节数
+     */
+    public record Report(String name, double averageMicros, long averageBytes) {
+    }
+}
@@ -1,33 +1,27 @@
 package org.ruoyi.system.listener;
 
 
-import cn.hutool.core.collection.CollectionUtil;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
-import org.ruoyi.common.chat.config.LocalCache;
-import org.ruoyi.common.chat.entity.chat.ChatCompletionResponse;
-import org.ruoyi.common.chat.utils.TikTokensUtil;
+import org.ruoyi.common.chat.utils.TokenCounter;
 import org.ruoyi.common.core.utils.SpringUtils;
-import org.ruoyi.common.core.utils.StringUtils;
-import org.ruoyi.system.domain.bo.ChatMessageBo;
-import org.ruoyi.system.domain.bo.SysModelBo;
-import org.ruoyi.system.domain.vo.SysModelVo;
+import org.ruoyi.system.domain.model.ChatRequestContext;
 import org.ruoyi.system.service.IChatCostService;
-import org.ruoyi.system.service.IChatMessageService;
-import org.ruoyi.system.service.ISysModelService;
 import org.jetbrains.annotations.NotNull;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.util.List;
+import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * 描述：OpenAIEventSourceListener
@@ -36,82 +30,152 @@ import java.util.Objects;
  * @date 2023-02-22
  */
 @Slf4j
-@RequiredArgsConstructor
-@Component
 public class SSEEventSourceListener extends EventSourceListener {
 
-    private ResponseBodyEmitter emitter;
+    private final ResponseBodyEmitter emitter;
 
-    private StringBuilder stringBuffer = new StringBuilder();
+    /**
+     * 当前会话的请求上下文 结算时使用 不再依赖全局缓存
+     */
+    private final ChatRequestContext context;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * 回答内容 预分配容量 减少扩容拷贝
+     */
+    private final StringBuilder stringBuffer = new StringBuilder(2048);
 
-    @Autowired(required = false)
-    public SSEEventSourceListener(ResponseBodyEmitter emitter) {
+    /**
+     * 回答的token数 随增量内容计数 结束时无需整体重新编码
+     */
+    private final TokenCounter tokenCounter;
+
+    /**
+     * 会话是否已结束(完成、失败或被取消) 保证只结算或退回一次
+     */
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+
+    private volatile EventSource eventSource;
+
+    /**
+     * 成功结束后接收完整回答 可为空
+     */
+    private volatile Consumer<String> completionHandler;
+
+    public SSEEventSourceListener(ResponseBodyEmitter emitter, ChatRequestContext context) {
         this.emitter = emitter;
+        this.context = context;
+        this.tokenCounter = context != null && context.isBillable() ? new TokenCounter(context.getModelName()) : null;
     }
-    private static final ISysModelService sysModelService = SpringUtils.getBean(ISysModelService.class);
-    private String modelName;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void onOpen(EventSource eventSource, Response response) {
+        this.eventSource = eventSource;
+        if (finished.get()) {
+            // 连接建立前已被取消
+            eventSource.cancel();
+            return;
+        }
         log.info("OpenAI建立sse连接...");
     }
 
+    /**
+     * 取消会话 断开上游连接 退回预授权并向前端发送错误事件
+     *
+     * @param message 错误信息
+     */
+    public void cancel(String message) {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        EventSource source = eventSource;
+        if (source != null) {
+            source.cancel();
+        }
+        if (context != null) {
+            SpringUtils.getBean(IChatCostService.class).release(context);
+        }
+        try {
+            if (emitter instanceof SseEmitter sseEmitter) {
+                sseEmitter.send(SseEmitter.event().name("error").data(message));
+            } else {
+                emitter.send(message);
+            }
+            emitter.complete();
+        } catch (Exception e) {
+            log.warn("发送取消事件失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 以非流式结果结束会话 用于插件调用 已取消时丢弃结果
+     *
+     * @param data 返回给前端的结果
+     */
+    public void complete(Object data) throws IOException {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        if (context != null) {
+            SpringUtils.getBean(IChatCostService.class).release(context);
+        }
+        emitter.send(data);
+        emitter.complete();
+    }
+
+    /**
+     * 设置成功结束后的回调 参数为完整回答 用于缓存等后续处理
+     */
+    public void onCompletion(Consumer<String> completionHandler) {
+        this.completionHandler = completionHandler;
+    }
+
+    /**
+     * 会话是否已被取消或结束
+     */
+    public boolean isFinished() {
+        return finished.get();
+    }
+
     /**
      * {@inheritDoc}
      */
     @SneakyThrows
     @Override
     public void onEvent(@NotNull EventSource eventSource, String id, String type, String data) {
+        if (finished.get()) {
+            return;
+        }
         try {
             if ("[DONE]".equals(data)) {
+                if (!finished.compareAndSet(false, true)) {
+                    return;
+                }
                 //成功响应
                 emitter.complete();
-                if(StringUtils.isNotEmpty(modelName)){
-                    IChatCostService IChatCostService = SpringUtils.context().getBean(IChatCostService.class);
-                    IChatMessageService chatMessageService = SpringUtils.context().getBean(IChatMessageService.class);
-                    ChatMessageBo chatMessageBo = new ChatMessageBo();
-                    chatMessageBo.setModelName(modelName);
-                    chatMessageBo.setContent(stringBuffer.toString());
-                    Long userId = (Long)LocalCache.CACHE.get("userId");
-                    if(userId == null){
-                        return;
-                    }
-                    chatMessageBo.setUserId(userId);
-                    //查询按次数扣费的模型
-                    SysModelBo sysModelBo = new SysModelBo();
-                    sysModelBo.setModelType("2");
-                    sysModelBo.setModelName(modelName);
-                    List<SysModelVo> sysModelList = sysModelService.queryList(sysModelBo);
-                    if (CollectionUtil.isNotEmpty(sysModelList)){
-                        chatMessageBo.setDeductCost(0d);
-                        chatMessageBo.setRemark("提问时扣费");
-                        // 保存消息记录
-                        chatMessageService.insertByBo(chatMessageBo);
-                    }else{
-                        int tokens = TikTokensUtil.tokens(modelName,stringBuffer.toString());
-                        chatMessageBo.setTotalTokens(tokens);
-                        // 按token扣费并且保存消息记录
-                        IChatCostService.deductToken(chatMessageBo);
-                    }
+                if (context != null && context.isBillable()) {
+                    // 异步结算 不阻塞OkHttp事件线程
+                    SpringUtils.getBean(IChatCostService.class).settleAsync(context, stringBuffer.toString(), tokenCounter.count());
+                }
+                Consumer<String> handler = completionHandler;
+                if (handler != null) {
+                    handler.accept(stringBuffer.toString());
                 }
                 return;
             }
-            // 解析返回内容
-            ObjectMapper mapper = new ObjectMapper();
-            ChatCompletionResponse completionResponse = mapper.readValue(data, ChatCompletionResponse.class);
-            if(completionResponse == null || CollectionUtil.isEmpty(completionResponse.getChoices())){
-                return;
-            }
-            Object content = completionResponse.getChoices().get(0).getDelta().getContent();
+            // 只读取增量内容 原始数据直接转发给前端
+            String content = readDeltaContent(data);
             if(content == null){
                 return;
             }
-            if(StringUtils.isEmpty(modelName)){
-                modelName = completionResponse.getModel();
-            }
             stringBuffer.append(content);
+            if (tokenCounter != null) {
+                tokenCounter.append(content);
+            }
             emitter.send(data);
         } catch (Exception e) {
             log.error("sse信息推送失败{}内容：{}",e.getMessage(),data);
@@ -119,6 +183,52 @@ public class SSEEventSourceListener extends EventSourceListener {
         }
     }
 
+    /**
+     * 流式读取 choices[0].delta.content 读到后立即返回 不构建完整的响应对象
+     *
+     * @param data 上游返回的一条sse数据
+     * @return 增量内容 不存在时返回null
+     */
+    static String readDeltaContent(String data) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    return parser.nextToken() == JsonToken.START_OBJECT ? readField(parser, "delta", "content") : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 在当前对象内按路径向下查找字符串字段
+     */
+    private static String readField(JsonParser parser, String... path) throws IOException {
+        int depth = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (field.equals(path[depth])) {
+                if (depth == path.length - 1) {
+                    return value == JsonToken.VALUE_STRING ? parser.getText() : null;
+                }
+                if (value != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                depth++;
+                continue;
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
     @Override
     public void onClosed(EventSource eventSource) {
         log.info("OpenAI关闭sse连接...");
@@ -127,6 +237,14 @@ public class SSEEventSourceListener extends EventSourceListener {
     @SneakyThrows
     @Override
     public void onFailure(EventSource eventSource, Throwable t, Response response) {
+        if (!finished.compareAndSet(false, true)) {
+            // 已取消或已完成 忽略取消连接引起的失败回调
+            return;
+        }
+        if (context != null && context.isBillable()) {
+            // 未收到[DONE] 退回预授权
+            SpringUtils.getBean(IChatCostService.class).release(context);
+        }
         if (Objects.isNull(response)) {
             return;
         }
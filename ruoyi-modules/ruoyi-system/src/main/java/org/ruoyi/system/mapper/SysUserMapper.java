@@ -162,4 +162,24 @@ public interface SysUserMapper extends BaseMapperPlus<SysUser, SysUserVo> {
      *
      */
     void updateXcxUser(SysUserBo user);
+
+    /**
+     * 原子扣减用户余额 最低扣至0
+     *
+     * @param userId 用户ID
+     * @param cost   扣除费用
+     * @return 影响行数
+     */
+    @InterceptorIgnore(dataPermission = "true")
+    int deductBalance(@Param("userId") Long userId, @Param("cost") double cost);
+
+    /**
+     * 原子增加用户余额
+     *
+     * @param userId 用户ID
+     * @param amount 增加金额
+     * @return 影响行数
+     */
+    @InterceptorIgnore(dataPermission = "true")
+    int addBalance(@Param("userId") Long userId, @Param("amount") double amount);
 }
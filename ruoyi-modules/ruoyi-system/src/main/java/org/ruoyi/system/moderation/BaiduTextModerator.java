@@ -0,0 +1,129 @@
+package org.ruoyi.system.moderation;
+
+import com.alibaba.fastjson.JSONObject;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.FormBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.ruoyi.common.core.service.ConfigService;
+import org.ruoyi.common.core.utils.StringUtils;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 百度文本审核
+ * <p>
+ * 鉴权签名(Access Token)有效期30天, 缓存到过期前一分钟, 密钥变更或签名失效时重新获取
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BaiduTextModerator implements TextModerator {
+
+    private static final String TOKEN_URL = "https://aip.baidubce.com/oauth/2.0/token";
+
+    private static final String CENSOR_URL = "https://aip.baidubce.com/rest/2.0/solution/v1/text_censor/v2/user_defined";
+
+    /**
+     * 审核结论 1 合规
+     */
+    private static final String CONCLUSION_COMPLIANT = "1";
+
+    private static final long TOKEN_EXPIRE_MARGIN = TimeUnit.MINUTES.toMillis(1);
+
+    private static final OkHttpClient HTTP_CLIENT = new OkHttpClient.Builder()
+        .connectTimeout(5, TimeUnit.SECONDS)
+        .readTimeout(10, TimeUnit.SECONDS)
+        .build();
+
+    private final ConfigService configService;
+
+    private volatile AccessToken accessToken;
+
+    @Override
+    public boolean isCompliant(String text) throws IOException {
+        Request request = new Request.Builder()
+            .url(CENSOR_URL + "?access_token=" + getAccessToken())
+            .post(new FormBody.Builder().add("text", text).build())
+            .addHeader("Accept", "application/json")
+            .build();
+        JSONObject result = execute(request);
+        if (result.containsKey("error_code")) {
+            // 110 签名无效 111 签名过期
+            int errorCode = result.getIntValue("error_code");
+            if (errorCode == 110 || errorCode == 111) {
+                accessToken = null;
+            }
+            throw new IOException("文本审核失败: " + result.getString("error_msg"));
+        }
+        // 结论为空时按合规处理 与原有逻辑一致
+        String conclusionType = result.getString("conclusionType");
+        return StringUtils.isEmpty(conclusionType) || CONCLUSION_COMPLIANT.equals(conclusionType);
+    }
+
+    /**
+     * 获取鉴权签名 有效期内直接使用缓存
+     */
+    private String getAccessToken() throws IOException {
+        String apiKey = getKey("apiKey");
+        String secretKey = getKey("secretKey");
+        AccessToken current = accessToken;
+        if (current != null && current.isValid(apiKey, secretKey)) {
+            return current.value();
+        }
+        synchronized (this) {
+            current = accessToken;
+            if (current != null && current.isValid(apiKey, secretKey)) {
+                return current.value();
+            }
+            Request request = new Request.Builder()
+                .url(TOKEN_URL)
+                .post(new FormBody.Builder()
+                    .add("grant_type", "client_credentials")
+                    .add("client_id", StringUtils.blankToDefault(apiKey, ""))
+                    .add("client_secret", StringUtils.blankToDefault(secretKey, ""))
+                    .build())
+                .build();
+            JSONObject result = execute(request);
+            String value = result.getString("access_token");
+            if (StringUtils.isEmpty(value)) {
+                throw new IOException("获取文本审核签名失败: " + result.getString("error_description"));
+            }
+            long expiresAt = System.currentTimeMillis() + result.getLongValue("expires_in") * 1000 - TOKEN_EXPIRE_MARGIN;
+            accessToken = new AccessToken(value, apiKey, secretKey, expiresAt);
+            return value;
+        }
+    }
+
+    private static JSONObject execute(Request request) throws IOException {
+        try (Response response = HTTP_CLIENT.newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (body == null) {
+                throw new IOException("文本审核无响应内容, 状态码: " + response.code());
+            }
+            JSONObject result = JSONObject.parseObject(body.string());
+            return result == null ? new JSONObject() : result;
+        }
+    }
+
+    private String getKey(String key) {
+        return configService.getConfigValue("review", key);
+    }
+
+    /**
+     * 鉴权签名及获取时使用的密钥
+     */
+    private record AccessToken(String value, String apiKey, String secretKey, long expiresAt) {
+
+        boolean isValid(String apiKey, String secretKey) {
+            return System.currentTimeMillis() < expiresAt
+                && StringUtils.equals(this.apiKey, apiKey)
+                && StringUtils.equals(this.secretKey, secretKey);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.ruoyi.system.moderation;
+
+import lombok.RequiredArgsConstructor;
+import org.ruoyi.common.core.service.ConfigService;
+import org.ruoyi.common.core.utils.StringUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 本地关键词审核
+ * <p>
+ * 不调用外部服务, 文本包含配置 review/keywords 中任一关键词(逗号或换行分隔, 忽略大小写)时不合规;
+ * 未配置关键词时全部放行, 可在开发和测试环境代替服务商审核
+ */
+@Component
+@RequiredArgsConstructor
+public class KeywordTextModerator implements TextModerator {
+
+    private final ConfigService configService;
+
+    private volatile Keywords keywords = new Keywords(null, List.of());
+
+    @Override
+    public boolean isCompliant(String text) {
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        for (String keyword : getKeywords()) {
+            if (lowerCase.contains(keyword)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 配置未变化时复用上次解析的关键词
+     */
+    private List<String> getKeywords() {
+        String value = configService.getConfigValue("review", "keywords");
+        Keywords current = keywords;
+        if (!StringUtils.equals(current.source(), value)) {
+            List<String> parsed = StringUtils.isBlank(value) ? List.of() : Arrays.stream(value.split("[,，\\r\\n]+"))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .map(keyword -> keyword.toLowerCase(Locale.ROOT))
+                .distinct()
+                .toList();
+            current = new Keywords(value, parsed);
+            keywords = current;
+        }
+        return current.values();
+    }
+
+    /**
+     * 解析后的关键词及其原始配置
+     */
+    private record Keywords(String source, List<String> values) {
+    }
+}
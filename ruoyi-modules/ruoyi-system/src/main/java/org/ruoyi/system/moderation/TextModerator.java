@@ -0,0 +1,20 @@
+package org.ruoyi.system.moderation;
+
+import java.io.IOException;
+
+/**
+ * 文本审核服务商
+ * <p>
+ * 只负责调用服务商接口, 缓存与异步执行由 IModerationService 处理
+ */
+public interface TextModerator {
+
+    /**
+     * 审核文本
+     *
+     * @param text 待审核文本
+     * @return 是否合规
+     * @throws IOException 调用服务商失败
+     */
+    boolean isCompliant(String text) throws IOException;
+}
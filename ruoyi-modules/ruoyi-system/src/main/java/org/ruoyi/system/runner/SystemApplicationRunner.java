@@ -1,5 +1,6 @@
 package org.ruoyi.system.runner;
 
+import org.ruoyi.system.service.IChatConfigService;
 import org.ruoyi.system.service.ISysOssConfigService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -19,10 +20,14 @@ public class SystemApplicationRunner implements ApplicationRunner {
 
     private final ISysOssConfigService ossConfigService;
 
+    private final IChatConfigService chatConfigService;
+
     @Override
     public void run(ApplicationArguments args) throws Exception {
         ossConfigService.init();
         log.info("初始化OSS配置成功");
+        chatConfigService.init();
+        log.info("初始化对话配置刷新订阅成功");
     }
 
 }
@@ -0,0 +1,74 @@
+package org.ruoyi.system.service;
+
+/**
+ * 用户余额账本Service接口
+ * <p>
+ * 余额在Redis中扣减 定时回写sys_user
+ */
+public interface IBalanceLedgerService {
+
+    /**
+     * 查询用户可用余额
+     *
+     * @param userId 用户ID
+     * @return 可用余额 用户不存在时返回null
+     */
+    Double getBalance(Long userId);
+
+    /**
+     * 预授权 冻结预估费用 余额不足预估费用时冻结全部剩余余额
+     *
+     * @param userId 用户ID
+     * @param amount 预估费用
+     * @return 预授权ID 用户不存在时返回null
+     * @throws org.ruoyi.common.core.exception.ServiceException 余额不足
+     */
+    String reserve(Long userId, double amount);
+
+    /**
+     * 结算 释放预授权并扣除实际费用
+     *
+     * @param userId        用户ID
+     * @param reservationId 预授权ID 可为空
+     * @param actual        实际费用
+     */
+    void settle(Long userId, String reservationId, double actual);
+
+    /**
+     * 取消预授权 退回冻结的费用
+     *
+     * @param userId        用户ID
+     * @param reservationId 预授权ID
+     */
+    void refund(Long userId, String reservationId);
+
+    /**
+     * 余额充足时扣费
+     *
+     * @param userId 用户ID
+     * @param amount 扣除费用
+     * @throws org.ruoyi.common.core.exception.ServiceException 余额不足
+     */
+    void debit(Long userId, double amount);
+
+    /**
+     * 充值 在数据库中增加余额 与回写持有同一把用户锁
+     *
+     * @param userId 用户ID
+     * @param amount 充值金额
+     * @throws org.ruoyi.common.core.exception.ServiceException 用户不存在
+     */
+    void credit(Long userId, double amount);
+
+    /**
+     * 清除缓存的余额 数据库余额被修改(充值等)后调用
+     *
+     * @param userId 用户ID
+     */
+    void invalidate(Long userId);
+
+    /**
+     * 将Redis中累计的扣费回写数据库
+     */
+    void flush();
+}
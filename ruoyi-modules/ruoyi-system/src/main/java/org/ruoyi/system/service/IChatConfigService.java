@@ -7,6 +7,7 @@ import org.ruoyi.system.domain.vo.ChatConfigVo;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 对话配置信息Service接口
@@ -50,4 +51,14 @@ public interface IChatConfigService {
      * 查询系统参数
      */
     List<ChatConfigVo> getSysConfigValue(String category);
+
+    /**
+     * 订阅配置刷新通道
+     */
+    void init();
+
+    /**
+     * 本地配置缓存命中统计
+     */
+    Map<String, Long> getCacheStats();
 }
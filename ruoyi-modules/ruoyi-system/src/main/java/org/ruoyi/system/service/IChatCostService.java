@@ -1,18 +1,52 @@
 package org.ruoyi.system.service;
 
 import org.ruoyi.system.domain.bo.ChatMessageBo;
+import org.ruoyi.system.domain.model.ChatRequestContext;
 
 public interface IChatCostService {
 
+    /**
+     * 校验用户余额 余额不足时抛出异常
+     *
+     * @param userId   用户ID
+     * @param required 所需费用 为0时只要求余额大于0
+     */
+    void checkBalance(Long userId, double required);
+
     /**
      * 根据消耗的tokens扣除余额
+     * 加入结算队列 由结算线程批量扣费并保存消息记录 调用前应先校验余额
      *
      * @param chatMessageBo
-     * @return 结果
      */
 
     void deductToken(ChatMessageBo chatMessageBo);
 
+    /**
+     * 预授权本次对话的预估费用 余额不足时抛出异常
+     *
+     * @param userId        用户ID
+     * @param estimatedCost 预估费用
+     * @return 预授权ID
+     */
+    String reserve(Long userId, double estimatedCost);
+
+    /**
+     * 取消预授权 对话未正常结束时调用
+     *
+     * @param context 请求上下文
+     */
+    void release(ChatRequestContext context);
+
+    /**
+     * 异步结算一次流式回答 (保存消息记录 释放预授权并按计费类型扣费)
+     *
+     * @param context          请求上下文
+     * @param content          回答内容
+     * @param completionTokens 回答的token数
+     */
+    void settleAsync(ChatRequestContext context, String content, int completionTokens);
+
     /**
      * 扣除用户的余额
      *
@@ -0,0 +1,17 @@
+package org.ruoyi.system.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 内容审核Service接口
+ */
+public interface IModerationService {
+
+    /**
+     * 异步审核文本
+     *
+     * @param text 待审核文本
+     * @return 是否合规 未开启审核、文本为空或审核失败时为true
+     */
+    CompletableFuture<Boolean> review(String text);
+}
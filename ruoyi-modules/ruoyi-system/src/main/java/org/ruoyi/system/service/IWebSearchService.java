@@ -0,0 +1,17 @@
+package org.ruoyi.system.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 联网搜索Service接口
+ */
+public interface IWebSearchService {
+
+    /**
+     * 异步联网搜索
+     *
+     * @param query 搜索内容
+     * @return 搜索结果 未配置搜索、搜索失败或超时时为null
+     */
+    CompletableFuture<String> search(String query);
+}
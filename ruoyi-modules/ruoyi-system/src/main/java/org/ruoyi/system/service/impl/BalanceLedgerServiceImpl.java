@@ -0,0 +1,347 @@
+package org.ruoyi.system.service.impl;
+
+import cn.hutool.core.util.IdUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.redisson.api.RLock;
+import org.redisson.api.RScript;
+import org.redisson.api.RSet;
+import org.redisson.client.codec.StringCodec;
+import org.ruoyi.common.core.constant.GlobalConstants;
+import org.ruoyi.common.core.exception.ServiceException;
+import org.ruoyi.common.core.utils.Threads;
+import org.ruoyi.common.redis.utils.RedisUtils;
+import org.ruoyi.system.domain.SysUser;
+import org.ruoyi.system.mapper.SysUserMapper;
+import org.ruoyi.system.service.IBalanceLedgerService;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用户余额账本Service业务层处理
+ * <p>
+ * 每个用户一个hash: balance 可用余额, pending 未回写数据库的扣费
+ * 预授权记录在 :rsv(金额) 与 :rsvexp(过期时间) 中, 超时未结算的预授权在下次预授权时退回
+ * 所有读改写都在lua脚本中完成, 加载余额与回写数据库持有同一把用户锁
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BalanceLedgerServiceImpl implements IBalanceLedgerService {
+
+    private static final String LEDGER_KEY = GlobalConstants.GLOBAL_REDIS_KEY + "user_balance:";
+
+    /**
+     * 待回写数据库的用户
+     */
+    private static final String DIRTY_KEY = LEDGER_KEY + "dirty";
+
+    /**
+     * 预授权超时时间 与流式对话读超时一致
+     */
+    private static final long RESERVATION_TIMEOUT = TimeUnit.SECONDS.toMillis(600);
+
+    /**
+     * 账本过期时间 每次写入时续期
+     */
+    private static final long LEDGER_TTL = TimeUnit.DAYS.toMillis(1);
+
+    private static final int FLUSH_BATCH_SIZE = 100;
+
+    private static final String LOAD_SCRIPT = """
+        if redis.call('hexists', KEYS[1], 'balance') == 1 then return '1' end
+        local balance = tonumber(ARGV[1]) - tonumber(redis.call('hget', KEYS[1], 'pending') or '0')
+        for _, amount in ipairs(redis.call('hvals', KEYS[2])) do balance = balance - tonumber(amount) end
+        if balance < 0 then balance = 0 end
+        redis.call('hset', KEYS[1], 'balance', tostring(balance))
+        for i = 1, 3 do redis.call('pexpire', KEYS[i], ARGV[2]) end
+        return '1'
+        """;
+
+    private static final String RESERVE_SCRIPT = """
+        local balance = redis.call('hget', KEYS[1], 'balance')
+        if not balance then return nil end
+        balance = tonumber(balance)
+        for _, id in ipairs(redis.call('zrangebyscore', KEYS[3], '-inf', ARGV[3])) do
+            balance = balance + tonumber(redis.call('hget', KEYS[2], id) or '0')
+            redis.call('hdel', KEYS[2], id)
+            redis.call('zrem', KEYS[3], id)
+        end
+        local result = '-1'
+        if balance > 0 then
+            local amount = math.min(tonumber(ARGV[1]), balance)
+            balance = balance - amount
+            redis.call('hset', KEYS[2], ARGV[2], tostring(amount))
+            redis.call('zadd', KEYS[3], ARGV[4], ARGV[2])
+            result = ARGV[2]
+        end
+        redis.call('hset', KEYS[1], 'balance', tostring(balance))
+        for i = 1, 3 do redis.call('pexpire', KEYS[i], ARGV[5]) end
+        return result
+        """;
+
+    private static final String SETTLE_SCRIPT = """
+        local reserved = tonumber(redis.call('hget', KEYS[2], ARGV[1]) or '0')
+        redis.call('hdel', KEYS[2], ARGV[1])
+        redis.call('zrem', KEYS[3], ARGV[1])
+        local balance = redis.call('hget', KEYS[1], 'balance')
+        if balance then
+            balance = tonumber(balance) + reserved - tonumber(ARGV[2])
+            if balance < 0 then balance = 0 end
+            redis.call('hset', KEYS[1], 'balance', tostring(balance))
+        end
+        if tonumber(ARGV[2]) > 0 then redis.call('hincrbyfloat', KEYS[1], 'pending', ARGV[2]) end
+        for i = 1, 3 do redis.call('pexpire', KEYS[i], ARGV[3]) end
+        return '1'
+        """;
+
+    private static final String DEBIT_SCRIPT = """
+        local balance = redis.call('hget', KEYS[1], 'balance')
+        if not balance then return nil end
+        balance = tonumber(balance)
+        local amount = tonumber(ARGV[1])
+        if balance <= 0 or balance < amount then return '-1' end
+        redis.call('hset', KEYS[1], 'balance', tostring(balance - amount))
+        if amount > 0 then redis.call('hincrbyfloat', KEYS[1], 'pending', ARGV[1]) end
+        for i = 1, 3 do redis.call('pexpire', KEYS[i], ARGV[2]) end
+        return '1'
+        """;
+
+    private static final String TAKE_PENDING_SCRIPT = """
+        local pending = redis.call('hget', KEYS[1], 'pending') or '0'
+        redis.call('hdel', KEYS[1], 'pending')
+        return pending
+        """;
+
+    private static final String RESTORE_PENDING_SCRIPT = """
+        redis.call('hincrbyfloat', KEYS[1], 'pending', ARGV[1])
+        return '1'
+        """;
+
+    private final SysUserMapper sysUserMapper;
+
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(
+        new BasicThreadFactory.Builder().namingPattern("balance-flush-%d").daemon(true).build());
+
+    @PostConstruct
+    public void init() {
+        flushScheduler.scheduleWithFixedDelay(this::flush, 5, 5, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        Threads.shutdownAndAwaitTermination(flushScheduler);
+        flush();
+    }
+
+    @Override
+    public Double getBalance(Long userId) {
+        String balance = RedisUtils.getClient().<String, String>getMap(ledgerKey(userId), StringCodec.INSTANCE).get("balance");
+        if (balance == null) {
+            if (!load(userId)) {
+                return null;
+            }
+            balance = RedisUtils.getClient().<String, String>getMap(ledgerKey(userId), StringCodec.INSTANCE).get("balance");
+        }
+        return balance == null ? null : Double.valueOf(balance);
+    }
+
+    @Override
+    public String reserve(Long userId, double amount) {
+        long now = System.currentTimeMillis();
+        String reservationId = IdUtil.fastSimpleUUID();
+        String result = evalLoaded(RESERVE_SCRIPT, userId,
+            num(amount), reservationId, now, now + RESERVATION_TIMEOUT, LEDGER_TTL);
+        if ("-1".equals(result)) {
+            throw new ServiceException("余额不足, 请充值");
+        }
+        return result;
+    }
+
+    @Override
+    public void settle(Long userId, String reservationId, double actual) {
+        eval(SETTLE_SCRIPT, userId, reservationId == null ? "" : reservationId, num(actual), LEDGER_TTL);
+        if (actual > 0) {
+            markDirty(userId);
+        }
+    }
+
+    @Override
+    public void refund(Long userId, String reservationId) {
+        if (reservationId != null) {
+            settle(userId, reservationId, 0);
+        }
+    }
+
+    @Override
+    public void debit(Long userId, double amount) {
+        String result = evalLoaded(DEBIT_SCRIPT, userId, num(amount), LEDGER_TTL);
+        if ("-1".equals(result)) {
+            throw new ServiceException("余额不足, 请充值");
+        }
+        if (result != null && amount > 0) {
+            markDirty(userId);
+        }
+    }
+
+    @Override
+    public void credit(Long userId, double amount) {
+        RLock lock = lock(userId);
+        try {
+            // 相对更新 不覆盖并发回写的扣费
+            if (sysUserMapper.addBalance(userId, amount) < 1) {
+                throw new ServiceException("用户不存在");
+            }
+            // 余额按 数据库余额 - 未回写扣费 - 预授权 重新加载
+            RedisUtils.getClient().getMap(ledgerKey(userId), StringCodec.INSTANCE).fastRemove("balance");
+        } finally {
+            lock.unlock();
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // 提交前加载的是旧余额 提交后再清除一次
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(userId);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void invalidate(Long userId) {
+        RLock lock = lock(userId);
+        try {
+            RedisUtils.getClient().getMap(ledgerKey(userId), StringCodec.INSTANCE).fastRemove("balance");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        RSet<String> dirty = RedisUtils.getClient().getSet(DIRTY_KEY, StringCodec.INSTANCE);
+        Set<String> failed = new HashSet<>();
+        try {
+            Set<String> userIds;
+            while (!(userIds = dirty.removeRandom(FLUSH_BATCH_SIZE)).isEmpty()) {
+                for (String userId : userIds) {
+                    if (!flushUser(Long.valueOf(userId))) {
+                        failed.add(userId);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("余额回写失败: {}", e.getMessage(), e);
+        } finally {
+            // 本轮结束后再标记 避免数据库不可用时在同一轮中反复重试
+            if (!failed.isEmpty()) {
+                dirty.addAll(failed);
+            }
+        }
+    }
+
+    /**
+     * @return 回写是否成功 失败时待回写金额已退回
+     */
+    private boolean flushUser(Long userId) {
+        RLock lock = lock(userId);
+        try {
+            double pending = Double.parseDouble(eval(TAKE_PENDING_SCRIPT, userId));
+            if (pending <= 0) {
+                return true;
+            }
+            try {
+                sysUserMapper.deductBalance(userId, pending);
+                return true;
+            } catch (Exception e) {
+                // 退回待回写金额 下次重试
+                eval(RESTORE_PENDING_SCRIPT, userId, num(pending));
+                log.error("用户{}余额回写失败: {}", userId, e.getMessage());
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 从数据库加载余额 与回写互斥 避免读到回写中间状态
+     *
+     * @return 用户是否存在
+     */
+    private boolean load(Long userId) {
+        RLock lock = lock(userId);
+        try {
+            SysUser sysUser = sysUserMapper.selectById(userId);
+            if (sysUser == null) {
+                return false;
+            }
+            eval(LOAD_SCRIPT, userId, num(sysUser.getUserBalance()), LEDGER_TTL);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 执行需要余额已加载的脚本 未加载时先加载再重试
+     *
+     * @return 脚本结果 用户不存在时返回null
+     */
+    private String evalLoaded(String script, Long userId, Object... args) {
+        for (int i = 0; i < 3; i++) {
+            String result = eval(script, userId, args);
+            if (result != null) {
+                return result;
+            }
+            if (!load(userId)) {
+                return null;
+            }
+        }
+        throw new ServiceException("系统繁忙, 请稍后重试");
+    }
+
+    private String eval(String script, Long userId, Object... args) {
+        return RedisUtils.getClient().getScript(StringCodec.INSTANCE)
+            .eval(RScript.Mode.READ_WRITE, script, RScript.ReturnType.VALUE, keys(userId), args);
+    }
+
+    private void markDirty(Long userId) {
+        RedisUtils.getClient().getSet(DIRTY_KEY, StringCodec.INSTANCE).add(userId.toString());
+    }
+
+    private RLock lock(Long userId) {
+        RLock lock = RedisUtils.getClient().getLock(LEDGER_KEY + "lock:" + userId);
+        lock.lock(10, TimeUnit.SECONDS);
+        return lock;
+    }
+
+    /**
+     * 同一用户的key使用相同的hash tag 集群模式下位于同一个slot
+     */
+    private static List<Object> keys(Long userId) {
+        String key = ledgerKey(userId);
+        return List.of(key, key + ":rsv", key + ":rsvexp");
+    }
+
+    private static String ledgerKey(Long userId) {
+        return LEDGER_KEY + "{" + userId + "}";
+    }
+
+    private static String num(double value) {
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+}
@@ -1,26 +1,37 @@
 package org.ruoyi.system.service.impl;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.ruoyi.common.core.constant.GlobalConstants;
 import org.ruoyi.common.core.event.ConfigChangeEvent;
 import org.ruoyi.common.core.service.ConfigService;
 import org.ruoyi.common.core.utils.MapstructUtils;
 import org.ruoyi.common.core.utils.StringUtils;
 import org.ruoyi.common.mybatis.core.page.PageQuery;
 import org.ruoyi.common.mybatis.core.page.TableDataInfo;
+import org.ruoyi.common.redis.utils.RedisUtils;
 import org.ruoyi.system.domain.ChatConfig;
 import org.ruoyi.system.domain.bo.ChatConfigBo;
 import org.ruoyi.system.domain.vo.ChatConfigVo;
 import org.ruoyi.system.mapper.ChatConfigMapper;
 import org.ruoyi.system.service.IChatConfigService;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 对话配置信息
@@ -38,6 +49,25 @@ public class ChatConfigServiceImpl implements IChatConfigService, ConfigService
 
     private final ApplicationEventPublisher eventPublisher;
 
+    /**
+     * 配置刷新通道 (集群内所有节点同时清理本地配置快照)
+     */
+    private static final String CONFIG_REFRESH_TOPIC = GlobalConstants.GLOBAL_REDIS_KEY + "chat_config_refresh";
+
+    /**
+     * 本地配置快照 key为配置类型 value为该类型下 配置key -> 配置值
+     */
+    private final LRUCache<String, Map<String, String>> configSnapshot = CacheUtil.newLRUCache(64);
+
+    /**
+     * 快照清理次数 加载期间发生清理时不缓存加载结果
+     */
+    private final AtomicLong clears = new AtomicLong();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
     /**
      * 查询对话配置信息
 
@@ -85,6 +115,7 @@ public class ChatConfigServiceImpl implements IChatConfigService, ConfigService
         boolean flag = baseMapper.insert(add) > 0;
         if (flag) {
             bo.setId(add.getId());
+            eventPublisher.publishEvent(new ConfigChangeEvent(this));
         }
         return flag;
     }
@@ -97,9 +128,10 @@ public class ChatConfigServiceImpl implements IChatConfigService, ConfigService
     public Boolean updateByBo(ChatConfigBo bo) {
         ChatConfig update = MapstructUtils.convert(bo, ChatConfig.class);
         validEntityBeforeSave(update);
-        // 更新配置信息(类型区分)
+        boolean flag = baseMapper.updateById(update) > 0;
+        // 更新配置信息(类型区分) 需在入库之后发布 监听器读取的才是新值
         eventPublisher.publishEvent(new ConfigChangeEvent(this));
-        return baseMapper.updateById(update) > 0;
+        return flag;
     }
 
     /**
@@ -118,7 +150,11 @@ public class ChatConfigServiceImpl implements IChatConfigService, ConfigService
         if(isValid){
             //TODO 做一些业务上的校验,判断是否需要校验
         }
-        return baseMapper.deleteBatchIds(ids) > 0;
+        boolean flag = baseMapper.deleteBatchIds(ids) > 0;
+        if (flag) {
+            eventPublisher.publishEvent(new ConfigChangeEvent(this));
+        }
+        return flag;
     }
 
     /**
@@ -130,16 +166,70 @@ public class ChatConfigServiceImpl implements IChatConfigService, ConfigService
      */
     @Override
     public String getConfigValue(String category,String configKey) {
-        ChatConfigBo bo = new ChatConfigBo();
-        bo.setCategory(category);
-        bo.setConfigName(configKey);
-        LambdaQueryWrapper<ChatConfig> lqw = buildQueryWrapper(bo);
-        ChatConfigVo chatConfigVo = baseMapper.selectVoOne(lqw);
-        if(chatConfigVo != null){
-            return chatConfigVo.getConfigValue();
-        }else {
-            return "";
+        Map<String, String> snapshot = configSnapshot.get(category);
+        if (snapshot == null) {
+            cacheMisses.increment();
+            long generation = clears.get();
+            snapshot = loadSnapshot(category);
+            if (clears.get() == generation) {
+                configSnapshot.put(category, snapshot);
+            }
+        } else {
+            cacheHits.increment();
+        }
+        return snapshot.containsKey(configKey) ? snapshot.get(configKey) : "";
+    }
+
+    /**
+     * 加载某个配置类型下的全部配置
+     *
+     * @param category 配置类型
+     * @return 配置key -> 配置值
+     */
+    private Map<String, String> loadSnapshot(String category) {
+        List<ChatConfigVo> configList = baseMapper.selectVoList(Wrappers.<ChatConfig>lambdaQuery()
+            .eq(ChatConfig::getCategory, category));
+        Map<String, String> snapshot = new HashMap<>(configList.size());
+        for (ChatConfigVo config : configList) {
+            snapshot.put(config.getConfigName(), config.getConfigValue());
         }
+        return snapshot;
+    }
+
+    /**
+     * 配置变更时清理本地快照 并通知其他节点
+     * 优先于其他配置监听器执行 保证其读取到的是最新配置
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener
+    public void onConfigChange(ConfigChangeEvent event) {
+        clearSnapshot();
+        RedisUtils.publish(CONFIG_REFRESH_TOPIC, String.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * 订阅配置刷新通道
+     */
+    @Override
+    public void init() {
+        RedisUtils.subscribe(CONFIG_REFRESH_TOPIC, String.class, msg -> clearSnapshot());
+    }
+
+    private void clearSnapshot() {
+        clears.incrementAndGet();
+        configSnapshot.clear();
+    }
+
+    /**
+     * 本地配置缓存命中统计
+     */
+    @Override
+    public Map<String, Long> getCacheStats() {
+        Map<String, Long> stats = new HashMap<>(4);
+        stats.put("hits", cacheHits.sum());
+        stats.put("misses", cacheMisses.sum());
+        stats.put("size", (long) configSnapshot.size());
+        return stats;
     }
 
     /**
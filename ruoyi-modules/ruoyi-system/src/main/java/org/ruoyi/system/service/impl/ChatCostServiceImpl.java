@@ -1,25 +1,40 @@
 package org.ruoyi.system.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.ruoyi.common.chat.utils.TikTokensUtil;
 import org.ruoyi.common.core.domain.model.LoginUser;
 import org.ruoyi.common.core.exception.ServiceException;
 import org.ruoyi.common.core.exception.base.BaseException;
+import org.ruoyi.common.core.utils.MapstructUtils;
+import org.ruoyi.common.core.utils.Threads;
 import org.ruoyi.common.satoken.utils.LoginHelper;
+import org.ruoyi.system.domain.ChatMessage;
 import org.ruoyi.system.domain.ChatToken;
 import org.ruoyi.system.domain.SysUser;
 import org.ruoyi.system.domain.bo.ChatMessageBo;
 import org.ruoyi.system.domain.bo.SysModelBo;
+import org.ruoyi.system.domain.model.ChatRequestContext;
 import org.ruoyi.system.domain.vo.SysModelVo;
+import org.ruoyi.system.mapper.ChatMessageMapper;
 import org.ruoyi.system.mapper.SysUserMapper;
+import org.ruoyi.system.service.IBalanceLedgerService;
 import org.ruoyi.system.service.IChatCostService;
 import org.ruoyi.system.service.IChatMessageService;
 import org.ruoyi.system.service.IChatTokenService;
 import org.ruoyi.system.service.ISysModelService;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author hncboy
@@ -39,56 +54,272 @@ public class ChatCostServiceImpl implements IChatCostService {
 
     private final ISysModelService sysModelService;
 
+    private final ChatMessageMapper chatMessageMapper;
+
+    private final IBalanceLedgerService balanceLedgerService;
+
+    /**
+     * 单次批量结算的最大账单数
+     */
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    /**
+     * 队列满时提交线程的最长等待时间(毫秒)
+     */
+    private static final long SUBMIT_TIMEOUT = 1000;
+
+    /**
+     * 入库失败后暂存的最大消息数
+     */
+    private static final int MAX_UNSAVED = 10000;
+
+    /**
+     * 待结算账单 有界队列 队列满时等待后交给结算线程 保证账单不丢失
+     */
+    private final BlockingQueue<PendingBill> pendingBills = new LinkedBlockingQueue<>(10000);
+
+    /**
+     * 入库失败的消息记录 只由结算线程读写 下次结算时重试
+     */
+    private final Deque<ChatMessage> unsavedMessages = new ArrayDeque<>();
+
+    /**
+     * 结算线程 单线程保证同一用户的token余数不会并发读写
+     */
+    private final ScheduledExecutorService billingScheduler = Executors.newSingleThreadScheduledExecutor(
+        new BasicThreadFactory.Builder().namingPattern("chat-billing-%d").daemon(true).build());
+
+    @PostConstruct
+    public void init() {
+        billingScheduler.scheduleWithFixedDelay(this::flush, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        Threads.shutdownAndAwaitTermination(billingScheduler);
+        // 结算剩余账单
+        flush();
+    }
+
+    /**
+     * 校验用户余额
+     *
+     * @param userId   用户ID
+     * @param required 所需费用
+     */
+    @Override
+    public void checkBalance(Long userId, double required) {
+        Double balance = balanceLedgerService.getBalance(userId);
+        if (balance != null && (balance <= 0 || balance < required)) {
+            throw new ServiceException("余额不足, 请充值");
+        }
+    }
+
     /**
      * 根据消耗的tokens扣除余额
+     * 加入结算队列 由结算线程批量扣费并保存消息记录
      *
      * @param chatMessageBo
      */
+    @Override
     public void deductToken(ChatMessageBo chatMessageBo) {
-        // 计算总token数
-        ChatToken chatToken = chatTokenService.queryByUserId(chatMessageBo.getUserId(), chatMessageBo.getModelName());
+        submit(new PendingBill(chatMessageBo, null));
+    }
+
+    /**
+     * 预授权本次对话的预估费用
+     *
+     * @param userId        用户ID
+     * @param estimatedCost 预估费用
+     * @return 预授权ID
+     */
+    @Override
+    public String reserve(Long userId, double estimatedCost) {
+        return balanceLedgerService.reserve(userId, estimatedCost);
+    }
+
+    /**
+     * 取消预授权
+     *
+     * @param context 请求上下文
+     */
+    @Override
+    public void release(ChatRequestContext context) {
+        if (context.getReservationId() == null) {
+            return;
+        }
+        try {
+            balanceLedgerService.refund(context.getUserId(), context.getReservationId());
+        } catch (Exception e) {
+            // 未退回的预授权超时后自动退回
+            log.error("预授权退回失败 userId={}: {}", context.getUserId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 异步结算一次流式回答
+     *
+     * @param context          请求上下文
+     * @param content          回答内容
+     * @param completionTokens 回答的token数
+     */
+    @Override
+    public void settleAsync(ChatRequestContext context, String content, int completionTokens) {
+        ChatMessageBo chatMessageBo = new ChatMessageBo();
+        chatMessageBo.setUserId(context.getUserId());
+        chatMessageBo.setModelName(context.getModelName());
+        chatMessageBo.setContent(content);
+        if (ChatRequestContext.BILLING_TIMES.equals(context.getBillingMode())) {
+            chatMessageBo.setDeductCost(0d);
+            chatMessageBo.setRemark("提问时扣费");
+        } else {
+            chatMessageBo.setTotalTokens(completionTokens);
+        }
+        submit(new PendingBill(chatMessageBo, context.getReservationId()));
+    }
+
+    private void submit(PendingBill bill) {
+        try {
+            if (pendingBills.offer(bill, SUBMIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 结算积压 交给结算线程执行 不在对话线程中读写token余数和数据库
+        try {
+            billingScheduler.execute(() -> settle(Collections.singletonList(bill)));
+        } catch (RejectedExecutionException e) {
+            // 已停机 结算线程不再运行
+            settle(Collections.singletonList(bill));
+        }
+    }
+
+    /**
+     * 取出队列中的账单 每批最多FLUSH_BATCH_SIZE条
+     */
+    private void flush() {
+        if (!unsavedMessages.isEmpty()) {
+            List<ChatMessage> retry = new ArrayList<>(unsavedMessages);
+            unsavedMessages.clear();
+            saveMessages(retry);
+        }
+        List<PendingBill> bills = new ArrayList<>(FLUSH_BATCH_SIZE);
+        while (pendingBills.drainTo(bills, FLUSH_BATCH_SIZE) > 0) {
+            try {
+                settle(bills);
+            } catch (Exception e) {
+                log.error("对话批量结算失败 count={}: {}", bills.size(), e.getMessage(), e);
+            }
+            bills.clear();
+        }
+    }
+
+    /**
+     * 批量结算 按(用户, 模型)汇总后扣费 消息记录批量入库
+     *
+     * @param bills 待结算账单
+     */
+    private void settle(List<PendingBill> bills) {
+        Map<String, List<PendingBill>> tokenBills = new LinkedHashMap<>();
+        List<ChatMessageBo> messages = new ArrayList<>(bills.size());
+        for (PendingBill bill : bills) {
+            ChatMessageBo message = bill.message();
+            messages.add(message);
+            if (message.getDeductCost() != null) {
+                // 已在提问时扣费
+                continue;
+            }
+            if (message.getTotalTokens() == null) {
+                message.setTotalTokens(TikTokensUtil.tokens(message.getModelName(), message.getContent()));
+            }
+            tokenBills.computeIfAbsent(message.getUserId() + "|" + message.getModelName(), k -> new ArrayList<>()).add(bill);
+        }
+        Map<String, Double> modelPrices = new HashMap<>();
+        for (List<PendingBill> group : tokenBills.values()) {
+            try {
+                settleTokens(group, modelPrices);
+            } catch (Exception e) {
+                ChatMessageBo first = group.get(0).message();
+                log.error("token结算失败 userId={} model={}: {}", first.getUserId(), first.getModelName(), e.getMessage());
+                // 退回未结算的预授权 已结算的预授权再次退回不会改变余额
+                for (PendingBill bill : group) {
+                    try {
+                        balanceLedgerService.refund(first.getUserId(), bill.reservationId());
+                    } catch (Exception ex) {
+                        // 未退回的预授权超时后自动退回
+                        log.error("预授权退回失败 userId={}: {}", first.getUserId(), ex.getMessage());
+                    }
+                }
+            }
+        }
+        saveMessages(MapstructUtils.convert(messages, ChatMessage.class));
+    }
+
+    /**
+     * 保存消息记录 失败时暂存 下次结算时重试
+     */
+    private void saveMessages(List<ChatMessage> messages) {
+        try {
+            chatMessageMapper.insertBatch(messages);
+        } catch (Exception e) {
+            log.error("消息记录保存失败 count={}: {}", messages.size(), e.getMessage());
+            unsavedMessages.addAll(messages);
+            int dropped = 0;
+            while (unsavedMessages.size() > MAX_UNSAVED) {
+                unsavedMessages.pollFirst();
+                dropped++;
+            }
+            if (dropped > 0) {
+                log.error("暂存的消息记录过多, 丢弃{}条", dropped);
+            }
+        }
+    }
+
+    /**
+     * 结算同一用户同一模型的账单 每满1000token扣费一次 余数计入下一次
+     */
+    private void settleTokens(List<PendingBill> group, Map<String, Double> modelPrices) {
+        Long userId = group.get(0).message().getUserId();
+        String modelName = group.get(0).message().getModelName();
+        ChatToken chatToken = chatTokenService.queryByUserId(userId, modelName);
         if (chatToken == null) {
             chatToken = new ChatToken();
             chatToken.setToken(0);
         }
-        int totalTokens = chatToken.getToken() + chatMessageBo.getTotalTokens();
-        // 如果总token数大于等于1000,进行费用扣除
-        if (totalTokens >= 1000) {
-            // 计算费用
-            int token1 = totalTokens / 1000;
-            int token2 = totalTokens % 1000;
-            if (token2 > 0) {
-                // 保存剩余tokens
-                chatToken.setModelName(chatMessageBo.getModelName());
-                chatToken.setUserId(chatMessageBo.getUserId());
-                chatToken.setToken(token2);
-                chatTokenService.editToken(chatToken);
+        int remainTokens = chatToken.getToken();
+        for (PendingBill bill : group) {
+            ChatMessageBo message = bill.message();
+            int totalTokens = remainTokens + message.getTotalTokens();
+            remainTokens = totalTokens % 1000;
+            if (totalTokens >= 1000) {
+                message.setDeductCost(totalTokens / 1000 * modelPrices.computeIfAbsent(modelName, this::getModelPrice));
             } else {
-                chatTokenService.resetToken(chatMessageBo.getUserId(), chatMessageBo.getModelName());
+                message.setDeductCost(0d);
+                message.setRemark("不满1kToken,计入下一次!");
             }
-            // 扣除用户余额
-            SysModelBo sysModelBo = new SysModelBo();
-            sysModelBo.setModelName(chatMessageBo.getModelName());
-            List<SysModelVo> sysModelList = sysModelService.queryList(sysModelBo);
-            double modelPrice = sysModelList.get(0).getModelPrice();
-            Double numberCost = token1 * modelPrice;
-            deductUserBalance(chatMessageBo.getUserId(), numberCost);
-            chatMessageBo.setDeductCost(numberCost);
-        } else {
-            // 扣除用户余额
-            deductUserBalance(chatMessageBo.getUserId(), 0.0);
-            chatMessageBo.setDeductCost(0d);
-            chatMessageBo.setRemark("不满1kToken,计入下一次!");
-            chatToken.setToken(totalTokens);
-            chatToken.setModelName(chatMessageBo.getModelName());
-            chatToken.setUserId(chatMessageBo.getUserId());
-            chatTokenService.editToken(chatToken);
         }
-        // 保存消息记录
-        chatMessageService.insertByBo(chatMessageBo);
+        // 保存剩余tokens
+        chatToken.setModelName(modelName);
+        chatToken.setUserId(userId);
+        chatToken.setToken(remainTokens);
+        chatTokenService.editToken(chatToken);
+        // 释放预授权并扣除实际费用
+        for (PendingBill bill : group) {
+            balanceLedgerService.settle(userId, bill.reservationId(), bill.message().getDeductCost());
+        }
     }
 
-
+    private double getModelPrice(String modelName) {
+        SysModelBo sysModelBo = new SysModelBo();
+        sysModelBo.setModelName(modelName);
+        List<SysModelVo> sysModelList = sysModelService.queryList(sysModelBo);
+        if (sysModelList.isEmpty()) {
+            log.warn("模型{}未配置价格, 本次不扣费", modelName);
+            return 0d;
+        }
+        return sysModelList.get(0).getModelPrice();
+    }
 
     /**
      * 从用户余额中扣除费用
@@ -98,19 +329,7 @@ public class ChatCostServiceImpl implements IChatCostService {
      */
     @Override
     public void deductUserBalance(Long userId, Double numberCost) {
-        SysUser sysUser = sysUserMapper.selectById(userId);
-        if (sysUser == null) {
-            return;
-        }
-
-        Double userBalance = sysUser.getUserBalance();
-        if (userBalance < numberCost || userBalance == 0) {
-            throw new ServiceException("余额不足, 请充值");
-        }
-        sysUserMapper.update(null,
-            new LambdaUpdateWrapper<SysUser>()
-                .set(SysUser::getUserBalance, Math.max(userBalance - numberCost, 0))
-                .eq(SysUser::getUserId, userId));
+        balanceLedgerService.debit(userId, numberCost);
     }
 
 
@@ -158,4 +377,13 @@ public class ChatCostServiceImpl implements IChatCostService {
         }
         return loginUser.getUserId();
     }
+
+    /**
+     * 待结算账单
+     *
+     * @param message       消息记录
+     * @param reservationId 预授权ID
+     */
+    private record PendingBill(ChatMessageBo message, String reservationId) {
+    }
 }
@@ -1,6 +1,5 @@
 package org.ruoyi.system.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.collection.CollectionUtil;
 import org.ruoyi.common.core.utils.MapstructUtils;
 import org.ruoyi.common.core.utils.StringUtils;
@@ -11,9 +10,8 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import org.ruoyi.common.satoken.utils.LoginHelper;
 import org.ruoyi.system.domain.SysUser;
-import org.ruoyi.system.domain.bo.SysUserBo;
-import org.ruoyi.system.domain.vo.SysUserVo;
 import org.ruoyi.system.mapper.SysUserMapper;
+import org.ruoyi.system.service.IBalanceLedgerService;
 import org.ruoyi.system.service.ISysUserService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -44,6 +42,8 @@ public class ChatVoucherServiceImpl implements IChatVoucherService {
 
     private final SysUserMapper sysUserMapper;
 
+    private final IBalanceLedgerService balanceLedgerService;
+
     /**
      * 查询用户兑换记录
      */
@@ -158,17 +158,15 @@ public class ChatVoucherServiceImpl implements IChatVoucherService {
             if("2".equals(chatVoucherVo.getStatus())){
                 return false;
             }
-            SysUserVo sysUserVo = sysUserService.selectUserById(LoginHelper.getLoginUser().getUserId());
+            Long userId = LoginHelper.getLoginUser().getUserId();
+            Double balance = balanceLedgerService.getBalance(userId);
             // 更新卡密记录
-            chatVoucherVo.setUserId(LoginHelper.getLoginUser().getUserId());
+            chatVoucherVo.setUserId(userId);
             chatVoucherVo.setStatus("2");
-            chatVoucherVo.setBalanceBefore(sysUserVo.getUserBalance());
-            chatVoucherVo.setBalanceAfter(sysUserVo.getUserBalance()+chatVoucherVo.getAmount());
+            chatVoucherVo.setBalanceBefore(balance);
+            chatVoucherVo.setBalanceAfter(balance + chatVoucherVo.getAmount());
             // 添加用户余额
-            sysUserVo.setUserBalance(sysUserVo.getUserBalance() + chatVoucherVo.getAmount());
-            SysUserBo user = new SysUserBo();
-            BeanUtil.copyProperties(sysUserVo,user);
-            sysUserService.updateUser(user);
+            balanceLedgerService.credit(userId, chatVoucherVo.getAmount());
 
             ChatVoucher update = MapstructUtils.convert(chatVoucherVo, ChatVoucher.class);
             baseMapper.updateById(update);
@@ -0,0 +1,85 @@
+package org.ruoyi.system.service.impl;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.date.DateUnit;
+import cn.hutool.crypto.digest.DigestUtil;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.ruoyi.common.core.service.ConfigService;
+import org.ruoyi.common.core.utils.StringUtils;
+import org.ruoyi.common.core.utils.Threads;
+import org.ruoyi.system.moderation.BaiduTextModerator;
+import org.ruoyi.system.moderation.KeywordTextModerator;
+import org.ruoyi.system.service.IModerationService;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内容审核Service业务层处理
+ * <p>
+ * 审核在后台线程执行, 可与模型请求并行; 审核结论按内容摘要缓存, 相同内容不重复调用服务商
+ * 服务商读取配置 review/provider: baidu(默认) 百度文本审核, keyword 本地关键词审核
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ModerationServiceImpl implements IModerationService {
+
+    private static final String PROVIDER_KEYWORD = "keyword";
+
+    private final ConfigService configService;
+
+    private final BaiduTextModerator baiduTextModerator;
+
+    private final KeywordTextModerator keywordTextModerator;
+
+    /**
+     * 审核结论缓存 key为内容的sha256
+     */
+    private final LRUCache<String, Boolean> verdictCache = CacheUtil.newLRUCache(4096, DateUnit.HOUR.getMillis());
+
+    private final ExecutorService executor = new ThreadPoolExecutor(2, 8, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(1000),
+        new BasicThreadFactory.Builder().namingPattern("chat-moderation-%d").daemon(true).build(),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+
+    @PreDestroy
+    public void destroy() {
+        Threads.shutdownAndAwaitTermination(executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> review(String text) {
+        if (StringUtils.isBlank(text) || !Boolean.parseBoolean(configService.getConfigValue("review", "enabled"))) {
+            return CompletableFuture.completedFuture(Boolean.TRUE);
+        }
+        // 关键词审核在本地完成 不缓存, 关键词修改后立即生效
+        if (PROVIDER_KEYWORD.equals(configService.getConfigValue("review", "provider"))) {
+            return CompletableFuture.completedFuture(keywordTextModerator.isCompliant(text));
+        }
+        String digest = DigestUtil.sha256Hex(text);
+        Boolean cached = verdictCache.get(digest);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                boolean compliant = baiduTextModerator.isCompliant(text);
+                verdictCache.put(digest, compliant);
+                return compliant;
+            } catch (Exception e) {
+                // 审核服务异常时放行 不缓存结论
+                log.warn("文本审核失败: {}", e.getMessage());
+                return Boolean.TRUE;
+            }
+        }, executor);
+    }
+}
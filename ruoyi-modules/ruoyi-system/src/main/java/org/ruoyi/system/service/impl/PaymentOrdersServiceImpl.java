@@ -24,6 +24,7 @@ import org.ruoyi.system.domain.vo.SysPackagePlanVo;
 import org.ruoyi.system.domain.vo.SysUserVo;
 import org.ruoyi.system.mapper.PaymentOrdersMapper;
 import org.ruoyi.system.mapper.SysUserMapper;
+import org.ruoyi.system.service.IBalanceLedgerService;
 import org.ruoyi.system.service.IPaymentOrdersService;
 import org.ruoyi.system.service.ISysPackagePlanService;
 import org.ruoyi.system.service.ISysUserService;
@@ -54,6 +55,8 @@ public class PaymentOrdersServiceImpl implements IPaymentOrdersService {
 
     private final ISysPackagePlanService planService;
 
+    private final IBalanceLedgerService balanceLedgerService;
+
     /**
      * 查询支付订单
      */
@@ -107,10 +110,12 @@ public class PaymentOrdersServiceImpl implements IPaymentOrdersService {
         updateByBo(paymentOrdersBo);
         // 用户充值费用
         double money = paymentOrdersBo.getAmount().doubleValue();
+        balanceLedgerService.credit(paymentOrdersVo.getUserId(), money);
         SysUserVo sysUserVo = userService.selectUserById(paymentOrdersVo.getUserId());
-        sysUserVo.setUserBalance(sysUserVo.getUserBalance() + money);
         SysUserBo sysUserBo = new SysUserBo();
         BeanUtil.copyProperties(sysUserVo,sysUserBo);
+        // 余额已由账本增加 不再整体写回
+        sysUserBo.setUserBalance(null);
         // 设置为付费用户
         sysUserBo.setUserGrade("1");
         sysUserBo.setUserPlan(sysPackagePlanVo.getId().toString());
@@ -1,22 +1,19 @@
 package org.ruoyi.system.service.impl;
 
 import cn.dev33.satoken.stp.StpUtil;
-import com.alibaba.fastjson.JSONObject;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.zhipu.oapi.ClientV4;
-import com.zhipu.oapi.service.v4.tools.*;
 import io.github.ollama4j.OllamaAPI;
 import io.github.ollama4j.models.chat.OllamaChatMessage;
 import io.github.ollama4j.models.chat.OllamaChatMessageRole;
 import io.github.ollama4j.models.chat.OllamaChatRequestBuilder;
 import io.github.ollama4j.models.chat.OllamaChatRequestModel;
 import io.github.ollama4j.models.generate.OllamaStreamHandler;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.*;
+import okhttp3.ResponseBody;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.ruoyi.common.chat.config.ChatConfig;
-import org.ruoyi.common.chat.config.LocalCache;
 import org.ruoyi.common.chat.domain.request.ChatRequest;
 import org.ruoyi.common.chat.domain.request.Dall3Request;
 import org.ruoyi.common.chat.entity.Tts.TextToSpeech;
@@ -33,16 +30,19 @@ import org.ruoyi.common.chat.plugin.CmdPlugin;
 import org.ruoyi.common.chat.plugin.CmdReq;
 import org.ruoyi.common.chat.plugin.SqlPlugin;
 import org.ruoyi.common.chat.plugin.SqlReq;
+import org.ruoyi.common.chat.utils.ContextWindowManager;
 import org.ruoyi.common.chat.utils.TikTokensUtil;
 import org.ruoyi.common.core.domain.model.LoginUser;
 import org.ruoyi.common.core.exception.base.BaseException;
 import org.ruoyi.common.core.service.ConfigService;
 import org.ruoyi.common.core.utils.StringUtils;
+import org.ruoyi.common.core.utils.Threads;
 import org.ruoyi.common.core.utils.file.FileUtils;
 import org.ruoyi.common.core.utils.file.MimeTypeUtils;
 import org.ruoyi.common.satoken.utils.LoginHelper;
 import org.ruoyi.system.domain.SysModel;
 import org.ruoyi.system.domain.bo.ChatMessageBo;
+import org.ruoyi.system.domain.model.ChatRequestContext;
 import org.ruoyi.system.domain.request.translation.TranslationRequest;
 import org.ruoyi.system.listener.SSEEventSourceListener;
 import org.ruoyi.system.service.*;
@@ -58,16 +58,15 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URLEncoder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
 
 @Service
@@ -88,19 +87,32 @@ public class SseServiceImpl implements ISseService {
 
     private final ConfigService configService;
 
-    static final OkHttpClient HTTP_CLIENT = new OkHttpClient().newBuilder().build();
+    private final IWebSearchService webSearchService;
 
-    private static final String requestIdTemplate = "mycompany-%d";
+    private final IModerationService moderationService;
 
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String REVIEW_REJECTED = "文本不合规,请修改!";
+
+    /**
+     * 请求模型的线程池 插件调用与上下文裁剪不占用搜索回调线程 队列满时拒绝新对话
+     */
+    private final ThreadPoolExecutor dispatchExecutor = new ThreadPoolExecutor(8, 32, 60, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(256),
+        new BasicThreadFactory.Builder().namingPattern("chat-dispatch-%d").daemon(true).build());
+
+    @PreDestroy
+    public void destroy() {
+        Threads.shutdownAndAwaitTermination(dispatchExecutor);
+    }
 
     @Override
     public SseEmitter sseChat(ChatRequest chatRequest, HttpServletRequest request) {
-        openAiStreamClient = chatConfig.getOpenAiStreamClient();
+        // 使用局部变量 避免并发请求互相覆盖客户端
+        OpenAiStreamClient streamClient = chatConfig.getOpenAiStreamClient();
         SseEmitter sseEmitter = new SseEmitter(0L);
-        SSEEventSourceListener openAIEventSourceListener = new SSEEventSourceListener(sseEmitter);
         // 获取对话消息列表
         List<Message> messages = chatRequest.getMessages();
+        ChatRequestContext requestContext = null;
 
         try {
             String chatString = null;
@@ -113,21 +125,25 @@ public class SseServiceImpl implements ISseService {
                 chatString = (String) content;
             }
 
-            String configValue = getKey("enabled");
-            if (Boolean.parseBoolean(configValue)) {
-                // 判断文本是否合规
-                String type = textReview(chatString);
-                // 审核状态 1 代表合法
-                if (!"1".equals(type) && StringUtils.isNotEmpty(type)) {
-                    throw new BaseException("文本不合规,请修改!");
-                }
+            // 内容审核与模型请求并行 审核不通过时取消回答
+            CompletableFuture<Boolean> verdict = moderationService.review(chatString);
+            if (Boolean.FALSE.equals(verdict.getNow(null))) {
+                // 命中缓存的不合规内容直接拒绝
+                throw new BaseException(REVIEW_REJECTED);
             }
 
+            Long userId = null;
+            String billingMode = ChatRequestContext.BILLING_TOKEN;
+            int promptTokens = 0;
+            String reservationId = null;
+            int contextWindow = 0;
+            // 提问费用 审核通过后再扣除
+            Runnable charge = null;
             if (StpUtil.isLogin()) {
-                LocalCache.CACHE.put("userId", getUserId());
+                userId = getUserId();
 
                 ChatMessageBo chatMessageBo = new ChatMessageBo();
-                chatMessageBo.setUserId(getUserId());
+                chatMessageBo.setUserId(userId);
                 chatMessageBo.setModelName(chatRequest.getModel());
                 chatMessageBo.setContent(chatString);
 
@@ -139,102 +155,107 @@ public class SseServiceImpl implements ISseService {
                 SysModel sysModel = sysModelService.selectModelByName(model);
                 if (sysModel == null) {
                     // 如果模型不存在默认使用token扣费方式
-                    processByToken(chatRequest.getModel(), chatString, chatMessageBo);
+                    promptTokens = countTokens(chatRequest.getModel(), chatString, chatMessageBo);
+                    charge = () -> chatService.deductToken(chatMessageBo);
                 } else {
-                    openAiStreamClient = chatConfig.createOpenAiStreamClient(sysModel.getApiHost(), sysModel.getApiKey());
+                    streamClient = chatConfig.getOpenAiStreamClient(sysModel.getApiHost(), sysModel.getApiKey());
+                    if (sysModel.getContextWindow() != null) {
+                        contextWindow = sysModel.getContextWindow();
+                    }
                     // 模型设置默认提示词
                     if (StringUtils.isNotEmpty(sysModel.getSystemPrompt())) {
                         Message sysMessage = Message.builder().content(sysModel.getSystemPrompt()).role(Message.Role.SYSTEM).build();
                         messages.add(sysMessage);
                     }
                     // 计费类型: 1 token扣费 2 次数扣费
-                    if ("2".equals(sysModel.getModelType())) {
-                        processByModelPrice(sysModel, chatMessageBo);
+                    if (ChatRequestContext.BILLING_TIMES.equals(sysModel.getModelType())) {
+                        billingMode = ChatRequestContext.BILLING_TIMES;
+                        chatService.checkBalance(userId, sysModel.getModelPrice());
+                        charge = () -> processByModelPrice(sysModel, chatMessageBo);
                     } else {
-                        processByToken(chatRequest.getModel(), chatString, chatMessageBo);
+                        promptTokens = countTokens(chatRequest.getModel(), chatString, chatMessageBo);
+                        charge = () -> chatService.deductToken(chatMessageBo);
+                        // 预授权回答的预估费用 至少按1k token计
+                        reservationId = chatService.reserve(userId, (promptTokens / 1000 + 1) * sysModel.getModelPrice());
                     }
                 }
             }
-            String zhipuValue = configService.getConfigValue("zhipu", "key");
-            // 添加联网信息
-            if(StringUtils.isNotEmpty(zhipuValue)){
-                ClientV4 client = new ClientV4.Builder(zhipuValue)
-                        .networkConfig(300, 100, 100, 100, TimeUnit.SECONDS)
-                        .connectionPool(new okhttp3.ConnectionPool(8, 1, TimeUnit.SECONDS))
-                        .build();
-
-                SearchChatMessage jsonNodes = new SearchChatMessage();
-                jsonNodes.setRole(Message.Role.USER.getName());
-                jsonNodes.setContent(chatString);
-
-                String requestId = String.format(requestIdTemplate, System.currentTimeMillis());
-                WebSearchParamsRequest chatCompletionRequest = WebSearchParamsRequest.builder()
-                        .model("web-search-pro")
-                        .stream(Boolean.TRUE)
-                        .messages(Collections.singletonList(jsonNodes))
-                        .requestId(requestId)
-                        .build();
-                WebSearchApiResponse webSearchApiResponse = client.webSearchProStreamingInvoke(chatCompletionRequest);
-                List<ChoiceDelta> choices = new ArrayList<>();
-                if (webSearchApiResponse.isSuccess()) {
-                    AtomicBoolean isFirst = new AtomicBoolean(true);
-
-                    AtomicReference<WebSearchPro> lastAccumulator = new AtomicReference<>();
-
-                    webSearchApiResponse.getFlowable().map(result -> result)
-                            .doOnNext(accumulator -> {
-                                {
-                                    if (isFirst.getAndSet(false)) {
-                                        log.info("Response: ");
-                                    }
-                                    ChoiceDelta delta = accumulator.getChoices().get(0).getDelta();
-                                    if (delta != null && delta.getToolCalls() != null) {
-                                        log.info("tool_calls: {}", mapper.writeValueAsString(delta.getToolCalls()));
-                                    }
-                                    choices.add(delta);
-                                }
-                            })
-                            .doOnComplete(() -> System.out.println("Stream completed."))
-                            .doOnError(throwable -> System.err.println("Error: " + throwable))
-                            .blockingSubscribe();
-
-                    WebSearchPro chatMessageAccumulator = lastAccumulator.get();
-
-                    webSearchApiResponse.setFlowable(null);// 打印前置空
-                    webSearchApiResponse.setData(chatMessageAccumulator);
+            requestContext = new ChatRequestContext(userId, chatRequest.getModel(), billingMode, promptTokens, reservationId);
+            // 联网搜索在后台执行 搜索结果返回或超时后再请求模型 不占用请求线程
+            String conversationId = userId == null ? null : userId + ":" + chatRequest.getModel();
+            OpenAiStreamClient client = streamClient;
+            int window = contextWindow;
+            SSEEventSourceListener listener = new SSEEventSourceListener(sseEmitter, requestContext);
+            Runnable promptCharge = charge;
+            verdict.whenComplete((compliant, e) -> {
+                if (Boolean.FALSE.equals(compliant)) {
+                    listener.cancel(REVIEW_REJECTED);
+                    return;
                 }
-
-
-                Message message = Message.builder().role(Message.Role.ASSISTANT).content(choices.get(1).getToolCalls().toString()).build();
-                messages.add(message);
+                // 审核异常时与审核服务一致 放行
+                if (promptCharge != null) {
+                    try {
+                        promptCharge.run();
+                    } catch (Exception ex) {
+                        listener.cancel(ex.getMessage());
+                    }
+                }
+            });
+            webSearchService.search(chatString).thenAcceptAsync(searchResult -> {
+                if (searchResult != null) {
+                    messages.add(Message.builder().role(Message.Role.ASSISTANT).content(searchResult).build());
+                }
+                dispatch(chatRequest, messages, client, listener, conversationId, window);
+            }, dispatchExecutor).exceptionally(e -> {
+                // 搜索失败或线程池已满 结束会话并退回预授权
+                log.warn("对话请求失败: {}", e.getMessage());
+                listener.cancel("系统繁忙, 请稍后重试");
+                return null;
+            });
+        } catch (Exception e) {
+            if (requestContext != null) {
+                chatService.release(requestContext);
             }
+            String message = e.getMessage();
+            sendErrorEvent(sseEmitter, message);
+            return sseEmitter;
+        }
+        return sseEmitter;
+    }
 
+    /**
+     * 请求模型并推送回答
+     */
+    private void dispatch(ChatRequest chatRequest, List<Message> messages, OpenAiStreamClient streamClient,
+                          SSEEventSourceListener listener, String conversationId, int contextWindow) {
+        if (listener.isFinished()) {
+            // 审核已不通过
+            return;
+        }
+        try {
             if ("openCmd".equals(chatRequest.getModel())) {
-                sseEmitter.send(cmdPlugin(messages));
-                sseEmitter.complete();
+                listener.complete(cmdPlugin(streamClient, messages));
             } else if ("sqlPlugin".equals(chatRequest.getModel())) {
-                sseEmitter.send(sqlPlugin(messages));
-                sseEmitter.complete();
+                listener.complete(sqlPlugin(streamClient, messages));
             } else {
+                // 按模型的上下文上限裁剪历史消息
+                List<Message> contextMessages = ContextWindowManager.fit(conversationId, chatRequest.getModel(), messages, contextWindow);
                 ChatCompletion completion = ChatCompletion
                         .builder()
-                        .messages(messages)
+                        .messages(contextMessages)
                         .model(chatRequest.getModel())
                         .temperature(chatRequest.getTemperature())
                         .topP(chatRequest.getTop_p())
                         .stream(true)
                         .build();
-                openAiStreamClient.streamChatCompletion(completion, openAIEventSourceListener);
+                streamClient.streamChatCompletion(completion, listener);
             }
         } catch (Exception e) {
-            String message = e.getMessage();
-            sendErrorEvent(sseEmitter, message);
-            return sseEmitter;
+            listener.cancel(e.getMessage());
         }
-        return sseEmitter;
     }
 
-    public String cmdPlugin(List<Message> messages) {
+    public String cmdPlugin(OpenAiStreamClient streamClient, List<Message> messages) {
         CmdPlugin plugin = new CmdPlugin(CmdReq.class);
         // 插件名称
         plugin.setName("命令行工具");
@@ -253,11 +274,11 @@ public class SseServiceImpl implements ISseService {
         arg.setRequired(true);
         plugin.setArgs(Collections.singletonList(arg));
         //有四个重载方法，都可以使用
-        ChatCompletionResponse response = openAiStreamClient.chatCompletionWithPlugin(messages,"gpt-4o-mini",plugin);
+        ChatCompletionResponse response = streamClient.chatCompletionWithPlugin(messages,"gpt-4o-mini",plugin);
         return response.getChoices().get(0).getMessage().getContent().toString();
     }
 
-    public String sqlPlugin(List<Message> messages) {
+    public String sqlPlugin(OpenAiStreamClient streamClient, List<Message> messages) {
         SqlPlugin plugin = new SqlPlugin(SqlReq.class);
         // 插件名称
         plugin.setName("数据库查询插件");
@@ -276,7 +297,7 @@ public class SseServiceImpl implements ISseService {
         arg.setRequired(true);
         plugin.setArgs(Collections.singletonList(arg));
         //有四个重载方法，都可以使用
-        ChatCompletionResponse response = openAiStreamClient.chatCompletionWithPlugin(messages,"gpt-4o-mini",plugin);
+        ChatCompletionResponse response = streamClient.chatCompletionWithPlugin(messages,"gpt-4o-mini",plugin);
         return response.getChoices().get(0).getMessage().getContent().toString();
     }
 
@@ -288,22 +309,24 @@ public class SseServiceImpl implements ISseService {
      */
     private void processByModelPrice(SysModel model, ChatMessageBo chatMessageBo) {
         double cost = model.getModelPrice();
-        chatService.deductUserBalance(getUserId(), cost);
+        chatService.deductUserBalance(chatMessageBo.getUserId(), cost);
         chatMessageBo.setDeductCost(cost);
         chatMessageService.insertByBo(chatMessageBo);
     }
 
     /**
-     * 根据token扣除余额
+     * 计算提问的token数并校验余额 扣费在审核通过后进行
      *
      * @param modelName     模型名称
      * @param text       消息内容
      * @param chatMessageBo 消息记录
+     * @return 提问消耗的token数
      */
-    private void processByToken(String modelName, String text, ChatMessageBo chatMessageBo) {
+    private int countTokens(String modelName, String text, ChatMessageBo chatMessageBo) {
+        chatService.checkBalance(chatMessageBo.getUserId(), 0);
         int tokens = TikTokensUtil.tokens(modelName, text);
         chatMessageBo.setTotalTokens(tokens);
-        chatService.deductToken(chatMessageBo);
+        return tokens;
     }
 
     /**
@@ -486,57 +509,6 @@ public class SseServiceImpl implements ISseService {
         sseEmitter.complete();
     }
 
-    /**
-     * 文本内容审核
-     *
-     * @param msg
-     * @return String
-     * @Date 2023/5/27
-     **/
-    public String textReview(String msg) {
-        String conclusionType = "";
-        try {
-            String text = URLEncoder.encode(msg);
-            okhttp3.MediaType mediaType = okhttp3.MediaType.parse("application/x-www-form-urlencoded");
-            RequestBody body = RequestBody.create(mediaType, "text=" + text);
-            Request request = new Request.Builder()
-                .url("https://aip.baidubce.com/rest/2.0/solution/v1/text_censor/v2/user_defined?access_token=" + getAccessToken())
-                .method("POST", body)
-                .addHeader("Content-Type", "application/x-www-form-urlencoded")
-                .addHeader("Accept", "application/json")
-                .build();
-            Response response = HTTP_CLIENT.newCall(request).execute();
-            JSONObject jsonObject = JSONObject.parseObject(response.body().string());
-            conclusionType = jsonObject.getString("conclusionType");
-        } catch (IOException e) {
-            log.info("发生错误{}", e.getMessage());
-        }
-        return conclusionType;
-    }
-
-    /**
-     * 从用户的AK，SK生成鉴权签名（Access Token）
-     *
-     * @return 鉴权签名（Access Token）
-     * @throws IOException IO异常
-     */
-    public String getAccessToken() throws IOException {
-        okhttp3.MediaType mediaType = okhttp3.MediaType.parse("application/x-www-form-urlencoded");
-        RequestBody body = RequestBody.create(mediaType, "grant_type=client_credentials&client_id=" + getKey("apiKey")
-            + "&client_secret=" + getKey("secretKey"));
-        Request request = new Request.Builder()
-            .url("https://aip.baidubce.com/oauth/2.0/token")
-            .method("POST", body)
-            .addHeader("Content-Type", "application/x-www-form-urlencoded")
-            .build();
-        Response response = HTTP_CLIENT.newCall(request).execute();
-        return JSONObject.parseObject(response.body().string()).getString("access_token");
-    }
-
-    public String getKey(String key) {
-        return configService.getConfigValue("review", key);
-    }
-
     /**
      * 获取客户端的 IP 地址
      *
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import lombok.RequiredArgsConstructor;
+import org.ruoyi.common.chat.config.ChatConfig;
 import org.ruoyi.common.core.utils.MapstructUtils;
 import org.ruoyi.common.core.utils.StringUtils;
 import org.ruoyi.common.mybatis.core.page.PageQuery;
@@ -30,6 +31,8 @@ public class SysModelServiceImpl implements ISysModelService {
 
     private final SysModelMapper baseMapper;
 
+    private final ChatConfig chatConfig;
+
     /**
      * 查询系统模型
      */
@@ -87,7 +90,10 @@ public class SysModelServiceImpl implements ISysModelService {
     public Boolean updateByBo(SysModelBo bo) {
         SysModel update = MapstructUtils.convert(bo, SysModel.class);
         validEntityBeforeSave(update);
-        return baseMapper.updateById(update) > 0;
+        boolean flag = baseMapper.updateById(update) > 0;
+        // 模型地址或密钥可能变更 清理已缓存的客户端
+        chatConfig.clearOpenAiStreamClients();
+        return flag;
     }
 
     /**
@@ -105,7 +111,9 @@ public class SysModelServiceImpl implements ISysModelService {
         if(isValid){
             //TODO 做一些业务上的校验,判断是否需要校验
         }
-        return baseMapper.deleteBatchIds(ids) > 0;
+        boolean flag = baseMapper.deleteBatchIds(ids) > 0;
+        chatConfig.clearOpenAiStreamClients();
+        return flag;
     }
 
     @Override
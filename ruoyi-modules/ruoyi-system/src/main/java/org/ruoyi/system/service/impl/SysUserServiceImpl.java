@@ -29,6 +29,7 @@ import org.ruoyi.system.domain.vo.SysPostVo;
 import org.ruoyi.system.domain.vo.SysRoleVo;
 import org.ruoyi.system.domain.vo.SysUserVo;
 import org.ruoyi.system.mapper.*;
+import org.ruoyi.system.service.IBalanceLedgerService;
 import org.ruoyi.system.service.ISysUserService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -55,6 +56,7 @@ public class SysUserServiceImpl implements ISysUserService, UserService {
     private final SysPostMapper postMapper;
     private final SysUserRoleMapper userRoleMapper;
     private final SysUserPostMapper userPostMapper;
+    private final IBalanceLedgerService balanceLedgerService;
 
     @Override
     public TableDataInfo<SysUserVo> selectPageUserList(SysUserBo user, PageQuery pageQuery) {
@@ -334,6 +336,10 @@ public class SysUserServiceImpl implements ISysUserService, UserService {
         if (flag < 1) {
             throw new ServiceException("修改用户" + user.getUserName() + "信息失败");
         }
+        if (user.getUserBalance() != null) {
+            // 余额被修改 重新从数据库加载
+            balanceLedgerService.invalidate(user.getUserId());
+        }
         return flag;
     }
 
@@ -0,0 +1,150 @@
+package org.ruoyi.system.service.impl;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.date.DateUnit;
+import com.zhipu.oapi.ClientV4;
+import com.zhipu.oapi.service.v4.tools.*;
+import io.reactivex.schedulers.Schedulers;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import org.ruoyi.common.core.service.ConfigService;
+import org.ruoyi.common.core.utils.StringUtils;
+import org.ruoyi.system.service.IWebSearchService;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 联网搜索Service业务层处理
+ * <p>
+ * 共享同一个搜索客户端, 搜索在后台线程执行, 超过期限未返回时放弃本次搜索结果
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WebSearchServiceImpl implements IWebSearchService {
+
+    /**
+     * 搜索期限 超时后对话不再等待搜索结果
+     */
+    private static final long SEARCH_TIMEOUT_SECONDS = 8;
+
+    private static final String REQUEST_ID_TEMPLATE = "mycompany-%d";
+
+    private final ConfigService configService;
+
+    /**
+     * 搜索结果缓存 key为归一化后的搜索内容
+     */
+    private final LRUCache<String, String> resultCache = CacheUtil.newLRUCache(1024, 5 * DateUnit.MINUTE.getMillis());
+
+    private final ConnectionPool connectionPool = new ConnectionPool(8, 5, TimeUnit.MINUTES);
+
+    private volatile ClientV4 client;
+
+    private volatile String clientKey;
+
+    @Override
+    public CompletableFuture<String> search(String query) {
+        String apiKey = configService.getConfigValue("zhipu", "key");
+        if (StringUtils.isEmpty(apiKey) || StringUtils.isBlank(query)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String cacheKey = normalize(query);
+        String cached = resultCache.get(cacheKey);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        // 发起请求也可能阻塞 整个搜索都放到后台线程
+        Schedulers.io().scheduleDirect(() -> doSearch(apiKey, query, cacheKey, future));
+        // 超时放弃搜索结果
+        return future.completeOnTimeout(null, SEARCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void doSearch(String apiKey, String query, String cacheKey, CompletableFuture<String> future) {
+        SearchChatMessage searchMessage = new SearchChatMessage();
+        searchMessage.setRole("user");
+        searchMessage.setContent(query);
+        WebSearchParamsRequest request = WebSearchParamsRequest.builder()
+            .model("web-search-pro")
+            .stream(Boolean.TRUE)
+            .messages(Collections.singletonList(searchMessage))
+            .requestId(String.format(REQUEST_ID_TEMPLATE, System.currentTimeMillis()))
+            .build();
+        try {
+            WebSearchApiResponse response = getClient(apiKey).webSearchProStreamingInvoke(request);
+            if (future.isDone() || !response.isSuccess() || response.getFlowable() == null) {
+                future.complete(null);
+                return;
+            }
+            StringBuilder result = new StringBuilder();
+            response.getFlowable()
+                // 超时后取消上游请求
+                .doOnSubscribe(subscription -> future.whenComplete((r, e) -> subscription.cancel()))
+                .subscribe(chunk -> appendSearchResult(chunk, result),
+                    e -> {
+                        log.warn("联网搜索失败: {}", e.getMessage());
+                        future.complete(null);
+                    },
+                    () -> {
+                        String text = result.isEmpty() ? null : result.toString();
+                        if (text != null) {
+                            resultCache.put(cacheKey, text);
+                        }
+                        future.complete(text);
+                    });
+        } catch (Exception e) {
+            log.warn("联网搜索失败: {}", e.getMessage());
+            future.complete(null);
+        }
+    }
+
+    /**
+     * 收集搜索结果类型的工具调用
+     */
+    private static void appendSearchResult(WebSearchPro chunk, StringBuilder result) {
+        if (chunk.getChoices() == null || chunk.getChoices().isEmpty()) {
+            return;
+        }
+        ChoiceDelta delta = chunk.getChoices().get(0).getDelta();
+        if (delta == null || delta.getToolCalls() == null) {
+            return;
+        }
+        List<ChoiceDeltaToolCall> toolCalls = delta.getToolCalls();
+        if (toolCalls.stream().anyMatch(toolCall -> "search_result".equals(toolCall.getType()))) {
+            result.append(toolCalls);
+        }
+    }
+
+    /**
+     * 客户端在密钥变更时重建
+     */
+    private ClientV4 getClient(String apiKey) {
+        ClientV4 current = client;
+        if (current != null && apiKey.equals(clientKey)) {
+            return current;
+        }
+        synchronized (this) {
+            if (client == null || !apiKey.equals(clientKey)) {
+                client = new ClientV4.Builder(apiKey)
+                    .networkConfig(30, 10, 30, 10, TimeUnit.SECONDS)
+                    .connectionPool(connectionPool)
+                    .build();
+                clientKey = apiKey;
+            }
+            return client;
+        }
+    }
+
+    private static String normalize(String query) {
+        return query.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
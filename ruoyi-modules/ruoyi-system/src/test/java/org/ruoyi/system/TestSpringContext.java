@@ -0,0 +1,44 @@
+package org.ruoyi.system;
+
+import io.github.linpeilie.mapstruct.MapstructAutoConfiguration;
+import org.ruoyi.common.core.utils.SpringUtils;
+import org.ruoyi.system.domain.bo.ChatMessageBoToChatMessageMapperImpl;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * 单元测试使用的最小Spring容器
+ * <p>
+ * RedisUtils、MapstructUtils 在类加载时从 {@link SpringUtils} 取得依赖, 同一JVM中的测试共用一个容器;
+ * 只注册对象转换, 其他依赖由测试按需通过 {@link #registerSingleton} 补充
+ */
+public final class TestSpringContext {
+
+    private static AnnotationConfigApplicationContext context;
+
+    private TestSpringContext() {
+    }
+
+    /**
+     * 初始化容器 重复调用时直接返回
+     */
+    public static synchronized void init() {
+        if (context == null) {
+            context = new AnnotationConfigApplicationContext();
+            context.register(SpringUtils.class, MapstructAutoConfiguration.class, ChatMessageBoToChatMessageMapperImpl.class);
+            context.refresh();
+        }
+    }
+
+    /**
+     * 注册单例 已存在同名对象时不覆盖
+     *
+     * @param name 名称
+     * @param bean 对象
+     */
+    public static synchronized void registerSingleton(String name, Object bean) {
+        init();
+        if (!context.getBeanFactory().containsSingleton(name)) {
+            context.getBeanFactory().registerSingleton(name, bean);
+        }
+    }
+}
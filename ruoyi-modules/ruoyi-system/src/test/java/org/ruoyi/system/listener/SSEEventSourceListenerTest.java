@@ -0,0 +1,99 @@
+package org.ruoyi.system.listener;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 流式增量内容解析测试
+ */
+@Tag("local")
+@Tag("dev")
+@Tag("prod")
+@DisplayName("SSE增量内容解析")
+class SSEEventSourceListenerTest {
+
+    @Test
+    @DisplayName("读取choices[0].delta.content")
+    void readContent() throws IOException {
+        String data = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1,\"model\":\"gpt-4o\","
+            + "\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"你好\\n\\\"世界\\\"\"},\"finish_reason\":null}]}";
+        assertEquals("你好\n\"世界\"", SSEEventSourceListener.readDeltaContent(data));
+    }
+
+    @Test
+    @DisplayName("空字符串内容")
+    void readEmptyContent() throws IOException {
+        assertEquals("", SSEEventSourceListener.readDeltaContent("{\"choices\":[{\"delta\":{\"content\":\"\"}}]}"));
+    }
+
+    @Test
+    @DisplayName("choices之前的嵌套对象和数组被跳过")
+    void skipNestedObjectsBeforeChoices() throws IOException {
+        String data = "{\"usage\":{\"prompt_tokens\":1,\"detail\":{\"content\":\"usage\",\"choices\":[{\"delta\":{\"content\":\"x\"}}]}},"
+            + "\"system_fingerprint\":[\"content\",{\"delta\":{\"content\":\"y\"}}],"
+            + "\"choices\":[{\"logprobs\":{\"content\":[{\"token\":\"a\"}]},\"message\":{\"content\":\"m\"},"
+            + "\"delta\":{\"tool_calls\":[{\"function\":{\"content\":\"t\"}}],\"content\":\"ok\"}}]}";
+        assertEquals("ok", SSEEventSourceListener.readDeltaContent(data));
+    }
+
+    @Test
+    @DisplayName("只读取第一个choice")
+    void readFirstChoiceOnly() throws IOException {
+        String data = "{\"choices\":[{\"delta\":{\"role\":\"assistant\"}},{\"delta\":{\"content\":\"second\"}}]}";
+        assertNull(SSEEventSourceListener.readDeltaContent(data));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        // 没有choices
+        "{\"id\":\"chatcmpl-1\",\"usage\":{\"total_tokens\":3}}",
+        "{}",
+        // choices为空数组或不是数组
+        "{\"choices\":[]}",
+        "{\"choices\":null}",
+        "{\"choices\":{\"delta\":{\"content\":\"x\"}}}",
+        "{\"choices\":[null]}",
+        "{\"choices\":[\"x\"]}",
+        // 没有delta或delta不是对象
+        "{\"choices\":[{\"index\":0,\"finish_reason\":\"stop\"}]}",
+        "{\"choices\":[{\"delta\":null}]}",
+        "{\"choices\":[{\"delta\":\"content\"}]}",
+        "{\"choices\":[{\"delta\":{}}]}",
+        // content为null或不是字符串
+        "{\"choices\":[{\"delta\":{\"content\":null}}]}",
+        "{\"choices\":[{\"delta\":{\"content\":1}}]}",
+        "{\"choices\":[{\"delta\":{\"content\":true}}]}",
+        "{\"choices\":[{\"delta\":{\"content\":[\"x\"]}}]}",
+        "{\"choices\":[{\"delta\":{\"content\":{\"text\":\"x\"}}}]}",
+        // 不是对象
+        "[]",
+        "\"text\"",
+        ""
+    })
+    @DisplayName("没有增量内容时返回null")
+    void readMissingContent(String data) throws IOException {
+        assertNull(SSEEventSourceListener.readDeltaContent(data));
+    }
+
+    @Test
+    @DisplayName("读到内容后不再解析剩余部分")
+    void stopAfterContent() throws IOException {
+        assertEquals("a", SSEEventSourceListener.readDeltaContent("{\"choices\":[{\"delta\":{\"content\":\"a\"}} broken"));
+    }
+
+    @Test
+    @DisplayName("内容之前的格式错误抛出异常")
+    void rejectMalformed() {
+        assertThrows(IOException.class, () -> SSEEventSourceListener.readDeltaContent("{\"choices\":[{\"delta\":{\"content\" \"a\"}}]}"));
+        assertThrows(IOException.class, () -> SSEEventSourceListener.readDeltaContent("{\"usage\":{"));
+    }
+}
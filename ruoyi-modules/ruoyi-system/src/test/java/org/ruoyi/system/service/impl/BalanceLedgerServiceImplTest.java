@@ -0,0 +1,269 @@
+package org.ruoyi.system.service.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
+import org.ruoyi.common.core.exception.ServiceException;
+import org.ruoyi.system.TestSpringContext;
+import org.ruoyi.system.domain.SysUser;
+import org.ruoyi.system.mapper.SysUserMapper;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用户余额账本测试
+ * <p>
+ * lua脚本在真实Redis中执行, 数据库使用mock; 没有docker环境时跳过
+ */
+@Tag("local")
+@Tag("dev")
+@Tag("prod")
+@DisplayName("用户余额账本")
+@Testcontainers(disabledWithoutDocker = true)
+class BalanceLedgerServiceImplTest {
+
+    private static final Long USER_ID = 1L;
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>(DockerImageName.parse("redis:7-alpine"))
+        .withExposedPorts(6379);
+
+    private static RedissonClient client;
+
+    private SysUserMapper sysUserMapper;
+
+    private BalanceLedgerServiceImpl balanceLedgerService;
+
+    @BeforeAll
+    static void initRedis() {
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://" + REDIS.getHost() + ":" + REDIS.getMappedPort(6379));
+        client = Redisson.create(config);
+        // RedisUtils 首次使用前注册
+        TestSpringContext.registerSingleton("redissonClient", client);
+    }
+
+    @AfterAll
+    static void closeRedis() {
+        client.shutdown();
+    }
+
+    @BeforeEach
+    void setUp() {
+        client.getKeys().flushall();
+        sysUserMapper = mock(SysUserMapper.class);
+        userBalance(10d);
+        when(sysUserMapper.deductBalance(anyLong(), anyDouble())).thenReturn(1);
+        when(sysUserMapper.addBalance(anyLong(), anyDouble())).thenReturn(1);
+        // 不启动定时回写 由测试显式调用 flush
+        balanceLedgerService = new BalanceLedgerServiceImpl(sysUserMapper);
+    }
+
+    @Test
+    @DisplayName("预授权 -> 结算 -> 回写")
+    void reserveSettleFlush() {
+        String reservationId = balanceLedgerService.reserve(USER_ID, 4d);
+        assertNotNull(reservationId);
+        assertEquals(6d, balanceLedgerService.getBalance(USER_ID));
+
+        balanceLedgerService.settle(USER_ID, reservationId, 2.5d);
+        assertEquals(7.5d, balanceLedgerService.getBalance(USER_ID));
+        verify(sysUserMapper, never()).deductBalance(anyLong(), anyDouble());
+
+        balanceLedgerService.flush();
+        verify(sysUserMapper, times(1)).deductBalance(USER_ID, 2.5d);
+        // 已回写的扣费不再重复回写
+        balanceLedgerService.flush();
+        verify(sysUserMapper, times(1)).deductBalance(anyLong(), anyDouble());
+        assertEquals(7.5d, balanceLedgerService.getBalance(USER_ID));
+    }
+
+    @Test
+    @DisplayName("预授权 -> 退回 不回写")
+    void reserveRefund() {
+        String reservationId = balanceLedgerService.reserve(USER_ID, 4d);
+        balanceLedgerService.refund(USER_ID, reservationId);
+        assertEquals(10d, balanceLedgerService.getBalance(USER_ID));
+        assertFalse(client.getMap(rsvKey(), StringCodec.INSTANCE).containsKey(reservationId));
+
+        balanceLedgerService.flush();
+        verify(sysUserMapper, never()).deductBalance(anyLong(), anyDouble());
+    }
+
+    @Test
+    @DisplayName("同一预授权重复结算或退回不重复入账")
+    void settleOnce() {
+        String reservationId = balanceLedgerService.reserve(USER_ID, 4d);
+        balanceLedgerService.settle(USER_ID, reservationId, 1d);
+        balanceLedgerService.refund(USER_ID, reservationId);
+        balanceLedgerService.refund(USER_ID, reservationId);
+        assertEquals(9d, balanceLedgerService.getBalance(USER_ID));
+
+        balanceLedgerService.flush();
+        verify(sysUserMapper, times(1)).deductBalance(USER_ID, 1d);
+    }
+
+    @Test
+    @DisplayName("余额不足预估费用时冻结全部余额 余额为0时拒绝")
+    void reserveCapped() {
+        String reservationId = balanceLedgerService.reserve(USER_ID, 15d);
+        assertEquals("10", client.<String, String>getMap(rsvKey(), StringCodec.INSTANCE).get(reservationId));
+        assertEquals(0d, balanceLedgerService.getBalance(USER_ID));
+        assertThrows(ServiceException.class, () -> balanceLedgerService.reserve(USER_ID, 1d));
+
+        // 实际费用在冻结金额内时退回差额
+        balanceLedgerService.settle(USER_ID, reservationId, 3d);
+        assertEquals(7d, balanceLedgerService.getBalance(USER_ID));
+    }
+
+    @Test
+    @DisplayName("超时未结算的预授权在下次预授权时退回")
+    void returnExpiredReservation() {
+        String expired = balanceLedgerService.reserve(USER_ID, 4d);
+        client.getScoredSortedSet(rsvKey() + "exp", StringCodec.INSTANCE).add(0, expired);
+
+        balanceLedgerService.reserve(USER_ID, 1d);
+        assertEquals(9d, balanceLedgerService.getBalance(USER_ID));
+        assertFalse(client.getMap(rsvKey(), StringCodec.INSTANCE).containsKey(expired));
+
+        // 超时后才结算的只扣实际费用
+        balanceLedgerService.settle(USER_ID, expired, 2d);
+        assertEquals(7d, balanceLedgerService.getBalance(USER_ID));
+    }
+
+    @Test
+    @DisplayName("并发预授权不超额冻结")
+    void concurrentReserve() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                tasks.add(() -> {
+                    try {
+                        return balanceLedgerService.reserve(USER_ID, 1d);
+                    } catch (ServiceException e) {
+                        return null;
+                    }
+                });
+            }
+            int reserved = 0;
+            for (Future<String> future : executor.invokeAll(tasks)) {
+                reserved += future.get() == null ? 0 : 1;
+            }
+            assertEquals(10, reserved);
+            assertEquals(0d, balanceLedgerService.getBalance(USER_ID));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("余额充足时扣费")
+    void debit() {
+        assertThrows(ServiceException.class, () -> balanceLedgerService.debit(USER_ID, 12d));
+        assertEquals(10d, balanceLedgerService.getBalance(USER_ID));
+
+        balanceLedgerService.debit(USER_ID, 2.5d);
+        assertEquals(7.5d, balanceLedgerService.getBalance(USER_ID));
+        balanceLedgerService.flush();
+        verify(sysUserMapper, times(1)).deductBalance(USER_ID, 2.5d);
+    }
+
+    @Test
+    @DisplayName("回写失败时保留扣费 下次回写重试")
+    void retryFailedFlush() {
+        when(sysUserMapper.deductBalance(anyLong(), anyDouble())).thenThrow(new IllegalStateException("db down")).thenReturn(1);
+        balanceLedgerService.debit(USER_ID, 2d);
+        balanceLedgerService.debit(USER_ID, 0.5d);
+
+        balanceLedgerService.flush();
+        verify(sysUserMapper, times(1)).deductBalance(USER_ID, 2.5d);
+        assertEquals("2.5", client.<String, String>getMap(ledgerKey(), StringCodec.INSTANCE).get("pending"));
+
+        balanceLedgerService.flush();
+        verify(sysUserMapper, times(2)).deductBalance(USER_ID, 2.5d);
+        assertNull(client.<String, String>getMap(ledgerKey(), StringCodec.INSTANCE).get("pending"));
+    }
+
+    @Test
+    @DisplayName("重新加载余额时扣除未回写扣费和预授权")
+    void reloadAfterInvalidate() {
+        balanceLedgerService.reserve(USER_ID, 4d);
+        balanceLedgerService.debit(USER_ID, 1.5d);
+
+        balanceLedgerService.invalidate(USER_ID);
+        assertEquals(4.5d, balanceLedgerService.getBalance(USER_ID));
+
+        // 回写后数据库余额已扣减
+        balanceLedgerService.flush();
+        userBalance(8.5d);
+        balanceLedgerService.invalidate(USER_ID);
+        assertEquals(4.5d, balanceLedgerService.getBalance(USER_ID));
+    }
+
+    @Test
+    @DisplayName("充值后按数据库余额重新加载")
+    void credit() {
+        balanceLedgerService.debit(USER_ID, 2d);
+        userBalance(15d);
+        balanceLedgerService.credit(USER_ID, 5d);
+
+        verify(sysUserMapper).addBalance(USER_ID, 5d);
+        // 数据库余额 15 - 未回写扣费 2
+        assertEquals(13d, balanceLedgerService.getBalance(USER_ID));
+
+        when(sysUserMapper.addBalance(eq(2L), anyDouble())).thenReturn(0);
+        assertThrows(ServiceException.class, () -> balanceLedgerService.credit(2L, 5d));
+    }
+
+    @Test
+    @DisplayName("用户不存在")
+    void unknownUser() {
+        assertNull(balanceLedgerService.getBalance(2L));
+        assertNull(balanceLedgerService.reserve(2L, 1d));
+    }
+
+    private void userBalance(double balance) {
+        SysUser sysUser = new SysUser(USER_ID);
+        sysUser.setUserBalance(balance);
+        when(sysUserMapper.selectById(USER_ID)).thenReturn(sysUser);
+    }
+
+    private static String ledgerKey() {
+        return "global:user_balance:{" + USER_ID + "}";
+    }
+
+    private static String rsvKey() {
+        return ledgerKey() + ":rsv";
+    }
+}
@@ -0,0 +1,252 @@
+package org.ruoyi.system.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.ruoyi.common.core.exception.ServiceException;
+import org.ruoyi.system.TestSpringContext;
+import org.ruoyi.system.domain.ChatMessage;
+import org.ruoyi.system.domain.ChatToken;
+import org.ruoyi.system.domain.bo.SysModelBo;
+import org.ruoyi.system.domain.model.ChatRequestContext;
+import org.ruoyi.system.domain.vo.SysModelVo;
+import org.ruoyi.system.mapper.ChatMessageMapper;
+import org.ruoyi.system.mapper.SysUserMapper;
+import org.ruoyi.system.service.IBalanceLedgerService;
+import org.ruoyi.system.service.IChatMessageService;
+import org.ruoyi.system.service.IChatTokenService;
+import org.ruoyi.system.service.ISysModelService;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 对话批量结算测试
+ * <p>
+ * 账本与数据库使用mock, 通过 destroy() 触发结算线程的 flush
+ */
+@Tag("local")
+@Tag("dev")
+@Tag("prod")
+@DisplayName("对话批量结算")
+class ChatCostServiceImplTest {
+
+    private static final Long USER_ID = 1L;
+
+    private static final String MODEL = "gpt-4o";
+
+    private IChatTokenService chatTokenService;
+
+    private ISysModelService sysModelService;
+
+    private ChatMessageMapper chatMessageMapper;
+
+    private IBalanceLedgerService balanceLedgerService;
+
+    private ChatCostServiceImpl chatCostService;
+
+    @BeforeAll
+    static void initContext() {
+        TestSpringContext.init();
+    }
+
+    @BeforeEach
+    void setUp() {
+        chatTokenService = mock(IChatTokenService.class);
+        sysModelService = mock(ISysModelService.class);
+        chatMessageMapper = mock(ChatMessageMapper.class);
+        balanceLedgerService = mock(IBalanceLedgerService.class);
+        when(chatMessageMapper.insertBatch(any())).thenReturn(true);
+        when(sysModelService.queryList(any(SysModelBo.class))).thenReturn(List.of(price(2.0)));
+        chatCostService = new ChatCostServiceImpl(mock(SysUserMapper.class), mock(IChatMessageService.class),
+            chatTokenService, sysModelService, chatMessageMapper, balanceLedgerService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        chatCostService.destroy();
+    }
+
+    @Test
+    @DisplayName("同一用户同一模型的账单合并结算 token余数计入下一次")
+    void settleBatchWithRemainder() {
+        when(chatTokenService.queryByUserId(USER_ID, MODEL)).thenReturn(token(200));
+
+        chatCostService.settleAsync(context("r1"), "a", 600);
+        chatCostService.settleAsync(context("r2"), "b", 700);
+        chatCostService.settleAsync(context("r3"), "c", 2100);
+        chatCostService.destroy();
+
+        // 200 + 600 = 800 不满1k; 800 + 700 = 1500 扣1k余500; 500 + 2100 = 2600 扣2k余600
+        verify(balanceLedgerService).settle(USER_ID, "r1", 0d);
+        verify(balanceLedgerService).settle(USER_ID, "r2", 2d);
+        verify(balanceLedgerService).settle(USER_ID, "r3", 4d);
+        ArgumentCaptor<ChatToken> chatToken = ArgumentCaptor.forClass(ChatToken.class);
+        verify(chatTokenService).editToken(chatToken.capture());
+        assertEquals(600, chatToken.getValue().getToken());
+        // 同一模型的价格只查询一次
+        verify(sysModelService, times(1)).queryList(any(SysModelBo.class));
+
+        List<ChatMessage> messages = savedMessages(1).get(0);
+        assertEquals(3, messages.size());
+        assertEquals(0d, messages.get(0).getDeductCost());
+        assertEquals(2d, messages.get(1).getDeductCost());
+        assertEquals(4d, messages.get(2).getDeductCost());
+    }
+
+    @Test
+    @DisplayName("不同用户、不同模型分别结算")
+    void settleGroupsSeparately() {
+        when(chatTokenService.queryByUserId(anyLong(), anyString())).thenReturn(null);
+
+        chatCostService.settleAsync(context(USER_ID, MODEL, "r1"), "a", 1000);
+        chatCostService.settleAsync(context(2L, MODEL, "r2"), "b", 1000);
+        chatCostService.settleAsync(context(USER_ID, "other", "r3"), "c", 3000);
+        chatCostService.destroy();
+
+        verify(balanceLedgerService).settle(USER_ID, "r1", 2d);
+        verify(balanceLedgerService).settle(2L, "r2", 2d);
+        verify(balanceLedgerService).settle(USER_ID, "r3", 6d);
+        verify(chatTokenService, times(3)).editToken(any(ChatToken.class));
+        assertEquals(3, savedMessages(1).get(0).size());
+    }
+
+    @Test
+    @DisplayName("按次计费的回答不再扣费")
+    void skipTimesBilling() {
+        ChatRequestContext context = new ChatRequestContext(USER_ID, MODEL, ChatRequestContext.BILLING_TIMES, 10, null);
+        chatCostService.settleAsync(context, "a", 5000);
+        chatCostService.destroy();
+
+        verify(balanceLedgerService, never()).settle(anyLong(), any(), anyDouble());
+        verify(chatTokenService, never()).editToken(any(ChatToken.class));
+        List<ChatMessage> messages = savedMessages(1).get(0);
+        assertEquals(0d, messages.get(0).getDeductCost());
+        assertEquals("提问时扣费", messages.get(0).getRemark());
+    }
+
+    @Test
+    @DisplayName("结算失败时退回该组全部预授权 其他组不受影响")
+    void refundGroupOnFailure() {
+        when(chatTokenService.queryByUserId(anyLong(), anyString())).thenAnswer(invocation -> token(0));
+        doThrow(new IllegalStateException("db down")).when(chatTokenService)
+            .editToken(argThat(chatToken -> USER_ID.equals(chatToken.getUserId())));
+
+        chatCostService.settleAsync(context(USER_ID, MODEL, "r1"), "a", 1000);
+        chatCostService.settleAsync(context(USER_ID, MODEL, "r2"), "b", 1000);
+        chatCostService.settleAsync(context(2L, MODEL, "r3"), "c", 1000);
+        chatCostService.destroy();
+
+        verify(balanceLedgerService).refund(USER_ID, "r1");
+        verify(balanceLedgerService).refund(USER_ID, "r2");
+        verify(balanceLedgerService, never()).settle(eq(USER_ID), any(), anyDouble());
+        verify(balanceLedgerService).settle(2L, "r3", 2d);
+        verify(balanceLedgerService, never()).refund(eq(2L), any());
+        // 消息记录照常保存
+        assertEquals(3, savedMessages(1).get(0).size());
+    }
+
+    @Test
+    @DisplayName("单个预授权退回失败不影响其他预授权")
+    void continueRefundAfterRefundFailure() {
+        when(chatTokenService.queryByUserId(anyLong(), anyString())).thenThrow(new IllegalStateException("db down"));
+        doThrow(new IllegalStateException("redis down")).when(balanceLedgerService).refund(USER_ID, "r1");
+
+        chatCostService.settleAsync(context("r1"), "a", 1000);
+        chatCostService.settleAsync(context("r2"), "b", 1000);
+        chatCostService.destroy();
+
+        verify(balanceLedgerService).refund(USER_ID, "r1");
+        verify(balanceLedgerService).refund(USER_ID, "r2");
+        assertEquals(2, savedMessages(1).get(0).size());
+    }
+
+    @Test
+    @DisplayName("消息记录保存失败时在下次结算重试")
+    void retryUnsavedMessages() {
+        when(chatTokenService.queryByUserId(anyLong(), anyString())).thenAnswer(invocation -> token(0));
+        when(chatMessageMapper.insertBatch(any())).thenThrow(new IllegalStateException("db down")).thenReturn(true);
+
+        chatCostService.settleAsync(context("r1"), "a", 1000);
+        chatCostService.destroy();
+        // 扣费不因消息保存失败重复执行
+        verify(balanceLedgerService, times(1)).settle(USER_ID, "r1", 2d);
+
+        chatCostService.destroy();
+        List<List<ChatMessage>> batches = savedMessages(2);
+        assertEquals(1, batches.get(1).size());
+        assertEquals("a", batches.get(1).get(0).getContent());
+        verify(balanceLedgerService, times(1)).settle(USER_ID, "r1", 2d);
+    }
+
+    @Test
+    @DisplayName("取消预授权")
+    void release() {
+        chatCostService.release(context("r1"));
+        verify(balanceLedgerService).refund(USER_ID, "r1");
+
+        chatCostService.release(context(null));
+        verify(balanceLedgerService, times(1)).refund(anyLong(), any());
+
+        doThrow(new IllegalStateException("redis down")).when(balanceLedgerService).refund(USER_ID, "r2");
+        assertDoesNotThrow(() -> chatCostService.release(context("r2")));
+    }
+
+    @Test
+    @DisplayName("余额校验")
+    void checkBalance() {
+        when(balanceLedgerService.getBalance(USER_ID)).thenReturn(null, 0d, 5d, 5d);
+        // 用户不存在时不拦截
+        assertDoesNotThrow(() -> chatCostService.checkBalance(USER_ID, 1));
+        assertThrows(ServiceException.class, () -> chatCostService.checkBalance(USER_ID, 0));
+        assertThrows(ServiceException.class, () -> chatCostService.checkBalance(USER_ID, 6));
+        assertDoesNotThrow(() -> chatCostService.checkBalance(USER_ID, 5));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<List<ChatMessage>> savedMessages(int times) {
+        ArgumentCaptor<Collection<ChatMessage>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(chatMessageMapper, times(times)).insertBatch(captor.capture());
+        return captor.getAllValues().stream().map(messages -> List.copyOf(messages)).toList();
+    }
+
+    private static ChatRequestContext context(String reservationId) {
+        return context(USER_ID, MODEL, reservationId);
+    }
+
+    private static ChatRequestContext context(Long userId, String model, String reservationId) {
+        return new ChatRequestContext(userId, model, ChatRequestContext.BILLING_TOKEN, 10, reservationId);
+    }
+
+    private static ChatToken token(int remain) {
+        ChatToken chatToken = new ChatToken();
+        chatToken.setToken(remain);
+        return chatToken;
+    }
+
+    private static SysModelVo price(double modelPrice) {
+        SysModelVo sysModelVo = new SysModelVo();
+        sysModelVo.setModelPrice(modelPrice);
+        return sysModelVo;
+    }
+}
@@ -0,0 +1,13 @@
+ALTER TABLE `sys_model` ADD COLUMN `context_window` int NULL DEFAULT NULL COMMENT '上下文token上限' AFTER `system_prompt`;
+
+ALTER TABLE `knowledge_attach` ADD COLUMN `status` varchar(20) NULL DEFAULT NULL COMMENT '处理状态' AFTER `content`;
+ALTER TABLE `knowledge_attach` ADD COLUMN `oss_id` bigint(20) NULL DEFAULT NULL COMMENT '原文件OSS ID' AFTER `status`;
+ALTER TABLE `knowledge_attach` ADD COLUMN `error_msg` varchar(500) NULL DEFAULT NULL COMMENT '失败原因' AFTER `oss_id`;
+ALTER TABLE `knowledge_attach` ADD INDEX `idx_doc_id`(`doc_id`) USING BTREE;
+ALTER TABLE `knowledge_attach` ADD INDEX `idx_status`(`status`) USING BTREE;
+ALTER TABLE `knowledge_fragment` ADD COLUMN `page` int NULL DEFAULT NULL COMMENT '所在页码' AFTER `idx`;
+ALTER TABLE `knowledge_fragment` ADD COLUMN `content_hash` varchar(64) NULL DEFAULT NULL COMMENT '内容哈希' AFTER `content`;
+ALTER TABLE `knowledge_fragment` ADD INDEX `idx_kid_hash`(`kid`, `content_hash`) USING BTREE;
+ALTER TABLE `knowledge_attach` ADD COLUMN `replace_doc_id` varchar(50) NULL DEFAULT NULL COMMENT '入库完成后替换的旧文档ID' AFTER `error_msg`;
+ALTER TABLE `knowledge_attach` DROP INDEX `idx_kname`, ADD INDEX `idx_kname`(`kid`, `doc_name`) USING BTREE;
+ALTER TABLE `knowledge_fragment` ADD COLUMN `source` varchar(500) NULL DEFAULT NULL COMMENT '来源文件' AFTER `page`;